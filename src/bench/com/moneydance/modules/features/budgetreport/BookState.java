@@ -0,0 +1,105 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+* Benchmark state holding a synthetic book of parameterized size.
+* The book is generated once per trial from a fixed seed so that every build
+* benchmarks exactly the same data. Use -p categories=... -p splits=... to
+* run other sizes, i.e. -p categories=10000 -p splits=10000000.
+*/
+@State(Scope.Benchmark)
+public class BookState {
+    // The seed used for all synthetic books
+    public static final long SEED = 20230101L;
+
+    // The first year of transactions in the book
+    public static final int FIRST_YEAR = 2020;
+
+    // The year reported on by the benchmarks
+    public static final int REPORT_YEAR = 2022;
+
+    @Param({"100", "1000", "10000"})
+    public int categories;
+
+    @Param({"100000", "1000000"})
+    public int splits;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"3"})
+    public int currencies;
+
+    // The generated book
+    public SyntheticBook book;
+
+    // A full year report subtotaled by month
+    public Report report;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.book = new SyntheticBook(BookState.SEED, this.categories, this.depth, this.currencies, this.splits, BookState.FIRST_YEAR, 3);
+        this.report = new Report("Benchmark", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, BookState.REPORT_YEAR, 1, 12, Constants.SUBTOTAL_MONTH, true, false);
+    }
+
+    /**
+     * Create a budget categories list holding the special rows and all the
+     * categories of the book but no budget or actual values.
+     *
+     * @return BudgetCategoriesList - The empty category list.
+     */
+    public BudgetCategoriesList newCategoriesList() {
+        final BudgetCategoriesList list = new BudgetCategoriesList(this.book);
+        list.add(Constants.UUID_OVERALL, "Income-Expenses", Account.AccountType.ROOT, 0);
+        list.add(Constants.UUID_INCOME, "Income", Account.AccountType.INCOME, 1);
+        for (final ReportCategory category : this.book.getCategories())
+            {
+            if (category.getType() == Account.AccountType.INCOME)
+                list.add(category);
+            }
+        list.add(Constants.UUID_EXPENSE, "Expenses", Account.AccountType.EXPENSE, 1);
+        for (final ReportCategory category : this.book.getCategories())
+            {
+            if (category.getType() == Account.AccountType.EXPENSE)
+                list.add(category);
+            }
+        return list;
+    }
+}
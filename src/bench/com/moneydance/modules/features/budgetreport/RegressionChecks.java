@@ -0,0 +1,493 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+* Regression checks of the report engine against synthetic books generated
+* from a fixed seed (see SyntheticBook). Each check prints whether it passed
+* and the run exits with status 1 if any check failed. The checks need no
+* test framework, run them with:
+* <pre>
+*   ant check
+* </pre>
+*/
+public final class RegressionChecks {
+    // Seed of the synthetic books, fixed so every run checks the same data
+    private static final long SEED          = 20230101L;
+
+    // The first year of transactions in the synthetic books
+    private static final int FIRST_YEAR     = 2021;
+
+    // The number of checks that failed
+    private int failures = 0;
+
+    /**
+     * Run all of the checks.
+     *
+     * @param args - Not used.
+     */
+    public static void main(final String[] args) {
+        final RegressionChecks checks = new RegressionChecks();
+        checks.checkParallelTotals();
+        checks.checkReportFiles();
+        checks.checkCatalogLoad();
+        checks.checkYearSpanningPeriods();
+        checks.checkSnapshotBuilds();
+        checks.checkActualsStore();
+
+        if (checks.failures > 0)
+            {
+            System.err.println(checks.failures+" check(s) failed");
+            System.exit(1);
+            }
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Record the result of a check.
+     *
+     * @param name - The name of the check.
+     * @param passed - true if the check passed.
+     * @param detail - What was found when the check failed.
+     */
+    private void check(final String name, final boolean passed, final String detail) {
+        if (passed)
+            System.out.println("PASSED: "+name);
+        else
+            {
+            System.err.println("FAILED: "+name+": "+detail);
+            this.failures++;
+            }
+    }
+
+    /**
+     * Totaling the transactions in parallel must give exactly the totals of
+     * the sequential scan, for ranges within a year and across years.
+     */
+    private void checkParallelTotals() {
+        // Enough splits for several chunks on a few threads
+        final SyntheticBook book = new SyntheticBook(RegressionChecks.SEED, 200, 3, 2, 300000, RegressionChecks.FIRST_YEAR, 3);
+        final ForkJoinPool sequential = new ForkJoinPool(1);
+        final ForkJoinPool parallel = new ForkJoinPool(4);
+        final MonthRange[] ranges = {
+            new MonthRange(2022, 1, 2022, 12),
+            new MonthRange(2022, 3, 2022, 3),
+            new MonthRange(2021, 7, 2022, 6),
+            new MonthRange(2021, 7, 2023, 6) };
+
+        try
+            {
+            for (final MonthRange range : ranges)
+                {
+                final BudgetCategoriesList expected = RegressionChecks.newCategoriesList(book);
+                final BudgetCategoriesList actual = RegressionChecks.newCategoriesList(book);
+                new TransactionTotals(expected, book, range, sequential, Integer.MAX_VALUE);
+                new TransactionTotals(actual, book, range, parallel, 0);
+                this.check("Parallel totals of "+range.format(" "), actual.getStatistics().getSplitsScanned() == expected.getStatistics().getSplitsScanned()
+                    && RegressionChecks.sameActuals(expected, actual, range.getMonthCount()),
+                    "the totals differ from the sequential scan");
+                }
+            }
+        finally
+            {
+            sequential.shutdown();
+            parallel.shutdown();
+            }
+    }
+
+    /**
+     * Memorized reports must read back exactly as written, reports of format
+     * version 1 must end in the year they start, reports of more months than
+     * the report values have room for must be rejected, and reports in the old
+     * serialized format must be saved in the current format by the catalog.
+     */
+    private void checkReportFiles() {
+        final Report report = new Report("Fiscal Year", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2022, 7, 2023, 6, Constants.SUBTOTAL_QUARTER, false, true);
+        final Report sameYear = new Report("First Half", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2022, 1, 6, Constants.SUBTOTAL_MONTH, true, false);
+        File folder = null;
+        try
+            {
+            folder = Files.createTempDirectory("budgetreport").toFile();
+
+            // Round trip in the current format
+            Files.write(Report.getFile(folder, report.getReportName()).toPath(), report.toBytes());
+            this.check("Report file round trip", RegressionChecks.sameReport(report, Report.read(folder, report.getReportName())),
+                "the report read differs from the report written");
+
+            // Version 1 is version 2 without the end year at the end
+            final byte[] current = sameYear.toBytes();
+            final byte[] version1 = Arrays.copyOf(current, current.length - 4);
+            ByteBuffer.wrap(version1).putInt(4, 1);
+            Files.write(Report.getFile(folder, sameYear.getReportName()).toPath(), version1);
+            final Report migrated = Report.read(folder, sameYear.getReportName());
+            this.check("Report file version 1", RegressionChecks.sameReport(sameYear, migrated) && (migrated.getEndYear() == migrated.getYear()),
+                "read as "+migrated);
+
+            // More months than a report has room for are rejected
+            final Report tooLong = new Report("Too Long", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2021, 1, 2023, 1, Constants.SUBTOTAL_MONTH, false, false);
+            Files.write(Report.getFile(folder, tooLong.getReportName()).toPath(), tooLong.toBytes());
+            String rejected = null;
+            try
+                {
+                Report.read(folder, tooLong.getReportName());
+                }
+            catch (final IOException e)
+                {
+                rejected = e.getMessage();
+                }
+            this.check("Report file longer than "+Constants.MAX_MONTHS+" months", rejected != null, "the report was read");
+
+            // The old serialized format is saved in the current format when the catalog reads it
+            final File legacyFolder = new File(folder, "legacy");
+            legacyFolder.mkdir();
+            final File legacyFile = Report.getFile(legacyFolder, sameYear.getReportName());
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(legacyFile)))
+                {
+                out.writeObject(sameYear);
+                }
+            final Report legacy = Report.read(legacyFolder, sameYear.getReportName());
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    // Closing the catalog waits for the files to be written
+                    new ReportCatalog(legacyFolder).dispose();
+                }
+            });
+            final byte[] saved = Files.readAllBytes(legacyFile.toPath());
+            final Report resaved = Report.read(legacyFolder, sameYear.getReportName());
+            this.check("Report file serialized format migration", legacy.isLegacy() && RegressionChecks.sameReport(sameYear, legacy)
+                && Arrays.equals(saved, current) && !resaved.isLegacy(),
+                "the report was not saved in the current format");
+            }
+        catch (final IOException | ClassNotFoundException | InterruptedException | InvocationTargetException e)
+            {
+            this.check("Report files", false, e.toString());
+            }
+        finally
+            {
+            RegressionChecks.delete(folder);
+            }
+    }
+
+    /**
+     * A report file replaced while the catalog was closed must be read again
+     * when the catalog is next loaded.
+     */
+    private void checkCatalogLoad() {
+        final Report original = new Report("Quarters", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2022, 1, 12, Constants.SUBTOTAL_QUARTER, false, false);
+        final Report edited = new Report("Quarters", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2022, 1, 12, Constants.SUBTOTAL_MONTH, true, true);
+        File folder = null;
+        try
+            {
+            folder = Files.createTempDirectory("budgetreport").toFile();
+            final File catalogFolder = folder;
+            final File reportFile = Report.getFile(folder, original.getReportName());
+            Files.write(reportFile.toPath(), original.toBytes());
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    new ReportCatalog(catalogFolder).dispose();
+                }
+            });
+
+            // Replace the file as an older version of the extension would
+            Files.write(reportFile.toPath(), edited.toBytes());
+            reportFile.setLastModified(reportFile.lastModified() + 2000);
+            final Report[] loaded = new Report[1];
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    final ReportCatalog catalog = new ReportCatalog(catalogFolder);
+                    try
+                        {
+                        loaded[0] = catalog.getReport(edited.getReportName());
+                        }
+                    catch (final FileNotFoundException e)
+                        {
+                        loaded[0] = null;
+                        }
+                    catalog.dispose();
+                }
+            });
+            this.check("Catalog reads report files replaced while closed", (loaded[0] != null) && RegressionChecks.sameReport(edited, loaded[0]),
+                "read as "+loaded[0]);
+            }
+        catch (final IOException | InterruptedException | InvocationTargetException e)
+            {
+            this.check("Catalog load", false, e.toString());
+            }
+        finally
+            {
+            RegressionChecks.delete(folder);
+            }
+    }
+
+    /**
+     * A report spanning calendar years must have the budget and actual
+     * values of the reports of each calendar year it covers, and the rolling
+     * periods must end in the current month whatever month it is.
+     */
+    private void checkYearSpanningPeriods() {
+        final SyntheticBook book = new SyntheticBook(RegressionChecks.SEED, 200, 3, 2, 100000, RegressionChecks.FIRST_YEAR, 3);
+        final ReportBuilder builder = new ReportBuilder(book);
+
+        // A fiscal year from July to June against its two halves
+        final BudgetCategoriesList fiscal = builder.build(new Report("Fiscal Year", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2021, 7, 2022, 6,
+            Constants.SUBTOTAL_MONTH, true, false), null);
+        final BudgetCategoriesList first = builder.build(new Report("July to December", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2021, 7, 12,
+            Constants.SUBTOTAL_MONTH, true, false), null);
+        final BudgetCategoriesList second = builder.build(new Report("January to June", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2022, 1, 6,
+            Constants.SUBTOTAL_MONTH, true, false), null);
+        boolean same = (fiscal.getCategoryCount() == first.getCategoryCount()) && (fiscal.getCategoryCount() == second.getCategoryCount());
+        for (int index = 0; same && (index < fiscal.getCategoryCount()); index++)
+            {
+            final BudgetCategoryItem item = fiscal.getCategoryItemByIndex(index);
+            for (int month = 1; month <= 12; month++)
+                {
+                final BudgetCategoryItem half = (month <= 6) ? first.getCategoryItemByIndex(index) : second.getCategoryItemByIndex(index);
+                final int halfMonth = (month <= 6) ? month : month - 6;
+                same &= item.getBudgetValueForMonth(month).equals(half.getBudgetValueForMonth(halfMonth))
+                    && item.getActualTotalForMonth(month).equals(half.getActualTotalForMonth(halfMonth));
+                }
+            }
+        this.check("Fiscal year report across calendar years", same, "the values differ from the reports of each calendar year");
+
+        // Rolling periods in January, when they start in an earlier year, and in December
+        for (final int thisMonth : new int[] { 1, 12 })
+            {
+            final Calendar now = Calendar.getInstance();
+            now.set(2024, thisMonth - 1, 15);
+            for (final int period : new int[] { Constants.PERIOD_LAST_12_MONTHS, Constants.PERIOD_LAST_24_MONTHS })
+                {
+                final Report rolling = new Report("Rolling", SyntheticBook.BUDGET_NAME, period, 2024, 1, 1, Constants.SUBTOTAL_MONTH, true, false);
+                rolling.resolvePeriod(now);
+                final int months = (period == Constants.PERIOD_LAST_12_MONTHS) ? 12 : 24;
+                final MonthRange range = MonthRange.of(rolling);
+                this.check(Constants.periods[period]+" in "+Constants.months[thisMonth - 1], (range.getMonthCount() == months)
+                    && (range.getYear(months) == 2024) && (range.getMonth(months) == thisMonth),
+                    "resolved to "+range.format(" "));
+                }
+            }
+    }
+
+    /**
+     * A report built in the background from a snapshot of a wider range must
+     * have the values of the report built from the book, and books with
+     * categories in several currencies must not be snapshotted.
+     */
+    private void checkSnapshotBuilds() {
+        final SyntheticBook book = new SyntheticBook(RegressionChecks.SEED, 200, 3, 1, 100000, RegressionChecks.FIRST_YEAR, 3);
+        final Report report = new Report("Snapshot", SyntheticBook.BUDGET_NAME, Constants.PERIOD_CUSTOM, 2022, 3, 2022, 5,
+            Constants.SUBTOTAL_MONTH, true, false);
+        final MonthRange range = MonthRange.of(report);
+        final BudgetCategoriesList expected = new ReportBuilder(book).build(report, null, false);
+
+        // The neighbouring months are in the snapshot too, as when prefetching
+        final BookSnapshot snapshot = BookSnapshot.take(book, SyntheticBook.BUDGET_NAME, range.union(new MonthRange(2022, 1, 2022, 7)));
+        final BudgetCategoriesList actual = new ReportBuilder(snapshot).build(report, null, false);
+        snapshot.release();
+        boolean same = RegressionChecks.sameActuals(expected, actual, range.getMonthCount());
+        for (int index = 0; same && (index < expected.getCategoryCount()); index++)
+            {
+            for (int month = 1; month <= range.getMonthCount(); month++)
+                same &= expected.getCategoryItemByIndex(index).getBudgetValueForMonth(month).equals(actual.getCategoryItemByIndex(index).getBudgetValueForMonth(month));
+            }
+        this.check("Report built from a snapshot", same, "the values differ from the report built from the book");
+
+        final SyntheticBook currencies = new SyntheticBook(RegressionChecks.SEED, 200, 3, 3, 1000, RegressionChecks.FIRST_YEAR, 1);
+        this.check("No snapshot of several currencies", BookSnapshot.take(currencies, SyntheticBook.BUDGET_NAME, range) == null,
+            "a book converting currencies was snapshotted");
+    }
+
+    /**
+     * The actuals store must only be written when it is closed, must give
+     * back the years saved in the next session, and must drop a year whose
+     * splits changed since, i.e. a split moved to another past year.
+     */
+    private void checkActualsStore() {
+        final Map<Integer, Long> stamps = new HashMap<Integer, Long>();
+        final Supplier<Map<Integer, Long>> currentStamps = new Supplier<Map<Integer, Long>>() {
+            @Override
+            public Map<Integer, Long> get() {
+                return new HashMap<Integer, Long>(stamps);
+            }
+        };
+        final Map<String, long[]> totals2020 = Collections.singletonMap("food", new long[] { 100, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+        final Map<String, long[]> totals2021 = Collections.singletonMap("food", new long[] { 0, 250, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+        final long split2020 = ActualsStore.hashSplit("food", 20200115, 100);
+        final long split2021 = ActualsStore.hashSplit("food", 20210210, 200) + ActualsStore.hashSplit("food", 20210220, 50);
+        stamps.put(Integer.valueOf(2020), Long.valueOf(split2020));
+        stamps.put(Integer.valueOf(2021), Long.valueOf(split2021));
+        File folder = null;
+        try
+            {
+            folder = Files.createTempDirectory("budgetreport").toFile();
+            final File file = new File(folder, Constants.ACTUALS_FILE);
+
+            // Saved once, when closed
+            final ActualsStore store = new ActualsStore(file, currentStamps);
+            store.putYear(2020, totals2020, split2020, store.getGeneration());
+            store.putYear(2021, totals2021, split2021, store.getGeneration());
+            final boolean writtenEarly = file.exists();
+            store.close();
+            this.check("Actuals store written on close", !writtenEarly && file.exists(), "written early: "+writtenEarly);
+
+            // Read back in the next session
+            final ActualsStore reopened = new ActualsStore(file, currentStamps);
+            this.check("Actuals store read back", RegressionChecks.sameYear(totals2020, reopened.getYear(2020))
+                && RegressionChecks.sameYear(totals2021, reopened.getYear(2021)), "the years read differ from the years saved");
+            reopened.close();
+
+            // A split moved from 2021 to 2020 while the store was closed leaves
+            // the transaction count and the balances as they were
+            final long moved = ActualsStore.hashSplit("food", 20200220, 50);
+            stamps.put(Integer.valueOf(2020), Long.valueOf(split2020 + moved));
+            stamps.put(Integer.valueOf(2021), Long.valueOf(ActualsStore.hashSplit("food", 20210210, 200)));
+            final ActualsStore changed = new ActualsStore(file, currentStamps);
+            this.check("Actuals store drops changed years", (changed.getYear(2020) == null) && (changed.getYear(2021) == null),
+                "a year changed since it was saved was read back");
+            changed.close();
+            }
+        catch (final IOException e)
+            {
+            this.check("Actuals store", false, e.toString());
+            }
+        finally
+            {
+            RegressionChecks.delete(folder);
+            }
+    }
+
+    /**
+     * @param expected - The totals of a year saved.
+     * @param actual - The totals of the year read, may be null.
+     * @return boolean - true if the totals are the same.
+     */
+    private static boolean sameYear(final Map<String, long[]> expected, final Map<String, long[]> actual) {
+        if ((actual == null) || !expected.keySet().equals(actual.keySet()))
+            return false;
+        for (final Map.Entry<String, long[]> entry : expected.entrySet())
+            {
+            if (!Arrays.equals(entry.getValue(), actual.get(entry.getKey())))
+                return false;
+            }
+        return true;
+    }
+
+    /**
+     * @param expected - The report written.
+     * @param actual - The report read.
+     * @return boolean - true if the reports have the same name and settings.
+     */
+    private static boolean sameReport(final Report expected, final Report actual) {
+        return expected.getReportName().equals(actual.getReportName()) && expected.toString().equals(actual.toString());
+    }
+
+    /**
+     * Delete a folder of test files.
+     *
+     * @param folder - The folder, may be null.
+     */
+    private static void delete(final File folder) {
+        if (folder == null)
+            return;
+        final File[] files = folder.listFiles();
+        if (files != null)
+            {
+            for (final File file : files)
+                {
+                if (file.isDirectory())
+                    RegressionChecks.delete(file);
+                else
+                    file.delete();
+                }
+            }
+        folder.delete();
+    }
+
+    /**
+     * Create a budget categories list holding all the categories of a book
+     * but no budget or actual values.
+     *
+     * @param book - The book.
+     * @return BudgetCategoriesList - The empty category list.
+     */
+    private static BudgetCategoriesList newCategoriesList(final SyntheticBook book) {
+        final BudgetCategoriesList list = new BudgetCategoriesList(book);
+        for (final ReportCategory category : book.getCategories())
+            list.add(category);
+        return list;
+    }
+
+    /**
+     * Compare the actual totals of two lists of the same categories.
+     *
+     * @param expected - The expected totals.
+     * @param actual - The totals to check.
+     * @param months - The number of months of the totals.
+     * @return boolean - true if every total is the same.
+     */
+    private static boolean sameActuals(final BudgetCategoriesList expected, final BudgetCategoriesList actual, final int months) {
+        if (expected.getCategoryCount() != actual.getCategoryCount())
+            return false;
+        for (int index = 0; index < expected.getCategoryCount(); index++)
+            {
+            final BudgetCategoryItem expectedItem = expected.getCategoryItemByIndex(index);
+            final BudgetCategoryItem actualItem = actual.getCategoryItemByIndex(index);
+            if (!expectedItem.getActualTotal().equals(actualItem.getActualTotal()))
+                return false;
+            for (int month = 1; month <= months; month++)
+                {
+                if (!expectedItem.getActualTotalForMonth(month).equals(actualItem.getActualTotalForMonth(month)))
+                    return false;
+                }
+            }
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+* Benchmark of the parent rollups, setBudgetValueForMonth for budget values
+* and updateParentActualTotals for actual totals.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RollupBenchmark {
+    // A fresh category list for each invocation
+    private BudgetCategoriesList list;
+
+    @Setup(Level.Invocation)
+    public void setUp(final BookState state) {
+        this.list = state.newCategoriesList();
+    }
+
+    @Benchmark
+    public BudgetCategoriesList budgetRollup(final BookState state) {
+        // Set twelve months of budget values on every category without children
+        for (final ReportCategory category : state.book.getCategories())
+            {
+            final BudgetCategoryItem item = this.list.getCategoryItem(category.getUUID());
+            if ((item == null) || (item.hasChildren()))
+                continue;
+            for (int month = 1; month <= 12; month++)
+                item.setBudgetValueForMonth(null, this.list, month, 1000L * month, category.getType());
+            }
+        return this.list;
+    }
+
+    @Benchmark
+    public BudgetCategoriesList actualRollup(final BookState state) {
+        // Roll up the actual totals of every category to its parents
+        for (final ReportCategory category : state.book.getCategories())
+            {
+            final BudgetCategoryItem item = this.list.getCategoryItem(category.getUUID());
+            if (item != null)
+                item.updateParentActualTotals(this.list, item);
+            }
+        return this.list;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.table.TableCellRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+* Headless benchmark of painting the report table. The table is painted the
+* way it is displayed, one screen of rows at a time, into an off-screen
+* image. Run it with the GC profiler to see the bytes allocated per cell.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(jvmArgsAppend = "-Djava.awt.headless=true")
+public class TablePaintBenchmark {
+    // Size of the screen painted (pixels)
+    private static final int SCREEN_WIDTH       = 1600;
+    private static final int SCREEN_HEIGHT      = 1000;
+
+    // The table painted, with the default colors used outside Moneydance
+    private Table table;
+
+    // The image the table is painted into
+    private BufferedImage image;
+    private Graphics2D g2d;
+
+    // The first row of the screen painted next
+    private int firstRow = 0;
+
+    @Setup
+    public void setup(final BookState state) {
+        this.table = new Table(new TableModel(state.report, state.book), null, false);
+        this.table.setSize(TablePaintBenchmark.SCREEN_WIDTH, this.table.getRowHeight() * this.table.getRowCount());
+        this.table.doLayout();
+        this.image = new BufferedImage(TablePaintBenchmark.SCREEN_WIDTH, TablePaintBenchmark.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        this.g2d = this.image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.g2d.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintScreen() {
+        // Scroll one screen down each time, wrapping at the end of the table
+        final int rowsPerScreen = TablePaintBenchmark.SCREEN_HEIGHT / this.table.getRowHeight();
+        this.firstRow = (this.firstRow + rowsPerScreen) % Math.max(1, this.table.getRowCount() - rowsPerScreen);
+
+        final Graphics2D g = (Graphics2D) this.g2d.create();
+        try
+            {
+            g.translate(0, -this.firstRow * this.table.getRowHeight());
+            g.setClip(0, this.firstRow * this.table.getRowHeight(), TablePaintBenchmark.SCREEN_WIDTH, TablePaintBenchmark.SCREEN_HEIGHT);
+            this.table.paint(g);
+            }
+        finally
+            {
+            g.dispose();
+            }
+        return this.image;
+    }
+
+    @Benchmark
+    public int prepareScreen() {
+        // Prepare the renderers of one screen of cells without painting them
+        final int rowsPerScreen = Math.min(this.table.getRowCount(), TablePaintBenchmark.SCREEN_HEIGHT / this.table.getRowHeight());
+        int hash = 0;
+        for (int row = 0; row < rowsPerScreen; row++)
+            {
+            for (int column = 0; column < this.table.getColumnCount(); column++)
+                {
+                final TableCellRenderer renderer = this.table.getCellRenderer(row, column);
+                hash += this.table.prepareRenderer(renderer, row, column).getForeground().getRGB();
+                }
+            }
+        return hash;
+    }
+}
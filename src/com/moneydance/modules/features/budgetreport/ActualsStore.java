@@ -0,0 +1,487 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+* Persistent store of the actual totals of past years by category and month.
+* Totaling a year means scanning the whole transaction set, so the monthly
+* totals of each past year are saved in a small binary file in the data file
+* folder. The file is memory mapped and only the directory and the years
+* reported are read, a few kilobytes, instead of scanning the transactions
+* again in the next session.
+*
+* <p>Each year is saved with a stamp of its income and expense splits, the
+* sum of a hash of the category, date and value of each split. The sum does
+* not depend on the order of the splits and changes when a split is added
+* to, removed from or moved between years or its value or category changes,
+* whenever the change was made. Before a stored year is first used in a
+* session the stamps of all the past years are computed in one pass over the
+* transaction set and the years whose stamp differs are dropped, so changes
+* made while the report window was closed are never missed. While the store
+* is open, adding a transaction drops the totals of its year, and modifying
+* or removing one makes the store check the stamps again before the next
+* year is used, as the year it was in before is not known. The file is
+* written once, on a background thread, when the store is closed, and only
+* if a year was stored or dropped.
+*
+* <p>File layout (big endian):
+* <pre>
+*   int magic, int version, int year count
+*   year count * (int year, long stamp, long offset, int length)
+*   per year: int category count,
+*             category count * (short UUID length, UTF-8 UUID, 12 * long month total)
+* </pre>
+*/
+public class ActualsStore {
+    // Identifies an actuals store file ("MBRA")
+    private static final int MAGIC              = 0x4D425241;
+
+    // Version of the file layout, files of any other version are rebuilt
+    public static final int VERSION             = 2;
+
+    // Size of the header: magic, version and year count
+    private static final int HEADER_SIZE        = 4 + 4 + 4;
+
+    // Size of a directory entry: year, stamp, offset and length
+    private static final int ENTRY_SIZE         = 4 + 8 + 8 + 4;
+
+    // How long to wait for the write when closing (seconds)
+    private static final long CLOSE_TIMEOUT     = 10;
+
+    // Hit and miss counters of the years looked up
+    private static final CacheStatistics cacheStatistics = CacheStatistics.get("Actuals store");
+
+    // The store file
+    private final File file;
+
+    // Computes the stamps of the past years of the data file by year
+    private final Supplier<Map<Integer, Long>> currentStamps;
+
+    // The mapped file, null when it has not been mapped
+    private MappedByteBuffer mapped = null;
+
+    // The years in the mapped file that have not been read yet: {offset, length}
+    private final Map<Integer, long[]> directory = new HashMap<Integer, long[]>();
+
+    // The years read or totaled: category UUID to the totals of months 1...12
+    private final Map<Integer, Map<String, long[]>> years = new HashMap<Integer, Map<String, long[]>>();
+
+    // The stamp of each year in the directory or read or totaled
+    private final Map<Integer, Long> stamps = new HashMap<Integer, Long>();
+
+    // true once the stamps have been checked against the data file
+    private boolean validated = false;
+
+    // true when the years differ from the file
+    private boolean dirty = false;
+
+    // Incremented whenever totals are dropped so that totals computed before are not stored
+    private int generation = 0;
+
+    // Single thread to write the file on
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Budget Report actuals writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Create the store for a data file and map its file.
+     *
+     * @param file - The store file.
+     * @param currentStamps - Computes the stamps of the past years of the
+     * data file, see hashSplit. Years without splits may be left out.
+     */
+    public ActualsStore(final File file, final Supplier<Map<Integer, Long>> currentStamps) {
+        this.file = file;
+        this.currentStamps = currentStamps;
+        this.open();
+    }
+
+    /**
+     * Hash a split for the stamp of its year. The stamp of a year is the sum
+     * of the hashes of its income and expense splits.
+     *
+     * @param categoryUUID - The UUID of the category of the split.
+     * @param date - The date of the split (YYYYMMDD).
+     * @param value - The value of the split.
+     * @return long - The hash.
+     */
+    public static long hashSplit(final String categoryUUID, final int date, final long value) {
+        // Mix the fields so that sums of different splits rarely collide (SplitMix64 finalizer)
+        long hash = (((31L * categoryUUID.hashCode()) + date) * 0x9E3779B97F4A7C15L) + value;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Save the years if they changed, waiting a little while for the write
+     * to finish, and stop the thread.
+     */
+    public void close() {
+        synchronized (this)
+            {
+            if (this.dirty && !this.writer.isShutdown())
+                this.write();
+            }
+
+        this.writer.shutdown();
+        try
+            {
+            if (!this.writer.awaitTermination(ActualsStore.CLOSE_TIMEOUT, TimeUnit.SECONDS))
+                System.err.println("ERROR: Timed out saving "+this.file);
+            }
+        catch (final InterruptedException e)
+            {
+            Thread.currentThread().interrupt();
+            }
+    }
+
+    /**
+     * Check whether the totals of a year can be stored. Only past years are
+     * stored, the current year changes too often to be worth it.
+     *
+     * @param year - The year (YYYY).
+     * @return boolean - true if the year is before the current year.
+     */
+    public static boolean isHistorical(final int year) {
+        return year < Calendar.getInstance().get(Calendar.YEAR);
+    }
+
+    /**
+     * Get the stored totals of a year.
+     *
+     * @param year - The year (YYYY).
+     * @return Map<String, long[]> - The totals of months 1...12 (indexes 0...11)
+     * by category UUID, or null if the year is not stored. The map must not be
+     * modified.
+     */
+    public synchronized Map<String, long[]> getYear(final int year) {
+        // Drop the years changed since they were stored
+        if (!this.validated)
+            this.validate();
+
+        // Read the year from the mapped file the first time it is used
+        Map<String, long[]> totals = this.years.get(Integer.valueOf(year));
+        if (totals == null)
+            {
+            final long[] entry = this.directory.remove(Integer.valueOf(year));
+            if (entry != null)
+                {
+                totals = this.readYear(entry);
+                if (totals != null)
+                    this.years.put(Integer.valueOf(year), totals);
+                else
+                    this.drop(year);
+                }
+            }
+
+        if (totals != null)
+            ActualsStore.cacheStatistics.hit();
+        else
+            ActualsStore.cacheStatistics.miss();
+        return totals;
+    }
+
+    /**
+     * @return the generation to pass to putYear when totaling a year
+     */
+    public synchronized int getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Store the totals of a year, they are saved when the store is closed.
+     *
+     * @param year - The year (YYYY).
+     * @param totals - The totals of months 1...12 by category UUID.
+     * @param stamp - The stamp of the splits totaled, see hashSplit.
+     * @param generation - The generation returned by getGeneration before the
+     * year was totaled. The totals are not stored if data changed since.
+     */
+    public synchronized void putYear(final int year, final Map<String, long[]> totals, final long stamp, final int generation) {
+        if (generation != this.generation)
+            return;
+
+        this.directory.remove(Integer.valueOf(year));
+        this.years.put(Integer.valueOf(year), totals);
+        this.stamps.put(Integer.valueOf(year), Long.valueOf(stamp));
+        this.dirty = true;
+    }
+
+    /**
+     * Drop the totals of a year, i.e. when a transaction is added to it.
+     *
+     * @param year - The year (YYYY).
+     */
+    public synchronized void invalidateYear(final int year) {
+        this.generation++;
+        this.drop(year);
+    }
+
+    /**
+     * Check the stamps of all the years again before the next year is used,
+     * i.e. when a transaction is modified or removed.
+     */
+    public synchronized void revalidate() {
+        this.generation++;
+        this.validated = false;
+    }
+
+    /**
+     * Drop a year from the store.
+     *
+     * @param year - The year (YYYY).
+     */
+    private void drop(final int year) {
+        if (this.stamps.remove(Integer.valueOf(year)) != null)
+            this.dirty = true;
+        this.years.remove(Integer.valueOf(year));
+        this.directory.remove(Integer.valueOf(year));
+    }
+
+    /**
+     * Drop the years whose stamp differs from the stamp of their splits in
+     * the data file, computed in one pass over the transactions.
+     */
+    private void validate() {
+        this.validated = true;
+        if (this.stamps.isEmpty())
+            return;
+
+        final Map<Integer, Long> current = this.currentStamps.get();
+        for (final Integer year : new ArrayList<Integer>(this.stamps.keySet()))
+            {
+            if (!this.stamps.get(year).equals(current.getOrDefault(year, Long.valueOf(0))))
+                this.drop(year.intValue());
+            }
+    }
+
+    /**
+     * Map the file and read its directory if it is a valid store file.
+     */
+    private void open() {
+        if (!this.file.exists())
+            return;
+
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ))
+            {
+            // The mapping stays valid after the channel is closed
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // Ignore files of another version, they are rewritten when the store is closed
+            if ((buffer.capacity() < ActualsStore.HEADER_SIZE) || (buffer.getInt(0) != ActualsStore.MAGIC)
+                || (buffer.getInt(4) != ActualsStore.VERSION))
+                {
+                this.dirty = true;
+                return;
+                }
+
+            // Read the directory
+            final int count = buffer.getInt(8);
+            if ((count < 0) || ((ActualsStore.HEADER_SIZE + ((long) count * ActualsStore.ENTRY_SIZE)) > buffer.capacity()))
+                {
+                this.dirty = true;
+                return;
+                }
+            for (int i = 0; i < count; i++)
+                {
+                final int position = ActualsStore.HEADER_SIZE + (i * ActualsStore.ENTRY_SIZE);
+                final Integer year = Integer.valueOf(buffer.getInt(position));
+                final long offset = buffer.getLong(position + 12);
+                final int length = buffer.getInt(position + 20);
+                if ((offset >= 0) && (length >= 0) && ((offset + length) <= buffer.capacity()))
+                    {
+                    this.directory.put(year, new long[] { offset, length });
+                    this.stamps.put(year, Long.valueOf(buffer.getLong(position + 4)));
+                    }
+                }
+            this.mapped = buffer;
+            }
+        catch (final IOException e)
+            {
+            System.err.println("ERROR: Unable to read "+this.file+": "+e);
+            }
+    }
+
+    /**
+     * Read the totals of a year from the mapped file.
+     *
+     * @param entry - The directory entry of the year: {offset, length}.
+     * @return Map<String, long[]> - The totals by category UUID, null if the
+     * year could not be read.
+     */
+    private Map<String, long[]> readYear(final long[] entry) {
+        try
+            {
+            final ByteBuffer block = this.mapped.slice((int) entry[0], (int) entry[1]);
+            final int count = block.getInt();
+            final Map<String, long[]> totals = new HashMap<String, long[]>();
+            for (int i = 0; i < count; i++)
+                {
+                final byte[] uuid = new byte[block.getShort()];
+                block.get(uuid);
+                final long[] months = new long[12];
+                for (int month = 0; month < 12; month++)
+                    months[month] = block.getLong();
+                totals.put(new String(uuid, StandardCharsets.UTF_8), months);
+                }
+            return totals;
+            }
+        catch (final RuntimeException e)
+            {
+            System.err.println("ERROR: Invalid year in "+this.file+": "+e);
+            return null;
+            }
+    }
+
+    /**
+     * Queue a write of all of the stored years on the writer thread.
+     */
+    private void write() {
+        // Read the years still only in the mapped file, as it is rewritten
+        for (final Map.Entry<Integer, long[]> entry : this.directory.entrySet())
+            {
+            final Map<String, long[]> totals = this.readYear(entry.getValue());
+            if (totals != null)
+                this.years.put(entry.getKey(), totals);
+            else
+                this.stamps.remove(entry.getKey());
+            }
+        this.directory.clear();
+        this.mapped = null;
+        this.dirty = false;
+
+        // The totals of a year are never modified so the maps can be shared
+        final Map<Integer, Map<String, long[]>> years = new HashMap<Integer, Map<String, long[]>>(this.years);
+        final Map<Integer, Long> stamps = new HashMap<Integer, Long>(this.stamps);
+        this.writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                ActualsStore.this.writeYears(years, stamps);
+            }
+        });
+    }
+
+    /**
+     * Write the years to the file on the writer thread. The file is
+     * rewritten in place, a new file could not replace it on systems that do
+     * not allow mapped files to be replaced.
+     *
+     * @param years - The totals of the years by year.
+     * @param stamps - The stamps of the years by year.
+     */
+    private void writeYears(final Map<Integer, Map<String, long[]>> years, final Map<Integer, Long> stamps) {
+        try
+            {
+            // Lay out the years after the header and directory
+            final List<Integer> yearList = new ArrayList<Integer>(years.keySet());
+            final ByteBuffer header = ByteBuffer.allocate(ActualsStore.HEADER_SIZE + (yearList.size() * ActualsStore.ENTRY_SIZE));
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(body);
+            header.putInt(0);  // The magic number is written last
+            header.putInt(ActualsStore.VERSION);
+            header.putInt(yearList.size());
+            for (final Integer year : yearList)
+                {
+                final int offset = header.capacity() + out.size();
+                final Map<String, long[]> totals = years.get(year);
+                out.writeInt(totals.size());
+                for (final Map.Entry<String, long[]> category : totals.entrySet())
+                    {
+                    final byte[] uuid = category.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(uuid.length);
+                    out.write(uuid);
+                    for (final long value : category.getValue())
+                        out.writeLong(value);
+                    }
+                header.putInt(year.intValue());
+                header.putLong(stamps.get(year).longValue());
+                header.putLong(offset);
+                header.putInt((header.capacity() + out.size()) - offset);
+                }
+            out.flush();
+
+            try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+                {
+                // Write everything with a zero magic number first so that a
+                // file left half written is never trusted
+                header.flip();
+                channel.write(header, 0);
+                channel.write(ByteBuffer.wrap(body.toByteArray()), header.capacity());
+                channel.force(false);
+
+                // Now mark the file valid
+                channel.write(ByteBuffer.allocate(4).putInt(0, ActualsStore.MAGIC), 0);
+                channel.force(false);
+
+                // Drop the end of a longer old file, a file still mapped can not
+                // be truncated on some systems but its end is never read
+                try
+                    {
+                    channel.truncate(header.capacity() + body.size());
+                    }
+                catch (final IOException e)
+                    {
+                    // Leave the old end in place
+                    }
+                }
+            }
+        catch (final IOException e)
+            {
+            System.err.println("ERROR: Unable to write "+this.file+": "+e);
+            }
+    }
+}
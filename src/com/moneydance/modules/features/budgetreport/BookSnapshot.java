@@ -0,0 +1,304 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.infinitekind.util.DateUtil;
+
+/**
+* Copy of the data needed to build the reports of one budget over a range of
+* months, taken on the event dispatch thread so the reports can be built on a
+* background thread without touching the data file.
+* The Moneydance data model is only read and changed on the event dispatch
+* thread, it is not documented as safe to read from another thread while it
+* changes. The prefetcher, the warm start and the parameter debouncer take a
+* snapshot on the event dispatch thread and build from it in the background:
+* the categories, the budget amounts of the months and the splits of the
+* months, past years as their monthly totals, are copied up front.
+*
+* <p>Reports of data files with categories in a currency other than the base
+* currency are not snapshotted, as their roll-ups convert currencies with the
+* current rates of the data file. They are only built on the event dispatch
+* thread.
+*
+* <p><b>Note:</b> Only take() must be called on the event dispatch thread.
+*/
+public final class BookSnapshot implements ReportDataSource {
+    // The base currency of the data source
+    private final String baseCurrency;
+
+    // The names of the budgets of the data source
+    private final String[] budgetNames;
+
+    // The categories of the data source in account tree order
+    private final List<ReportCategory> categories;
+
+    // The budget the amounts were copied from
+    private final String budgetName;
+
+    // The months copied
+    private final MonthRange range;
+
+    // The budget amounts of each category without children by month of the range
+    private final Map<String, long[]> budgetAmounts;
+
+    // The splits of the months, null once the snapshot is released
+    private volatile SplitBuffer splits;
+
+    // The change stamp of the data source when the snapshot was taken
+    private final long changeStamp;
+
+    private BookSnapshot(final ReportDataSource dataSource, final List<ReportCategory> categories, final String budgetName, final MonthRange range) {
+        this.baseCurrency = dataSource.getBaseCurrency();
+        this.budgetNames = dataSource.getBudgetNames();
+        this.categories = Collections.unmodifiableList(categories);
+        this.budgetName = budgetName;
+        this.range = range;
+        this.changeStamp = dataSource.getChangeStamp();
+
+        // Copy the budget amounts the report builder looks up
+        this.budgetAmounts = new HashMap<String, long[]>();
+        for (final ReportCategory category : categories)
+            {
+            if (category.hasChildren())
+                continue;
+
+            final long[] amounts = new long[range.getMonthCount()];
+            for (int month = 1; month <= range.getMonthCount(); month++)
+                amounts[month - 1] = dataSource.getBudgetAmount(budgetName, category, range.getYear(month), range.getMonth(month));
+            this.budgetAmounts.put(category.getUUID(), amounts);
+            }
+
+        // Copy the splits, past years come as monthly totals from the actuals store
+        this.splits = new SplitBuffer();
+        dataSource.scanTransactions(range.getStartDate(), range.getEndDate(), this.splits);
+    }
+
+    /**
+     * Take a snapshot of the data needed to build reports of a budget.
+     *
+     * @param dataSource - The data source to copy, only read on the event dispatch thread.
+     * @param budgetName - The name of the budget of the reports.
+     * @param range - The months of the reports.
+     * @return BookSnapshot - The snapshot, or null if the reports can only be
+     * built from the data source itself because they convert currencies.
+     */
+    public static BookSnapshot take(final ReportDataSource dataSource, final String budgetName, final MonthRange range) {
+        // Currency conversions need the rates of the data file
+        final String baseCurrency = dataSource.getBaseCurrency();
+        final List<ReportCategory> categories = dataSource.getCategories();
+        for (final ReportCategory category : categories)
+            {
+            if (!category.getCurrency().equals(baseCurrency))
+                return null;
+            }
+
+        return new BookSnapshot(dataSource, categories, budgetName, range);
+    }
+
+    /**
+     * Drop the splits once all the reports have been built from the
+     * snapshot, so the reports cached don't keep them. The lists built still
+     * use the snapshot for their currency.
+     */
+    public void release() {
+        this.splits = null;
+    }
+
+    /**
+     * @return the months of the snapshot
+     */
+    public MonthRange getRange() {
+        return this.range;
+    }
+
+    /**
+     * @return The base currency ID string of the data source
+     */
+    @Override
+    public String getBaseCurrency() {
+        return this.baseCurrency;
+    }
+
+    /**
+     * @return The names of the budgets of the data source
+     */
+    @Override
+    public String[] getBudgetNames() {
+        return this.budgetNames.clone();
+    }
+
+    /**
+     * @return The categories of the data source in account tree order
+     */
+    @Override
+    public List<ReportCategory> getCategories() {
+        return this.categories;
+    }
+
+    /**
+     * Get the budget amount of a category for a month of the snapshot.
+     *
+     * @param budgetName - The name of the budget, the budget of the snapshot.
+     * @param category - The category to get the budget amount for.
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @return long - The budget amount, 0 if no budget amount exists.
+     */
+    @Override
+    public long getBudgetAmount(final String budgetName, final ReportCategory category, final int year, final int month) {
+        final int index = this.range.indexOf(DateUtil.getDate(year, month, 1));
+        if (!budgetName.equals(this.budgetName) || (index == 0))
+            throw new IllegalArgumentException("The budget amounts of "+budgetName+" for "+month+"/"+year+" are not in the snapshot");
+
+        final long[] amounts = this.budgetAmounts.get(category.getUUID());
+        return (amounts != null) ? amounts[index - 1] : 0;
+    }
+
+    /**
+     * Visit the splits of the snapshot dated in the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each split found.
+     */
+    @Override
+    public void scanTransactions(final int startDate, final int endDate, final TransactionVisitor visitor) {
+        this.getSplits(startDate, endDate).scan(startDate, endDate, visitor);
+    }
+
+    /**
+     * Get the splits of the snapshot in a date range as chunks that can be
+     * visited concurrently.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param chunkSize - The maximum number of splits in a chunk.
+     * @return List<TransactionChunk> - The chunks.
+     */
+    @Override
+    public List<TransactionChunk> getTransactionChunks(final int startDate, final int endDate, final int chunkSize) {
+        // Chunk the whole buffer when it is the range asked for, otherwise copy the splits of the range
+        final SplitBuffer buffer = this.getSplits(startDate, endDate);
+        if ((startDate == this.range.getStartDate()) && (endDate == this.range.getEndDate()))
+            return buffer.getChunks(chunkSize);
+
+        final SplitBuffer copy = new SplitBuffer();
+        buffer.scan(startDate, endDate, copy);
+        return copy.getChunks(chunkSize);
+    }
+
+    /**
+     * Count the splits of the snapshot in a date range.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @return long - The number of splits.
+     */
+    @Override
+    public long estimateSplits(final int startDate, final int endDate) {
+        return this.getSplits(startDate, endDate).count(startDate, endDate);
+    }
+
+    /**
+     * Convert a value from one currency to another. All the categories of a
+     * snapshot are in the base currency so nothing is ever converted.
+     *
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID string of the currency of the value.
+     * @param toCurrency - The ID string of the currency to convert to.
+     * @return long - The value.
+     */
+    @Override
+    public long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        if (!fromCurrency.equals(toCurrency))
+            throw new IllegalArgumentException("A snapshot can't convert "+fromCurrency+" to "+toCurrency);
+        return value;
+    }
+
+    /**
+     * Reports built from a snapshot are displayed by a table model that
+     * formats them with its own data source.
+     *
+     * @param value - The value to format.
+     * @param currency - The ID string of the currency of the value.
+     * @param separator - The decimal separator character.
+     * @return String - Never returns.
+     */
+    @Override
+    public String formatValue(final long value, final String currency, final char separator) {
+        throw new UnsupportedOperationException("A snapshot does not format values");
+    }
+
+    /**
+     * Nothing is cached, the snapshot is a copy.
+     */
+    @Override
+    public void clearCaches() {
+    }
+
+    /**
+     * @return the change stamp of the data source when the snapshot was taken
+     */
+    @Override
+    public long getChangeStamp() {
+        return this.changeStamp;
+    }
+
+    /**
+     * Drop the splits, as release.
+     */
+    @Override
+    public void dispose() {
+        this.release();
+    }
+
+    /**
+     * Get the splits of the snapshot for a date range.
+     *
+     * @param startDate - The first date needed (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not needed.
+     * @return SplitBuffer - The splits.
+     */
+    private SplitBuffer getSplits(final int startDate, final int endDate) {
+        if ((startDate < this.range.getStartDate()) || (endDate > this.range.getEndDate()))
+            throw new IllegalArgumentException("The splits from "+startDate+" to "+endDate+" are not in the snapshot");
+
+        final SplitBuffer buffer = this.splits;
+        if (buffer == null)
+            throw new IllegalStateException("The snapshot has been released");
+        return buffer;
+    }
+}
@@ -31,16 +31,16 @@
 package com.moneydance.modules.features.budgetreport;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
 
 import javax.swing.JOptionPane;
 
 import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.AccountBook;
 
 /**
 * Create a list to hold budget category items
@@ -51,12 +51,25 @@ import com.infinitekind.moneydance.model.AccountBook;
 * @author  Jerry Jones
 */
 public class BudgetCategoriesList {
-    // The current data file
-    private final AccountBook book;
+    // The data source the categories come from
+    private final ReportDataSource dataSource;
+
+    // Estimated bytes used by each category item (see estimateMemory)
+    private static final int BYTES_PER_ITEM = 48 + (2 * (16 + ((Constants.MAX_MONTHS + 2) * 4)))
+        + (2 * (Constants.MAX_MONTHS + 1) * 16) + 40 + 4 + (40 + 16);
+
+    // The statistics of the build of this list
+    private final ReportStatistics statistics = new ReportStatistics();
 
     // Create an empty LinkedHashMap to hold the data
     private LinkedHashMap<String, BudgetCategoryItem> lhm = null;
 
+    // The same items in the order they were added, to look them up by index
+    private final ArrayList<BudgetCategoryItem> items = new ArrayList<BudgetCategoryItem>();
+
+    // The index of each item by UUID
+    private final HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+
     
     // Create an object to track the parent as categories are added to the list
     private final parentTracker tracker = new parentTracker();
@@ -65,11 +78,11 @@ public class BudgetCategoriesList {
     /** 
      * Default constructor for the BudgetCategoriesList.
      * 
-     * @param book - The account book to use for the data model
+     * @param dataSource - The data source to use for the data model
      */
-    public BudgetCategoriesList(AccountBook book) {
-        // Save the account book for later
-        this.book = book;
+    public BudgetCategoriesList(final ReportDataSource dataSource) {
+        // Save the data source for later
+        this.dataSource = dataSource;
 
         // Create a hash map for the categories
         this.lhm = new LinkedHashMap<String, BudgetCategoryItem>();
@@ -83,7 +96,30 @@ public class BudgetCategoriesList {
      * @return int - Number of items in the list.
      */
     public int getCategoryCount() {
-        return this.lhm.size();  
+        return this.lhm.size();
+    }
+
+
+    /**
+     * Estimate the memory used by the category items in this list. The
+     * estimate assumes compressed object pointers: the item itself, its two
+     * value arrays of Constants.MAX_MONTHS months and the total, a boxed
+     * value for each of those months and the total, the hash map entry, the
+     * list slot and the index map entry with its boxed index. Reports of
+     * fewer months box fewer values, so the estimate is an upper bound.
+     *
+     * @return long - The estimated size of the list in bytes.
+     */
+    public long estimateMemory() {
+        return (long) this.lhm.size() * BudgetCategoriesList.BYTES_PER_ITEM;
+    }
+
+
+    /**
+     * @return the statistics of the build of this list
+     */
+    public ReportStatistics getStatistics() {
+        return this.statistics;
     }
 
 
@@ -102,11 +138,13 @@ public class BudgetCategoriesList {
      */
     public BudgetCategoryItem add(final String UUID, final String fullName, final Account.AccountType type, final int level) {
         // Create a new budget category item for this category
-        final BudgetCategoryItem bcItem = new BudgetCategoryItem(fullName, type, this.book.getCurrencies().getBaseType(), this.tracker.getParent(level, true), level);
+        final BudgetCategoryItem bcItem = new BudgetCategoryItem(fullName, type, this.dataSource.getBaseCurrency(), this.tracker.getParent(level, true), level);
 
      
         // Put the item in the hash map
         this.lhm.put(UUID, bcItem);
+        this.indexes.put(UUID, Integer.valueOf(this.items.size()));
+        this.items.add(bcItem);
 
         // Return the new item to the caller
         return bcItem;
@@ -118,51 +156,39 @@ public class BudgetCategoriesList {
      * 
      * <p><b>Note:</b> A category in Moneydance is the same thing as an account.
      * 
-     * @param acct - The account object of the category to add.
-     * Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses).
+     * @param category - The category to add.
      * @return BudgetCategoryItem - Returns the BudgetCategoryItem object created 
      * for this category.
      */
-    public BudgetCategoryItem add(final Account acct) {
+    public BudgetCategoryItem add(final ReportCategory category) {
         // Prompt the user if a duplicate category is found (same parent and same
         // type) and then exit without adding the category. 
-        if (this.lhm.containsKey(acct.getUUID()))
+        if (this.lhm.containsKey(category.getUUID()))
             {
             // Display a warning message - Duplicate UUID!
             JOptionPane.showMessageDialog( null,
-            "The UUID "+acct.getUUID()+" has been found more than once and this one will be ignored. Something is seriously wrong here!",
+            "The UUID "+category.getUUID()+" has been found more than once and this one will be ignored. Something is seriously wrong here!",
             "Error (Monthly Budget Bars)",
             JOptionPane.ERROR_MESSAGE);
             return null;
             }
 
-        // Get the sub-accounts of this account
-        final List <Account> subAccts = acct.getSubAccounts();
-        
-        // Loop through the sub categories of this category to see if it has any active children
-        // You can't simply use acct.getSubAccountCount() as it will also count inactive accounts.
-        boolean hasChildren = false;
-        for (final Iterator<Account> i = subAccts.iterator(); i.hasNext();) {
-            final Account item = i.next();
-            if ((!item.getAccountOrParentIsInactive()) && (!item.getHideOnHomePage()))
-                {
-                // We only have to find one to declare that this category has children
-                hasChildren = true;
-                break;
-                }
-        }
+        // Does this category have active children?
+        final boolean hasChildren = category.hasChildren();
 
         // Get the full account name of the category item
-        final String fullName = acct.getFullAccountName();
+        final String fullName = category.getFullName();
 
         // Get the indent level of this category
         final int indentLevel = BudgetCategoriesList.calcIndentLevel(fullName);
         
         // Create a new budget category item for this category
-        final BudgetCategoryItem bcItem = new BudgetCategoryItem(acct, acct.getAccountType(), acct.getCurrencyType(), this.tracker.getParent(indentLevel, hasChildren), indentLevel, hasChildren);
+        final BudgetCategoryItem bcItem = new BudgetCategoryItem(category, category.getType(), category.getCurrency(), this.tracker.getParent(indentLevel, hasChildren), indentLevel, hasChildren);
         
         // Put the item in the hash map
-        this.lhm.put(acct.getUUID(), bcItem);
+        this.lhm.put(category.getUUID(), bcItem);
+        this.indexes.put(category.getUUID(), Integer.valueOf(this.items.size()));
+        this.items.add(bcItem);
 
         // Return the new item to the caller
         return bcItem;
@@ -191,8 +217,47 @@ public class BudgetCategoriesList {
      * to the index provided. Returns null if the index is not valid.
      */
     public BudgetCategoryItem getCategoryItemByIndex(final int index) {
-        final Set<String> keys = this.lhm.keySet();
-        return this.lhm.get(keys.toArray()[index]);
+        if ((index < 0) || (index >= this.items.size()))
+            return null;
+        return this.items.get(index);
+    }
+
+
+    /** 
+     * This method returns the index of the BudgetCategoryItem for the UUID
+     * passed.
+     * 
+     * @param UUID - The UUID of the account to get the index of.
+     * @return int - The index [0...n] of the item, -1 if the item does not exist.
+     */
+    public int getCategoryIndex(final String UUID) {
+        final Integer index = this.indexes.get(UUID);
+        return (index != null) ? index.intValue() : -1;
+    }
+
+
+    /** 
+     * This method returns all of the BudgetCategoryItems in the order they
+     * were added.
+     * 
+     * @return List<BudgetCategoryItem> - Unmodifiable list of the items.
+     */
+    public List<BudgetCategoryItem> getCategoryItems() {
+        return Collections.unmodifiableList(this.items);
+    }
+
+       
+    /** 
+     * Convert a value from one currency to another using the data source.
+     * 
+     * @param value - The value to convert.
+     * @param fromCurrency - The currency ID string of the value.
+     * @param toCurrency - The currency ID string to convert to.
+     * @return long - The converted value.
+     */
+    public long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        this.statistics.countConversion();
+        return this.dataSource.convertValue(value, fromCurrency, toCurrency);
     }
 
        
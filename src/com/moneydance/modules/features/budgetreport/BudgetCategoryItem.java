@@ -30,10 +30,10 @@
  */ 
 package com.moneydance.modules.features.budgetreport;
 
+import java.util.Arrays;
+
 import com.infinitekind.moneydance.model.Account;
 import com.infinitekind.moneydance.model.Account.AccountType;
-import com.infinitekind.moneydance.model.CurrencyType;
-import com.infinitekind.moneydance.model.CurrencyUtil;
 
 /**
 * Class for budget category items
@@ -48,8 +48,8 @@ final class BudgetCategoryItem {
     // The category item row of the parent item this category rolls up to if any. -1 means no parent.
     private int parentRow = -1;    
 
-    // The account for tis category
-    private final Account account;
+    // The category for this item, null for special categories
+    private final ReportCategory category;
 
     // The short name for this category. This is the final name without parents
     // prepended i.e. "Fuel" not "Auto:Fuel"
@@ -63,34 +63,38 @@ final class BudgetCategoryItem {
     // Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses)
     private final Account.AccountType categoryType;
 
-    // The currency type for this category
-    private final CurrencyType currencyType;
+    // The currency ID string for this category
+    private final String currencyType;
     
     // WHen true, this category has children and no budget values should exist for this category.
     private final boolean hasChildren; 
 
-    // budgetValues [0] is not used, [1...12] each monthly budget, [13] overall budget total for this category
-    private final Long budgetValues[] = {0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L};
+    // The index of the overall total in the value arrays
+    public static final int TOTAL = Constants.MAX_MONTHS + 1;
+
+    // budgetValues [0] is not used, [1...MAX_MONTHS] each month of the report, [TOTAL] overall budget total for this category
+    private final Long budgetValues[] = BudgetCategoryItem.zeros();
 
-	// actualTotals [0] is not used, [1...12] each monthly actual total, [13] overall actual total for this category
-    private final Long actualTotals[] = {0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L};
+	// actualTotals [0] is not used, [1...MAX_MONTHS] each month of the report, [TOTAL] overall actual total for this category
+    private final Long actualTotals[] = BudgetCategoryItem.zeros();
 
     /**
      * Constructor to add a normal category as opposed to a special category.
      * 
-     * @param acct - The category (account) to add.
+     * @param category - The category to add.
      * @param type - The type of account, either
      * Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses)
+     * @param currencyType - The currency ID string for this category.
      * @param parent - The parent index for this category.
      * @param indent - The indent level for this category.
      * @param hasChildren - true if this category has children, false otherwise.
      */
-    BudgetCategoryItem(final Account acct, final Account.AccountType type, CurrencyType currencyType, final int parent, final int indent, final boolean hasChildren ) {
-        // Save the account
-        this.account = acct;
+    BudgetCategoryItem(final ReportCategory category, final Account.AccountType type, final String currencyType, final int parent, final int indent, final boolean hasChildren ) {
+        // Save the category
+        this.category = category;
 
         // Save the short category name;
-        this.shortName = this.account.getAccountName();
+        this.shortName = this.category.getShortName();
 
         // Calculate the indent level (Count colons)
         this.indentLevel = indent;
@@ -115,12 +119,13 @@ final class BudgetCategoryItem {
      * @param name - The name of the special category.
      * @param type - Account.AccountType.ROOT (Totals),
      * Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses)
+     * @param currencyType - The currency ID string for this category.
      * @param parent - The parent index for this category.
      * @param indent - The indent level for this category.
      */
-    BudgetCategoryItem(final String name, final Account.AccountType type, CurrencyType currencyType, final int parent, final int indent) {
-        // Special accounts don't have an account object
-        this.account = null;
+    BudgetCategoryItem(final String name, final Account.AccountType type, final String currencyType, final int parent, final int indent) {
+        // Special accounts don't have a category object
+        this.category = null;
 
         // Save the short category name;
         this.shortName = name;
@@ -143,12 +148,22 @@ final class BudgetCategoryItem {
 
     
     /** 
-     * Get the Account object for this category.
+     * @return a value array with all of the values 0
+     */
+    private static Long[] zeros() {
+        final Long[] values = new Long[BudgetCategoryItem.TOTAL + 1];
+        Arrays.fill(values, Long.valueOf(0));
+        return values;
+    }
+
+
+    /** 
+     * Get the ReportCategory object for this category.
      * 
-     * @return Account - The account object.
+     * @return ReportCategory - The category object, null for special categories.
      */
-    public Account getAccount() {
-        return this.account;
+    public ReportCategory getCategory() {
+        return this.category;
     }
 
     
@@ -194,26 +209,26 @@ final class BudgetCategoryItem {
 
         
     /** 
-     * @return The CurrencyType for this category
+     * @return The currency ID string for this category
      */
-    public CurrencyType getCurrencyType() {
+    public String getCurrencyType() {
         return this.currencyType;
     }
     
     /** 
      * Get the budget total for this category.
      * 
-     * @return Long - The total of category months 1...12.
+     * @return Long - The total of all the months of the category.
      */
     public Long getBudgetTotal() {
-        return this.budgetValues[13];
+        return this.budgetValues[BudgetCategoryItem.TOTAL];
     }
 
     
     /** 
      * Get the budget amount for the month requested.
      * 
-     * @param month - The month to return (1...12).
+     * @param month - The month of the report to return (1...Constants.MAX_MONTHS).
      * @return Long - The budget value for the month requested.
      */
     public Long getBudgetValueForMonth(final int month) {
@@ -226,7 +241,7 @@ final class BudgetCategoryItem {
      * 
      * @param model - The table model for the table.
      * @param budgetCategoriesList - The budget categories list object.
-     * @param month - The month to set (1...12).
+     * @param month - The month of the report to set (1...Constants.MAX_MONTHS).
      * @param value - The new budget value.
      * @param type - The category type. Account.AccountType.Income (Income)
      * or Account.AccountType.EXPENSE (Expenses)
@@ -250,7 +265,7 @@ final class BudgetCategoryItem {
         this.budgetValues[month] = value;
 
         // Keep track of the total for this budget category
-        this.budgetValues[13] = this.budgetValues[13] - previousValue + value;
+        this.budgetValues[BudgetCategoryItem.TOTAL] = this.budgetValues[BudgetCategoryItem.TOTAL] - previousValue + value;
 
         // Update parent
         if (this.parentRow != -1)
@@ -259,8 +274,8 @@ final class BudgetCategoryItem {
             if (parentItem != null)
                 {
                 // Convert the difference to the parent currency if needed
-                if (this.getCurrencyType() != parentItem.getCurrencyType())
-                    difference = CurrencyUtil.convertValue(value, this.getCurrencyType(), parentItem.getCurrencyType());
+                if (!this.getCurrencyType().equals(parentItem.getCurrencyType()))
+                    difference = budgetCategoriesList.convertValue(value, this.getCurrencyType(), parentItem.getCurrencyType());
                 
                 // Update the parent
                 parentItem.setBudgetValueForMonth(model, budgetCategoriesList, month, parentItem.budgetValues[month] + difference, type);
@@ -272,7 +287,7 @@ final class BudgetCategoryItem {
                     model.fireTableCellUpdated(this.parentRow, month);
 
                     // Tell the model the row total value changed
-                    model.fireTableCellUpdated(this.parentRow, 13);
+                    model.fireTableCellUpdated(this.parentRow, BudgetCategoryItem.TOTAL);
                     }
                 }
             else
@@ -286,7 +301,7 @@ final class BudgetCategoryItem {
      * @return Long - The actuals total of category months 1...12.
      */
     public Long getActualTotal() {
-        return this.actualTotals[13];
+        return this.actualTotals[BudgetCategoryItem.TOTAL];
     }
 
     /** 
@@ -295,13 +310,13 @@ final class BudgetCategoryItem {
      * @param value = The value to set.
      */
     public void setActualTotal(final long value) {
-        this.actualTotals[13] = value;
+        this.actualTotals[BudgetCategoryItem.TOTAL] = value;
     }
   
     /** 
      * Get the monthly actual amount for the month requested.
      * 
-     * @param month - The month to return (1...12).
+     * @param month - The month of the report to return (1...Constants.MAX_MONTHS).
      * @return Long - The actual value for the month requested.
      */
     public Long getActualTotalForMonth(final int month) {
@@ -311,7 +326,7 @@ final class BudgetCategoryItem {
     /** 
      * Set the monthly actual amount for the month requested.
      * 
-     * @param month - The month to set (1...12).
+     * @param month - The month of the report to set (1...Constants.MAX_MONTHS).
      * @param value = The value to set.    
      */
     public void setActualTotalForMonth(final int month, final long value) {
@@ -334,14 +349,16 @@ final class BudgetCategoryItem {
         if (parentItem != null)
             {
             // Iterate through each month
-            for (int month = 1; month <= 12; month++)
+            for (int month = 1; month <= Constants.MAX_MONTHS; month++)
                 {
-                // Get the child actual total for the month
+                // Get the child actual total for the month, months without actuals have nothing to add
                 long childActual = childItem.getActualTotalForMonth(month);
+                if (childActual == 0)
+                    continue;
 
                 // Convert the child currency to the parent currency if needed
-                if (childItem.getCurrencyType() != parentItem.getCurrencyType())
-                    childActual = CurrencyUtil.convertValue(childActual, childItem.getCurrencyType(), parentItem.getCurrencyType());
+                if (!childItem.getCurrencyType().equals(parentItem.getCurrencyType()))
+                    childActual = budgetCategoriesList.convertValue(childActual, childItem.getCurrencyType(), parentItem.getCurrencyType());
                                   
                     // The root account is the Income-Expense row so this needs to be treated differently
                     if (parentItem.categoryType == Account.AccountType.ROOT)
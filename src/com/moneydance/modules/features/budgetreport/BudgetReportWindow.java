@@ -40,34 +40,33 @@ import java.awt.Dimension;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
 import java.awt.GridBagLayout;
+import java.awt.KeyboardFocusManager;
 import java.awt.Toolkit;
+import java.awt.Window;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowEvent;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputFilter;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -75,10 +74,12 @@ import java.util.Map;
 
 import javax.print.attribute.HashPrintRequestAttributeSet;
 import javax.print.attribute.PrintRequestAttributeSet;
+import javax.swing.AbstractAction;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFormattedTextField;
@@ -92,10 +93,16 @@ import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableColumn;
@@ -104,8 +111,6 @@ import javax.swing.table.TableColumnModel;
 import com.infinitekind.moneydance.model.Account;
 import com.infinitekind.moneydance.model.AccountBook;
 import com.infinitekind.moneydance.model.Budget;
-import com.infinitekind.moneydance.model.CurrencyType;
-import com.infinitekind.moneydance.model.CurrencyUtil;
 import com.moneydance.apps.md.controller.FeatureModuleContext;
 import com.moneydance.apps.md.view.gui.MDColors;
 import com.moneydance.awt.AwtUtil;
@@ -139,6 +144,31 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     // The current data file
     private final AccountBook book;
 
+  // The memorized reports of the data file
+  private final ReportCatalog catalog;
+
+  // Updates the report selector when the memorized reports change
+  private final ChangeListener catalogListener = new ChangeListener() {
+    @Override
+    public void stateChanged(final ChangeEvent e) {
+      BudgetReportWindow.this.catalogChanged();
+    }
+  };
+
+  // true when another Moneydance window, i.e. the budget manager, has been
+  // active since the report was displayed so the budgets may have changed
+  private boolean budgetsMayHaveChanged = false;
+
+  // Reloads the report with fresh budgets when the window is activated again
+  // after another Moneydance window. Budget edits fire no events, so they are
+  // not covered by the change stamp of the cached reports.
+  private final PropertyChangeListener activeWindowListener = new PropertyChangeListener() {
+    @Override
+    public void propertyChange(final PropertyChangeEvent e) {
+      BudgetReportWindow.this.activeWindowChanged((Window) e.getNewValue());
+    }
+  };
+
   // The budget selection control
   private JComboBox<String> budgetSelector;
 
@@ -148,8 +178,10 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
   // Budget map
   private final Map<String,Budget> mapBudgets = new HashMap<String,Budget>();
 
-  // Storage for the table used to edit budget data
+  // Storage for the table used to edit budget data, the values scroll
+  // horizontally next to the fixed category column
   private Table table;
+  private Table categoryTable;
   private TableModel tableModel = null;
 
   // Panels used to display information
@@ -165,6 +197,7 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
   private JButton exportButton;
 
   // Controls needing access from outside doEdit
+  private JComboBox<String> periodSelector;
   private final JComboBox<String> startSelector = new JComboBox<String>(Constants.months);
   private final JComboBox<String> endSelector = new JComboBox<String>(Constants.months);
   private final JSpinner yearSelector = new JSpinner();
@@ -172,6 +205,9 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
   // Report header
   private JLabel dateRange = null;
 
+  // Optional report build diagnostics, null when not displayed
+  private DiagnosticsPanel diagnosticsPanel = null;
+
   // List of memorized report names
   private JComboBox<String> reportSelector = null;
   
@@ -198,6 +234,9 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     // Save the account book for later
     this.book = this.context.getCurrentAccountBook();
 
+    // Get the memorized reports, loaded once per session
+    this.catalog = extension.getCatalog(this.book);
+
     // Get the colors for the current Moneydance theme
     this.colors = com.moneydance.apps.md.view.gui.MDColors.getSingleton();
 
@@ -238,6 +277,9 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     this.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
     this.enableEvents(WindowEvent.WINDOW_CLOSING);
 
+    // Watch for the user switching to other Moneydance windows
+    KeyboardFocusManager.getCurrentKeyboardFocusManager().addPropertyChangeListener("activeWindow", this.activeWindowListener);
+
     // Center the frame on the screen
     AwtUtil.centerWindow(this);
 
@@ -286,12 +328,27 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         }
       });
 
+      /*
+      ** Preview Button
+      */
+      final JButton previewButton = new JButton("Preview");
+      previewButton.setToolTipText("Preview the printed report");
+      this.topRtPanel.add(previewButton,GridC.getc(2,0).insets(10,5,10,5));
+
+      // Create an action listener to dispatch the action when this button is clicked
+      previewButton.addActionListener(new ActionListener() {
+        @Override
+        public void actionPerformed(final ActionEvent e) {
+          BudgetReportWindow.this.doPreview();
+        }
+      });
+
       /*
       ** Memorize Button
       */
       final JButton memorizeButton = new JButton("Memorize");
       memorizeButton.setToolTipText("Memorize the current report");
-      this.topRtPanel.add(memorizeButton,GridC.getc(2,0).insets(10,5,10,5));
+      this.topRtPanel.add(memorizeButton,GridC.getc(3,0).insets(10,5,10,5));
 
       // Create an action listener to dispatch the action when this button is clicked
       memorizeButton.addActionListener(new ActionListener() {
@@ -306,7 +363,7 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       */
       this.exportButton = new JButton("Export");
       this.exportButton.setToolTipText("Export the report data in various formats");
-      this.topRtPanel.add(this.exportButton,GridC.getc(3,0).insets(10,5,10,15));
+      this.topRtPanel.add(this.exportButton,GridC.getc(4,0).insets(10,5,10,15));
 
       // Create an action listener to dispatch the action when this button is clicked
       this.exportButton.addActionListener(new ActionListener() {
@@ -360,8 +417,9 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     this.reportSelector.setEditable(false);
     this.reportSelector.setToolTipText("Select the memorized report to display");
     
-    // Get a current list of report names
+    // Get a current list of report names, and keep it current
     this.updateReportSelector();
+    this.catalog.addChangeListener(this.catalogListener);
         
     // Add the report selector
     this.topCtrPanel.add(this.reportSelector, GridC.getc(0, 0).insets(10, 0, 10, 0));
@@ -370,30 +428,36 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     this.reportSelector.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(final ActionEvent e) {
-        // Load the report unless the selector is set to "<Unsaved Report>"
-        if (!BudgetReportWindow.this.reportSelector.getSelectedItem().toString().equals(Constants.UNSAVED_REPORT))
+        // Measure how long the callback blocks the event dispatch thread
+        final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.reportSelector");
+        try
           {
-          // Load the selected report
-          BudgetReportWindow.this.loadReport(BudgetReportWindow.this.reportSelector.getSelectedItem().toString());
-          
-          // Reload the table
-          BudgetReportWindow.this.tableModel.LoadData();
+          // Load the report unless the selector is set to "<Unsaved Report>"
+          if (!BudgetReportWindow.this.reportSelector.getSelectedItem().toString().equals(Constants.UNSAVED_REPORT))
+            {
+            // Load the selected report, this also reloads the table
+            BudgetReportWindow.this.loadReport(BudgetReportWindow.this.reportSelector.getSelectedItem().toString());
           
-          // Update the report header
-          BudgetReportWindow.this.updateHeader();
+            // Update the report header
+            BudgetReportWindow.this.updateHeader();
 
-          // Update the memorized report list after loading a report in case
-          // there was an <Unsaved Report> selector in the list before this
-          // report was selected.
-          BudgetReportWindow.this.updateReportSelector();
+            // Update the memorized report list after loading a report in case
+            // there was an <Unsaved Report> selector in the list before this
+            // report was selected.
+            BudgetReportWindow.this.updateReportSelector();
+            }
+          else
+            {
+            // Set the report name
+            BudgetReportWindow.this.currentReport.setReportName(Constants.UNSAVED_REPORT);
+
+            // Update the report header
+            BudgetReportWindow.this.updateHeader();
+            }
           }
-        else
+        finally
           {
-          // Set the report name
-          BudgetReportWindow.this.currentReport.setReportName(Constants.UNSAVED_REPORT);
-
-          // Update the report header
-          BudgetReportWindow.this.updateHeader();
+          section.end();
           }
           
         }
@@ -415,29 +479,90 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     this.dateRange.setBorder(new EmptyBorder(0, 0, 15, 0));
     this.reportPanel.add(this.dateRange, BorderLayout.NORTH);
 
-    // Create a table to use to display the budget values
-    this.table = new Table(this.tableModel = new TableModel(this, this.context), this.colors, false);
+    // Bind the report precomputed by the warm start if there is one
+    final ReportWarmup.Result warmStart = this.extension.getWarmup().take(this.book);
+    if (warmStart != null)
+      this.tableModel = new TableModel(this, warmStart);
+    else
+      this.tableModel = new TableModel(this, this.context);
+
+    // Create a table to use to display the budget values, and a table for the
+    // category column that stays in place when the values are scrolled
+    this.table = new Table(this.tableModel, this.colors, false, Table.VALUE_COLUMNS);
+    this.categoryTable = new Table(this.tableModel, this.colors, false, Table.CATEGORY_COLUMN);
 
-    // Do not allow selection of an entire row
-    this.table.setRowSelectionAllowed(false);
+    for (final Table view : new Table[] { this.table, this.categoryTable })
+      {
+      // Do not allow selection of an entire row
+      view.setRowSelectionAllowed(false);
 
-    // Do not allow columns to be reordered by dragging them
-    this.table.getTableHeader().setReorderingAllowed(false);
+      // Do not allow columns to be reordered by dragging them
+      view.getTableHeader().setReorderingAllowed(false);
 
-    // Do not allow the JTable to do automatic resizing
-    this.table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+      // Do not allow the JTable to do automatic resizing
+      view.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+      }
 
     // Set the minimum width of the columns as well as the cell renderer
-    this.forceTableStructureChange(false); 
+    this.forceTableStructureChange(); 
 
-    //Create the scroll pane and add the table to it.
+    // Size the columns again when the model changes the columns, i.e. a
+    // different number of months. The model tells this listener before the
+    // tables rebuild their columns, so size them once the tables are done.
+    this.tableModel.addTableModelListener(new TableModelListener() {
+      @Override
+      public void tableChanged(final TableModelEvent e) {
+        if (e.getFirstRow() == TableModelEvent.HEADER_ROW)
+          SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+              BudgetReportWindow.this.forceTableStructureChange();
+            }
+          });
+      }
+    });
+
+    //Create the scroll pane and add the table to it. The category table is the
+    //row header so only the values scroll horizontally.
     final JScrollPane scrollPane = new JScrollPane(this.table, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+    scrollPane.setRowHeaderView(this.categoryTable);
+    scrollPane.setCorner(JScrollPane.UPPER_LEFT_CORNER, this.categoryTable.getTableHeader());
 
     //Add the scroll pane to this panel.
     this.reportPanel.add(scrollPane, BorderLayout.CENTER);
 
     // Add a component listener so we get resize events
     this.reportPanel.addComponentListener(this);
+
+    // Show or hide the report build diagnostics with Ctrl+Shift+D
+    this.reportPanel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_D, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "toggleDiagnostics");
+    this.reportPanel.getActionMap().put("toggleDiagnostics", new AbstractAction() {
+      @Override
+      public void actionPerformed(final ActionEvent e) {
+        BudgetReportWindow.this.toggleDiagnostics();
+      }
+    });
+  }
+
+  /**
+   * Show the report build diagnostics panel below the report if it is hidden,
+   * or hide it if it is showing.
+   */
+  private void toggleDiagnostics() {
+    if (this.diagnosticsPanel == null)
+      {
+      this.diagnosticsPanel = new DiagnosticsPanel();
+      this.reportPanel.add(this.diagnosticsPanel, BorderLayout.SOUTH);
+      }
+    else
+      {
+      this.reportPanel.remove(this.diagnosticsPanel);
+      this.diagnosticsPanel = null;
+      }
+
+    // Layout the report panel again
+    this.reportPanel.revalidate();
+    this.reportPanel.repaint();
   }
 
   /**
@@ -447,20 +572,12 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       // Create a default array in case no reports are found
       String[] reportNames = {Constants.UNSAVED_REPORT};
 
-      // Find all reports that have been memorized
-      final File rootFolder = this.context.getCurrentAccountBook().getRootFolder();
-      final String[] filenames = rootFolder.list((f,name)->name.endsWith(".mbrpt"));
+      // Get all reports that have been memorized, sorted by name
+      final List<String> names = this.catalog.getReportNames();
 
       // Did we find any reports?
-      if (filenames.length != 0)
-        {
-        // Strip off the file extension from the file names to get the report names
-        final List<String> v = new ArrayList<>();
-        for (int i = 0; i < filenames.length; i++) 
-          v.add(filenames[i].replace(".mbrpt", ""));
-        reportNames = v.toArray(new String[v.size()]);
-        Arrays.sort(reportNames);
-        }
+      if (!names.isEmpty())
+        reportNames = names.toArray(new String[names.size()]);
 
       // Update the report selector
       if (this.reportSelector != null)
@@ -470,12 +587,81 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         }
     } 
 
+  /**
+   * Method called when the memorized reports change, including changes made
+   * to the report files outside the extension.
+   */
+  private void catalogChanged() {
+    if ((this.reportSelector == null) || (this.currentReport == null))
+      return;
+
+    // Get a current list of report names
+    this.updateReportSelector();
+
+    // The report displayed is no longer memorized if it was forgotten
+    if (!this.catalog.getReportNames().contains(this.currentReport.getReportName()))
+      {
+      // Add an Unsaved Report item in the report selector and then select it
+      this.reportSelector.insertItemAt(Constants.UNSAVED_REPORT, 0);
+      this.reportSelector.setSelectedIndex(0);
+
+      // The report is no longer memorized
+      this.currentReport.setReportName(Constants.UNSAVED_REPORT);
+      this.currentReport.setMemorized(false);
+      this.updateHeader();
+      }
+  }
+
   /** 
    * Method called to update the report header
    */
   public void updateHeader() {
-    this.dateRange.setText(Constants.months[this.currentReport.getStartMonth() - 1]+" "+this.currentReport.getYear()+" - "
-        +Constants.months[this.currentReport.getEndMonth() - 1]+" "+this.currentReport.getYear());
+    this.dateRange.setText(MonthRange.of(this.currentReport).format(" "));
+  }
+
+  /**
+   * Release the table model when the window is disposed.
+   */
+  @Override
+  public void dispose() {
+    KeyboardFocusManager.getCurrentKeyboardFocusManager().removePropertyChangeListener("activeWindow", this.activeWindowListener);
+    if (this.catalog != null)
+      this.catalog.removeChangeListener(this.catalogListener);
+    if (this.tableModel != null)
+      this.tableModel.dispose();
+    super.dispose();
+  }
+
+  /**
+   * Called when the active window of the application changes. Switching to
+   * another Moneydance window may edit the budgets, so the reports cached
+   * are dropped and the report is reloaded when this window is active again.
+   * The dialogs of this window do not edit budgets.
+   *
+   * @param active - The window now active, null if another application is active.
+   */
+  private void activeWindowChanged(final Window active) {
+    // Switching to another application does not change the budgets
+    if (active == null)
+      return;
+
+    // Another Moneydance window
+    boolean own = false;
+    for (Window window = active; window != null; window = window.getOwner())
+      own |= (window == this);
+    if (!own)
+      {
+      this.budgetsMayHaveChanged = true;
+      return;
+      }
+
+    // Back to this window, reload the report with the budgets as they are now
+    if ((active == this) && this.budgetsMayHaveChanged && (this.tableModel != null))
+      {
+      this.budgetsMayHaveChanged = false;
+      this.tableModel.clearCaches();
+      this.tableModel.LoadData();
+      }
   }
 
   /** 
@@ -524,30 +710,10 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         }
       }
 
-    // Get the file path to load the report from
-    final File rootFolder = this.context.getCurrentAccountBook().getRootFolder();
-    final String filePath = rootFolder.getAbsolutePath()+File.separator+name+".mbrpt";
-
-    // Load the report
+    // Load the report from the catalog
     try 
       {
-      // Open the input streams
-      final FileInputStream fileIn = new FileInputStream(filePath);
-      final ObjectInputStream ois = new ObjectInputStream(fileIn);
-
-      // Only allow our Report objects
-      final ObjectInputFilter filter = ObjectInputFilter.Config.createFilter("com.moneydance.modules.features.budgetreport.Report;!*");
-      ois.setObjectInputFilter(filter);
-
-      // Read in the report
-      this.currentReport = (Report) ois.readObject();
-
-      // Set the report loaded from file flag (meaning it's memorized)
-      this.currentReport.setMemorized(true);
-
-      // Close the streams
-      ois.close();
-      fileIn.close();
+      this.currentReport = this.catalog.getReport(name);
       } 
     catch (final IOException i) 
       {
@@ -577,20 +743,6 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         return false;
         }
       }
-    catch (final ClassNotFoundException c) 
-      {
-      // For debugging
-      c.printStackTrace();
-
-      // Invalid report - class not found
-      JOptionPane.showMessageDialog( this,
-      "Invalid report ("+name+") - class not found. "+c.toString(),
-      "Invalid Report Error",
-      JOptionPane.ERROR_MESSAGE);
-
-      // Exit with failure status
-      return false;
-      }
 
     // Verify the budget name exists
     if (this.budgetList.getBudget(this.currentReport.getBudgetName()) == null)
@@ -602,9 +754,7 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       JOptionPane.ERROR_MESSAGE);
 
       // Delete the report
-      final File rptFile = new File(filePath);
-      if (rptFile.exists())
-        rptFile.delete();
+      this.catalog.remove(name);
 
       // If this was the default report then set the default report to null so we don't try to use it again
       final Account rootAccount = this.context.getCurrentAccountBook().getRootAccount();
@@ -617,55 +767,12 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       }
 
     // Depending on period, load the year, startMonth, and endMonth fields based on current time
-    switch (this.currentReport.getPeriod()) 
-      {
-      case Constants.PERIOD_AUTOMATIC:
-        this.currentReport.setYear(thisYear);
-        this.currentReport.setStartMonth(1);
-        this.currentReport.setEndMonth(thisMonth);
-        break;
-
-      case Constants.PERIOD_THIS_YEAR:
-        this.currentReport.setYear(thisYear);
-        this.currentReport.setStartMonth(1);
-        this.currentReport.setEndMonth(12);
-        break;
-      
-      case Constants.PERIOD_LAST_YEAR:
-        this.currentReport.setYear(thisYear - 1);
-        this.currentReport.setStartMonth(1);
-        this.currentReport.setEndMonth(12);
-        break;
-
-      case Constants.PERIOD_THIS_MONTH:
-        this.currentReport.setYear(thisYear);
-        this.currentReport.setStartMonth(thisMonth);
-        this.currentReport.setEndMonth(thisMonth);
-        break;    
-
-      case Constants.PERIOD_LAST_MONTH:
-        if (now.get(Calendar.MONTH) == 0)
-          {
-          this.currentReport.setYear(thisYear - 1);
-          this.currentReport.setStartMonth(12);
-          this.currentReport.setEndMonth(12);
-          }
-        else
-          {
-          this.currentReport.setYear(thisYear);
-          this.currentReport.setStartMonth(thisMonth - 1);
-          this.currentReport.setEndMonth(thisMonth - 1);
-          }
-        break;    
-        
-      // The year, startMonth and endMonth are already in the report data  
-      case Constants.PERIOD_CUSTOM:
-      default:
-        break;
-      }
+    this.currentReport.resolvePeriod(now);
 
-    // Update the table structure
-    this.forceTableStructureChange(true);
+    // Reload the table, the model changes the table structure only if the
+    // columns of the report loaded are different
+    if (this.tableModel != null)
+      this.tableModel.LoadData();
      
     // Successfully loaded the report
     return true;
@@ -673,27 +780,31 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
 
   
   /** 
-   * Force a table structure change when the number of months in a report changes or
-   * when subtotal by month changes.
-   * 
-   * @param informTableModel - True when the table model should be informed of the change.
+   * Size the columns and the window after a table structure change, when the
+   * number of months in a report changes or when subtotal by month changes.
    */
-  private void forceTableStructureChange(final Boolean informTableModel) {
+  private void forceTableStructureChange() {
+    // Time the structure change for the statistics of the report displayed
+    final ReportStatistics statistics = (this.tableModel != null) ? this.tableModel.getStatistics() : null;
+    final ReportEvents.BuildPhase phaseEvent = new ReportEvents.BuildPhase(ReportStatistics.phases[ReportStatistics.PHASE_STRUCTURE]);
+    phaseEvent.begin();
+    final long start = System.nanoTime();
+
     // Adjust the column widths
-    this.resizeColumns(informTableModel);
+    this.resizeColumns();
     
     // Force a resize of the main window
     this.pack();
+
+    if (statistics != null)
+      statistics.endPhase(ReportStatistics.PHASE_STRUCTURE, start);
+    phaseEvent.commitFor(this.currentReport, (this.tableModel != null) ? this.tableModel.getBudgetCategoriesList() : null);
   }
 
-  private void resizeColumns(final Boolean informTableModel) {
-    // If the table model is defined then force a structure change
+  private void resizeColumns() {
+    // If the table model is defined then size its columns
     if (this.tableModel != null)
       {
-      // If requested, tell the table model that the structure changed   
-      if (informTableModel) 
-        this.tableModel.fireTableStructureChanged();
-
       // Get the column count
       final int colCount = this.tableModel.getColumnCount();
 
@@ -703,28 +814,28 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       if (extraSpace > 0)
         colAdj = extraSpace / colCount;
 
-      // Get the column model
+      // Size the fixed category column, the row header is as wide as the column
+      final TableColumnModel categoryModel = this.categoryTable.getColumnModel();
+      if (categoryModel.getColumnCount() > 0)
+        categoryModel.getColumn(0).setPreferredWidth(Constants.CATEGORY_WIDTH + colAdj);
+      this.categoryTable.setPreferredScrollableViewportSize(new Dimension(Constants.CATEGORY_WIDTH + colAdj, this.categoryTable.getPreferredScrollableViewportSize().height));
+
+      // Get the column model of the values
       final TableColumnModel colModel = this.table.getColumnModel();
 
+      // Set the cell renderer for the numeric cells, shared by all of the columns
+      final DefaultTableCellRenderer cellRenderer = new DefaultTableCellRenderer();
+      cellRenderer.setHorizontalAlignment(JLabel.RIGHT);
+
       // Set column renderer and column sizes
-      for (int i = 0; i < colCount; i++ ) 
+      for (int i = 0; i < colModel.getColumnCount(); i++ ) 
         {
         // Get the TableColumn object for each column
         final TableColumn colSelect = colModel.getColumn(i);
+        colSelect.setCellRenderer(cellRenderer);
 
-        // Is this column 0 (Category)?
-        if (i == 0)
-          colSelect.setPreferredWidth(Constants.CATEGORY_WIDTH + colAdj);
-        else
-          {
-          // Set the cell renderer for the numeric cells
-          DefaultTableCellRenderer cellRenderer = new DefaultTableCellRenderer();
-          cellRenderer.setHorizontalAlignment(JLabel.RIGHT);
-          colSelect.setCellRenderer(cellRenderer);
-
-          // If this is a table subtotaled by month then set the minimum width of the column
-          colSelect.setPreferredWidth(Constants.VALUE_WIDTH + colAdj);
-          }
+        // If this is a table subtotaled by month then set the minimum width of the column
+        colSelect.setPreferredWidth(Constants.VALUE_WIDTH + colAdj);
         }
       }
     }
@@ -895,51 +1006,69 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     dialog.add(periodLabel,GridC.getc(0, 1).insets(5, 10, 5, 15).east());
 
     // Create the selector
-    final JComboBox<String> periodSelector = new JComboBox<String>(Constants.periods);
-    periodSelector.setSelectedIndex(this.currentReport.getPeriod());
-    periodSelector.setToolTipText("Select the period to report");
-    dialog.add(periodSelector, GridC.getc(1, 1).insets(5, 0, 5, 15).fillx());
+    this.periodSelector = new JComboBox<String>(Constants.periods);
+    this.periodSelector.setSelectedIndex(this.currentReport.getPeriod());
+    this.periodSelector.setToolTipText("Select the period to report");
+    dialog.add(this.periodSelector, GridC.getc(1, 1).insets(5, 0, 5, 15).fillx());
 
     // Create an action listener to dispatch perform the action when this control is changed
-    periodSelector.addActionListener(new ActionListener() {
+    this.periodSelector.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(final ActionEvent e) 
         {
-        // Get time reference to use for the selections
-        final Calendar now = Calendar.getInstance();
-        final int thisYear = now.get(Calendar.YEAR);
-        final int thisMonth = now.get(Calendar.MONTH);
-
-        // Now update the fields based on the period selected
-        switch (periodSelector.getSelectedIndex()) 
+        // Measure how long the callback blocks the event dispatch thread
+        final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.periodSelector");
+        try
           {
-          case Constants.PERIOD_AUTOMATIC:
-            BudgetReportWindow.this.setControls(thisYear, 0, thisMonth, false);           
-            break;
+          // Get time reference to use for the selections
+          final Calendar now = Calendar.getInstance();
+          final int thisYear = now.get(Calendar.YEAR);
+          final int thisMonth = now.get(Calendar.MONTH);
+
+          // Now update the fields based on the period selected
+          switch (BudgetReportWindow.this.periodSelector.getSelectedIndex()) 
+            {
+            case Constants.PERIOD_AUTOMATIC:
+              BudgetReportWindow.this.setControls(thisYear, 0, thisMonth, false);           
+              break;
 
-          case Constants.PERIOD_THIS_YEAR:
-            BudgetReportWindow.this.setControls(thisYear, 0, 11, false);
-            break;
+            case Constants.PERIOD_THIS_YEAR:
+              BudgetReportWindow.this.setControls(thisYear, 0, 11, false);
+              break;
           
-          case Constants.PERIOD_LAST_YEAR:
-            BudgetReportWindow.this.setControls(thisYear - 1, 0, 11, false);
-            break;
+            case Constants.PERIOD_LAST_YEAR:
+              BudgetReportWindow.this.setControls(thisYear - 1, 0, 11, false);
+              break;
     
-          case Constants.PERIOD_THIS_MONTH:
-            BudgetReportWindow.this.setControls(thisYear, thisMonth, thisMonth, false);
-            break;    
+            case Constants.PERIOD_THIS_MONTH:
+              BudgetReportWindow.this.setControls(thisYear, thisMonth, thisMonth, false);
+              break;    
      
-          case Constants.PERIOD_LAST_MONTH:
-            if (thisMonth == 0)
-              BudgetReportWindow.this.setControls(thisYear - 1, 11, 11, false);
-            else
-              BudgetReportWindow.this.setControls(thisYear, thisMonth - 1, thisMonth - 1, false);
-            break;    
+            case Constants.PERIOD_LAST_MONTH:
+              if (thisMonth == 0)
+                BudgetReportWindow.this.setControls(thisYear - 1, 11, 11, false);
+              else
+                BudgetReportWindow.this.setControls(thisYear, thisMonth - 1, thisMonth - 1, false);
+              break;    
+
+            // Rolling periods end with the current month
+            case Constants.PERIOD_LAST_12_MONTHS:
+              BudgetReportWindow.this.setControls(thisYear - ((thisMonth == 11) ? 0 : 1), (thisMonth + 1) % 12, thisMonth, false);
+              break;
+
+            case Constants.PERIOD_LAST_24_MONTHS:
+              BudgetReportWindow.this.setControls(thisYear - ((thisMonth == 11) ? 1 : 2), (thisMonth + 1) % 12, thisMonth, false);
+              break;
                       
-          case Constants.PERIOD_CUSTOM:
-          default:
-            BudgetReportWindow.this.setControls(thisYear, 0, 11, true);
-            break;
+            case Constants.PERIOD_CUSTOM:
+            default:
+              BudgetReportWindow.this.setControls(thisYear, 0, 11, true);
+              break;
+            }
+          }
+        finally
+          {
+          section.end();
           }
         }
       }); 
@@ -957,17 +1086,6 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     this.startSelector.setEnabled(false);
     dialog.add(this.startSelector, GridC.getc(1, 3).insets(5, 0, 5, 15).fillx());
     
-    // Create an action listener to dispatch perform the action when this control is changed
-    this.startSelector.addActionListener(new ActionListener() {
-      @Override
-      public void actionPerformed(final ActionEvent e) 
-        {
-        // Keep the selected end month in bounds
-        if (BudgetReportWindow.this.endSelector.getSelectedIndex() < BudgetReportWindow.this.startSelector.getSelectedIndex())
-          BudgetReportWindow.this.endSelector.setSelectedIndex(BudgetReportWindow.this.startSelector.getSelectedIndex());
-        }
-      });
-    
     /*
     ** End month selector
     */
@@ -978,19 +1096,8 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     // Create the selector - Select the current month by default
     this.endSelector.setSelectedIndex(this.currentReport.getEndMonth() - 1);  
     this.endSelector.setEnabled(false);
-    this.endSelector.setToolTipText("Select the last month to report");
+    this.endSelector.setToolTipText("Select the last month to report, a month before the start month ends the report the following year");
     dialog.add(this.endSelector, GridC.getc(1, 4).insets(5, 0, 5, 15).fillx());
-
-    // Create an action listener to dispatch perform the action when this control is changed
-    this.endSelector.addActionListener(new ActionListener() {
-      @Override
-      public void actionPerformed(final ActionEvent e) 
-        {
-        // Keep the selected end month in bounds
-        if (BudgetReportWindow.this.endSelector.getSelectedIndex() < BudgetReportWindow.this.startSelector.getSelectedIndex())
-          BudgetReportWindow.this.endSelector.setSelectedIndex(BudgetReportWindow.this.startSelector.getSelectedIndex());
-        }
-      });
   
     /*
     ** Enable the custom selectors if the period is custom
@@ -1058,17 +1165,19 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       okButton.addActionListener(new ActionListener() {
         @Override
         public void actionPerformed(final ActionEvent e) {
+          // Measure how long applying the changes blocks the event dispatch thread
+          final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.doEdit");
+          try
+            {
             // Save edits to the current report
             BudgetReportWindow.this.currentReport.setBudgetName((String)BudgetReportWindow.this.budgetSelector.getSelectedItem());
-            BudgetReportWindow.this.currentReport.setPeriod(periodSelector.getSelectedIndex());
-            BudgetReportWindow.this.currentReport.setYear((int)BudgetReportWindow.this.yearSelector.getValue());
-            BudgetReportWindow.this.currentReport.setStartMonth(BudgetReportWindow.this.startSelector.getSelectedIndex() + 1);
-            BudgetReportWindow.this.currentReport.setEndMonth(BudgetReportWindow.this.endSelector.getSelectedIndex() + 1);
+            BudgetReportWindow.this.setPeriod(BudgetReportWindow.this.currentReport);
             BudgetReportWindow.this.currentReport.setSubtotalBy(subtotalSelector.getSelectedIndex());
             BudgetReportWindow.this.currentReport.setSubtotalParents(rollup.isSelected());
             BudgetReportWindow.this.currentReport.setCategoryCurrency(currency.isSelected());
 
-            // Update the report with the changes
+            // Update the report with the changes, the model changes the table
+            // structure only if the columns are different
             if (BudgetReportWindow.this.tableModel != null)
               BudgetReportWindow.this.tableModel.LoadData();
 
@@ -1088,9 +1197,11 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
 
             // Hide the frame
             dialog.setVisible(false);
-
-            // The table structure may have changed so force an update
-            BudgetReportWindow.this.forceTableStructureChange(true);
+            }
+          finally
+            {
+            section.end();
+            }
         }
       });
 
@@ -1113,6 +1224,27 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         });
       }
 
+    /*
+    ** Build the report for the period selected in the background once the
+    ** selectors stop changing, so that OK only has to display it
+    */
+    final ActionListener selectionListener = new ActionListener() {
+      @Override
+      public void actionPerformed(final ActionEvent e) {
+        BudgetReportWindow.this.requestReport();
+      }
+    };
+    final ChangeListener yearListener = new ChangeListener() {
+      @Override
+      public void stateChanged(final ChangeEvent e) {
+        BudgetReportWindow.this.requestReport();
+      }
+    };
+    this.budgetSelector.addActionListener(selectionListener);
+    this.startSelector.addActionListener(selectionListener);
+    this.endSelector.addActionListener(selectionListener);
+    this.yearSelector.addChangeListener(yearListener);
+
     // Update window size
     dialog.pack();
         
@@ -1121,6 +1253,49 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
 
     // Show the frame
     dialog.setVisible(true);
+
+    // The dialog is closed, the selectors are reused by the next edit
+    this.startSelector.removeActionListener(selectionListener);
+    this.endSelector.removeActionListener(selectionListener);
+    this.yearSelector.removeChangeListener(yearListener);
+
+    // Drop any report requested for parameters that were not applied
+    if (this.tableModel != null)
+      this.tableModel.cancelRequest();
+  }
+
+  /**
+   * Set the period selected in the edit dialog in a report.
+   *
+   * @param report - The report to update.
+   */
+  private void setPeriod(final Report report) {
+    report.setPeriod(this.periodSelector.getSelectedIndex());
+    report.setYear((int)this.yearSelector.getValue());
+    report.setStartMonth(this.startSelector.getSelectedIndex() + 1);
+    report.setEndMonth(this.endSelector.getSelectedIndex() + 1);
+
+    // A custom period ending in a month before its start month ends the following year
+    report.setEndYear(report.getYear() + ((report.getEndMonth() < report.getStartMonth()) ? 1 : 0));
+
+    // The other periods are resolved from the current date
+    report.resolvePeriod(Calendar.getInstance());
+  }
+
+  /**
+   * Request the report for the parameters selected in the edit dialog.
+   */
+  private void requestReport() {
+    if (this.tableModel == null)
+      return;
+
+    // Copy the current report with the period selected
+    final Report report = new Report(this.currentReport);
+    report.setBudgetName((String)this.budgetSelector.getSelectedItem());
+    this.setPeriod(report);
+
+    // The report is built once the selectors stop changing
+    this.tableModel.requestReport(report);
   }
 
   /**
@@ -1132,14 +1307,66 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     // security exception - in which case we don't want to do anything else.
     final PrinterJob job = PrinterJob.getPrinterJob();
 
+    // Print request attributes
+    final PrintRequestAttributeSet attr = new HashPrintRequestAttributeSet();
+
+    // Print via a custom printable method so we can generate proper headers/footers
+    job.setPrintable(this.createPrintable());
+
+    // Print the report
+    if (job.printDialog(attr)) 
+      {
+      // Measure how long printing blocks the event dispatch thread
+      final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.doPrint");
+      try
+        {
+        job.print(attr);
+        } 
+      catch (final PrinterException e) 
+        { 
+        // End the section before the error dialog, it waits for the user
+        section.end();
+
+        e.printStackTrace();
+
+        JOptionPane.showMessageDialog( this,
+        "The print job did not complete successfully!",
+        "Print Error",
+        JOptionPane.ERROR_MESSAGE);
+        }
+      finally
+        {
+        section.end();
+        }
+      }
+  }
+
+  /**
+   * Method to preview the printed budget report.
+   */
+  private void doPreview() {
+    // Get a PrinterJob first, it may throw a security exception
+    final PrinterJob job = PrinterJob.getPrinterJob();
+
+    // The preview renders and prints the pages of its own printable
+    final PrintPreview preview = new PrintPreview(this, this.createPrintable(), job);
+    preview.setVisible(true);
+  }
+
+  /**
+   * Create a printable for the report displayed. The printable prints the
+   * snapshot of the report displayed even if the report is reloaded.
+   *
+   * @return MyTablePrintable - The printable with the report headers/footers.
+   */
+  private MyTablePrintable createPrintable() {
     // Header
     final MessageFormat[] header = {
       // Report name
       new MessageFormat(this.currentReport.getReportName()),
       
       // Report dates
-      new MessageFormat(Constants.months[this.currentReport.getStartMonth() - 1]+" "+this.currentReport.getYear()+" - "
-        +Constants.months[this.currentReport.getEndMonth() - 1]+" "+this.currentReport.getYear())
+      new MessageFormat(MonthRange.of(this.currentReport).format(" "))
       };
       
     // Footer
@@ -1148,8 +1375,9 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       new MessageFormat("Page {0}")
       };
 
-    // Create a table to use for printing the budget values
-    final Table printTable = new Table(this.tableModel, this.colors, true);
+    // Create a table to use for printing the budget values, it prints the
+    // snapshot of the report displayed even if the report is reloaded
+    final Table printTable = new Table(new TableModel(this.tableModel.getSnapshot(), this.tableModel.getDataSource()), this.colors, true);
 
     // Get the column count
     final int colCount = printTable.getColumnCount();
@@ -1169,12 +1397,14 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         // Set the minimum width of the category column
         colSelect.setPreferredWidth(Constants.PRINT_CATEGORY_WIDTH);
         colSelect.setMinWidth(Constants.PRINT_CATEGORY_WIDTH);
+        colSelect.setWidth(Constants.PRINT_CATEGORY_WIDTH);
         }
       else
         {
         // Set the minimum width of the category column
         colSelect.setPreferredWidth(Constants.PRINT_VALUE_WIDTH); 
         colSelect.setMinWidth(Constants.PRINT_VALUE_WIDTH); 
+        colSelect.setWidth(Constants.PRINT_VALUE_WIDTH); 
 
         // Set the cell renderer for the numeric cells
         DefaultTableCellRenderer cellRenderer = new DefaultTableCellRenderer();
@@ -1183,10 +1413,12 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         }
       }
 
-    // Set the size of the table so the entire table will print
-    // printTable.setSize(printTable.getPreferredSize()); results in several of
-    // the right most columns not displaying.
-    printTable.setSize(4000, 8000);
+    // Size the table to exactly fit its columns and rows so the entire table
+    // prints. Column widths are not adjusted to the table width so that the
+    // page map of the printable matches what is printed.
+    printTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+    printTable.setSize(colModel.getTotalColumnWidth(), printTable.getPreferredSize().height);
+    printTable.doLayout();
 
     // Get the table header object
     final JTableHeader tableHeader = printTable.getTableHeader();
@@ -1204,30 +1436,8 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     renderer.setHorizontalAlignment(JLabel.CENTER);
     tableHeader.setDefaultRenderer(renderer);
 
-    // Print request attributes
-    final PrintRequestAttributeSet attr = new HashPrintRequestAttributeSet();
-
-    // Print via a custom printable method so we can generate proper headers/footers
-    job.setPrintable(new MyTablePrintable(printTable, JTable.PrintMode.NORMAL, header, footer));
-    // job.setPrintable(new MyTablePrintable(printTable, JTable.PrintMode.FIT_WIDTH, header, footer));
-
-    // Print the report
-    if (job.printDialog(attr)) 
-      {
-      try 
-        {
-        job.print(attr);
-        } 
-      catch (final PrinterException e) 
-        { 
-        e.printStackTrace();
-
-        JOptionPane.showMessageDialog( this,
-        "The print job did not complete successfully!",
-        "Print Error",
-        JOptionPane.ERROR_MESSAGE);
-        }
-      }
+    return new MyTablePrintable(printTable, JTable.PrintMode.NORMAL, header, footer);
+    // return new MyTablePrintable(printTable, JTable.PrintMode.FIT_WIDTH, header, footer);
   }
 
 
@@ -1258,9 +1468,23 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     if (this.currentReport.isMemorized())
       name.setText(this.currentReport.getReportName());
 
+    // Add a check box to precompute the default report when the data file is opened
+    final Account rootAccount = this.context.getCurrentAccountBook().getRootAccount();
+    final JCheckBox warmStart = new JCheckBox("Precompute the default report when this file is opened", rootAccount.getPreferenceBoolean(Constants.WARM_START, false));
+    warmStart.setToolTipText("Build the default report in the background so the first report shown opens quickly");
+    dialog.add(warmStart, GridC.getc(0, 2).insets(5, 10, 5, 10));
+
+    // Save the warm start setting as soon as it is changed
+    warmStart.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(final ActionEvent e) {
+        rootAccount.setPreference(Constants.WARM_START, Boolean.toString(warmStart.isSelected()));
+        }
+      });
+
     // Create a bottom panel for the buttons
     final JPanel bottomPanel = new JPanel(new GridBagLayout());
-    dialog.add(bottomPanel, GridC.getc(0, 2).insets(5, 10, 5, 10));
+    dialog.add(bottomPanel, GridC.getc(0, 3).insets(5, 10, 5, 10));
 
     // Should we enable the Forget button?
     if (this.currentReport.isMemorized())
@@ -1295,14 +1519,8 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
           if (isDefault)
             rootAccount.setPreference(Constants.DEFAULT_REPORT, null);
 
-          // Get the file path to load the report from
-          final File rootFolder = BudgetReportWindow.this.context.getCurrentAccountBook().getRootFolder();
-          final String filePath = rootFolder.getAbsolutePath()+File.separator+BudgetReportWindow.this.currentReport.getReportName()+".mbrpt";
-
-          // Delete the named file  
-          final File rptFile = new File(filePath);
-          if (rptFile.exists())
-            rptFile.delete();
+          // Delete the named report
+          BudgetReportWindow.this.catalog.remove(BudgetReportWindow.this.currentReport.getReportName());
 
           // Update the memorized report list after deleting this one
           BudgetReportWindow.this.updateReportSelector();
@@ -1438,8 +1656,8 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         return (false);
       }
 
-    // Prompt before overwriting an existing report if the file exists
-    if (new File(filePath).exists())
+    // Prompt before overwriting an existing report
+    if (this.catalog.getReportNames().contains(reportName))
       {
       final int response = JOptionPane.showConfirmDialog( this,
       "The selected report already exists. Do you want to overwrite it?",
@@ -1453,46 +1671,18 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     final String oldName = this.currentReport.getReportName();
     this.currentReport.setReportName(reportName);
 
-    // Save the report
-    try 
-      {
-      final FileOutputStream file = new FileOutputStream(filePath);
-      final ObjectOutputStream oos = new ObjectOutputStream(file);
-      oos.writeObject(this.currentReport);
-      oos.flush();
-      oos.close();
-      file.close();
-      }
-    catch(final IOException i)
-      {
-      // For debug
-      i.printStackTrace();
-
-      // Tell user we failed to save the report
-      JOptionPane.showMessageDialog( this,
-      "Error saving the report: "+i.toString(),
-      "Error",
-      JOptionPane.ERROR_MESSAGE);
-
-      // Restore the old report name
-      this.currentReport.setReportName(oldName);
-
-      // Failed, allow retry
-      return (false);
-      }
+    // Save the report in the background, replacing the original report if it was renamed
+    if (isRenamed)
+      this.catalog.rename(oldName, this.currentReport);
+    else
+      this.catalog.put(this.currentReport);
 
     // Get the root account
     final Account rootAccount = this.context.getCurrentAccountBook().getRootAccount();
 
-    // If this is a rename, delete the old report. If the old report was the default report then reset the default report to none
+    // If this is a rename and the old report was the default report then reset the default report to none
     if (isRenamed)
       {
-      // Delete the original report
-      final String oldReportPath = rootFolder.getAbsolutePath()+File.separator+oldName+".mbrpt";
-      final File rptFile = new File(oldReportPath);
-      if (rptFile.exists())
-        rptFile.delete();
-
       // If we're renaming the default report then remove the old default name from the configuration file
       if (reportName.equals(rootAccount.getPreference(Constants.DEFAULT_REPORT, null)))
         rootAccount.setPreference(Constants.DEFAULT_REPORT, null);
@@ -1523,14 +1713,29 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
    * @param lineBreak - The line break string
    */
   private void copyToClipboard(final String cellBreak, final String lineBreak) {
-    // Create a transferrable of the table data to copy to the clipboard
-    final StringSelection sel  = new StringSelection(this.exportTable(cellBreak, lineBreak)); 
+    // Start the flight recorder event for the export
+    final ReportEvents.Export exportEvent = new ReportEvents.Export(Constants.exportItems[cellBreak.equals(",") ? Constants.EXPORT_CLIPBOARD_CSV : Constants.EXPORT_CLIPBOARD]);
+    exportEvent.begin();
+
+    // Measure how long the copy blocks the event dispatch thread
+    final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.copyToClipboard");
+    try
+      {
+      // Create a transferrable of the table data to copy to the clipboard
+      final StringSelection sel  = new StringSelection(this.exportTable(cellBreak, lineBreak)); 
   
-    // Get an instance of the system clipboard
-    final Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard(); 
+      // Get an instance of the system clipboard
+      final Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard(); 
 
-    // Copy the report to the clipboard
-    clipboard.setContents(sel, sel); 
+      // Copy the report to the clipboard
+      clipboard.setContents(sel, sel); 
+      }
+    finally
+      {
+      section.end();
+      }
+
+    exportEvent.commitFor(this.currentReport, this.tableModel.getBudgetCategoriesList());
   }
 
   
@@ -1572,7 +1777,13 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         return;
       }
 
-    //Save the file
+    // Start the flight recorder event for the export
+    final int format = excelFormat ? Constants.EXPORT_EXCEL : (extension.equals(".csv") ? Constants.EXPORT_CSV : Constants.EXPORT_TAB);
+    final ReportEvents.Export exportEvent = new ReportEvents.Export(Constants.exportItems[format]);
+    exportEvent.begin();
+
+    //Save the file, measuring how long it blocks the event dispatch thread
+    final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.exportToFile");
     try
       {
       // Open a new file writer
@@ -1588,9 +1799,14 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       // Flush and close the file
       fileWriter.flush();
       fileWriter.close();
+
+      exportEvent.commitFor(this.currentReport, this.tableModel.getBudgetCategoriesList());
       }
     catch(final IOException i)
       {
+      // End the section before the error dialog, it waits for the user
+      section.end();
+
       // For debug
       i.printStackTrace();
 
@@ -1600,6 +1816,10 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       "Error",
       JOptionPane.ERROR_MESSAGE);
       }
+    finally
+      {
+      section.end();
+      }
   }
 
   
@@ -1614,9 +1834,13 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     // Create a string buffer to hold the data to export
     final StringBuffer dataString = new StringBuffer(); 
 
+    // Export one snapshot of the report from start to finish
+    final ReportSnapshot snapshot = this.tableModel.getSnapshot();
+    final Report report = snapshot.getReport();
+
     // Get the row and column count of the table
-    final int numRows = this.table.getRowCount(); 
-    final int numCols = this.table.getColumnCount(); 
+    final int numRows = snapshot.getRowCount(); 
+    final int numCols = snapshot.getColumnCount(); 
 
 
     // Add the report name
@@ -1624,15 +1848,14 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
     dataString.append(lineBreak);
 
     // Add the report dates
-    dataString.append(Constants.months[this.currentReport.getStartMonth() - 1]+" "+this.currentReport.getYear()+" - "
-      +Constants.months[this.currentReport.getEndMonth() - 1]+" "+this.currentReport.getYear());
+    dataString.append(MonthRange.of(report).format(" "));
     dataString.append(lineBreak);
     dataString.append(lineBreak);
 
     // Add the table header
     for (int column = 0; column < numCols; column++) 
       {
-      dataString.append(this.table.getColumnName(column));
+      dataString.append(snapshot.getColumnName(column));
       if (column < numCols - 1) 
         dataString.append(cellBreak); // Insert a break for this cell
       else
@@ -1644,7 +1867,7 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       { 
       for (int column = 0; column < numCols; column++) 
         { 
-        dataString.append(this.table.getValueAt(row, column)); 
+        dataString.append(this.tableModel.getValueAt(snapshot, row, column)); 
         if (column < numCols - 1) 
           dataString.append(cellBreak); // Insert a break for this cell
         else
@@ -1656,6 +1879,83 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
   }
 
 
+  /**
+   * Method to export the pages of a report as a PDF document or PNG images.
+   * The pages are rendered from the snapshot displayed, the same way they
+   * are printed.
+   *
+   * @param extension - The file extension for the created file.
+   * @param format - The export format, Constants.EXPORT_PDF or Constants.EXPORT_PNG.
+   */
+  private void exportToDocument(final String extension, final int format) {
+    File file;
+
+    // Select the location and name for file
+    final JFileChooser fileChooser = new JFileChooser();
+    fileChooser.setDialogTitle("Specify a location and file name to export the report to");
+    fileChooser.setSelectedFile(new File(this.currentReport.getReportName()+extension));
+    final int userSelection = fileChooser.showSaveDialog(this);
+   
+    // Did the user select or cancel?
+    if (userSelection == JFileChooser.APPROVE_OPTION) 
+      file = fileChooser.getSelectedFile();
+    else  // The user cancelled the operation
+      return;
+
+    // Prompt before overwriting an existing file
+    if (file.exists())
+      {
+      final int response = JOptionPane.showConfirmDialog( this,
+      "The selected file already exists. Do you want to overwrite it?",
+      "File Exists",
+      JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+      if (response == 1)  // No, allow retry
+        return;
+      }
+
+    // Start the flight recorder event for the export
+    final ReportEvents.Export exportEvent = new ReportEvents.Export(Constants.exportItems[format]);
+    exportEvent.begin();
+
+    //Save the file, measuring how long it blocks the event dispatch thread
+    final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.exportToDocument");
+    try
+      {
+      // Render one snapshot of the report on the default page format
+      final ReportRenderer renderer = new ReportRenderer(this.tableModel.getSnapshot(), this.tableModel, PrinterJob.getPrinterJob().defaultPage());
+      if (format == Constants.EXPORT_PDF)
+        {
+        try (FileOutputStream out = new FileOutputStream(file))
+          {
+          renderer.writePdf(new BufferedOutputStream(out));
+          }
+        }
+      else
+        renderer.writePng(file, ReportRenderer.PNG_SCALE);
+
+      exportEvent.commitFor(this.currentReport, this.tableModel.getBudgetCategoriesList());
+      }
+    catch(final IOException i)
+      {
+      // End the section before the error dialog, it waits for the user
+      section.end();
+
+      // For debug
+      i.printStackTrace();
+
+      // Tell user we failed to export the report
+      JOptionPane.showMessageDialog( this,
+      "Error exporting the report: "+i.toString(),
+      "Error",
+      JOptionPane.ERROR_MESSAGE);
+      }
+    finally
+      {
+      section.end();
+      }
+  }
+
+
   /**
    * Method to export a report in HTML format.
    */
@@ -1689,20 +1989,24 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         return;
       }
 
-    //Save the file
+    // Start the flight recorder event for the export
+    final ReportEvents.Export exportEvent = new ReportEvents.Export(Constants.exportItems[Constants.EXPORT_HTML]);
+    exportEvent.begin();
+
+    //Save the file, measuring how long it blocks the event dispatch thread
+    final EdtWatchdog.Section section = EdtWatchdog.enter("BudgetReportWindow.exportToHTML");
     try
       {
       // Open a new file writer
       final FileWriter fileWriter = new FileWriter(filePath);
 
-      // Get the row and column count of the table
-      final int numRows = this.table.getRowCount(); 
-      final int numCols = this.table.getColumnCount(); 
+      // Export one snapshot of the report from start to finish
+      final ReportSnapshot snapshot = this.tableModel.getSnapshot();
+      final Report report = snapshot.getReport();
 
-      // Get the decimal separator for this locale
-      DecimalFormat format = (DecimalFormat) DecimalFormat.getInstance();
-      DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
-      char separator = symbols.getDecimalSeparator();
+      // Get the row and column count of the table
+      final int numRows = snapshot.getRowCount(); 
+      final int numCols = snapshot.getColumnCount(); 
 
       // Head of file
       fileWriter.append("<!DOCTYPE HTML>\n");
@@ -1779,8 +2083,7 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       fileWriter.append("<h1>"+this.currentReport.getReportName()+"</h1>\n");
  
       // Add the report dates
-      fileWriter.append("<h2>"+Constants.months[this.currentReport.getStartMonth() - 1]+"&nbsp;"+this.currentReport.getYear()+"&nbsp;-&nbsp;"
-        +Constants.months[this.currentReport.getEndMonth() - 1]+"&nbsp;"+this.currentReport.getYear()+"</h2>\n");
+      fileWriter.append("<h2>"+MonthRange.of(report).format("&nbsp;")+"</h2>\n");
 
       // End header
       fileWriter.append("<br/>\n");
@@ -1791,59 +2094,31 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       // Add the table header
       fileWriter.append("<tr>\n");
       for (int column = 0; column < numCols; column++) 
-        fileWriter.append("<th>"+this.table.getColumnName(column)+"</th>\n");
+        fileWriter.append("<th>"+snapshot.getColumnName(column)+"</th>\n");
       fileWriter.append("</tr>\n");
 
-      // Get the budget categories List
-      final BudgetCategoriesList budgetCategoriesList = this.tableModel.getBudgetCategoriesList();
-
       // Add the table data
       for (int row = 0; row < numRows; row++) 
         { 
-        for (int column = 0; column < numCols; column++) 
-          { 
-          // Font weight for this row
-          String weight;
+        // Rows with children are roll-up rows and will be bolded
+        final String weight = snapshot.getRow(row).hasChildren() ? "bold" : "normal";
 
-          // Rows with children are roll-up rows and will be bolded
-          if (budgetCategoriesList.getCategoryItemByIndex(row).hasChildren())
-            weight="bold";
-          else
-            weight="normal";
+        // Display the category name
+        fileWriter.append("<tr><td class='left black "+weight+"'>");  
+        fileWriter.append(this.tableModel.getValueAt(snapshot, row, 0).toString().replaceAll(" ", "&nbsp;")+"</td>\n");
 
-          // Display the cell data
-          if (column == 0)
-            fileWriter.append("<tr><td class='left black "+weight+"'>");  
+        // Display the values
+        for (int column = 1; column < numCols; column++) 
+          { 
+          final Long value = snapshot.getValue(row, column);
+          if (value == null)
+            fileWriter.append("<td></td>\n");
           else
             {
             // Highlight negative numbers in red
-            if (this.table.getValueAt(row, column) instanceof Number)
-              {
-              if ((double)this.table.getValueAt(row, column) >= 0.0)
-                fileWriter.append("<td class='right black "+weight+"'>"); 
-              else
-                fileWriter.append("<td class='right red "+weight+"'>");
-              }
-            }
-          
-          // Finish the cell
-          if (column == 0)
-            fileWriter.append(this.table.getValueAt(row, column).toString().replaceAll(" ", "&nbsp;")+"</td>\n");
-          else
-            {
-            if (this.table.getValueAt(row, column) instanceof Number)
-              {
-              // Get the selected currency type
-              CurrencyType toType;
-              if (this.currentReport.isUseCategoryCurrency())
-                  toType = budgetCategoriesList.getCategoryItemByIndex(row).getCurrencyType();  // Category currency
-              else
-                  toType = this.book.getCurrencies().getBaseType();                             // Base currency
-
-              fileWriter.append(toType.formatFancy(CurrencyUtil.convertValue((long)this.table.getValueAt(row, column), budgetCategoriesList.getCategoryItemByIndex(row).getCurrencyType(), toType), separator));
-              }
-            else
-              fileWriter.append("<td></td>\n");
+            final String color = (value.longValue() >= 0) ? "black" : "red";
+            fileWriter.append("<td class='right "+color+" "+weight+"'>"); 
+            fileWriter.append(this.tableModel.getValueAt(snapshot, row, column)+"</td>\n");
             }
           } 
         
@@ -1857,9 +2132,14 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       // Flush and close the file
       fileWriter.flush();
       fileWriter.close();
+
+      exportEvent.commitFor(this.currentReport, this.tableModel.getBudgetCategoriesList());
       }
     catch(final IOException i)
       {
+      // End the section before the error dialog, it waits for the user
+      section.end();
+
       // For debug
       i.printStackTrace();
 
@@ -1869,6 +2149,10 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
       "Error",
       JOptionPane.ERROR_MESSAGE);
       }
+    finally
+      {
+      section.end();
+      }
   }
 
   /**
@@ -1955,6 +2239,16 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
         case Constants.EXPORT_HTML:
           BudgetReportWindow.this.exportToHTML();
           break;
+
+        // Save the report as a PDF document
+        case Constants.EXPORT_PDF:
+          BudgetReportWindow.this.exportToDocument(".pdf", Constants.EXPORT_PDF);
+          break;
+
+        // Save the report as PNG images, one per page
+        case Constants.EXPORT_PNG:
+          BudgetReportWindow.this.exportToDocument(".png", Constants.EXPORT_PNG);
+          break;
       }
     }
 	};
@@ -2040,8 +2334,8 @@ public class BudgetReportWindow extends JFrame implements ComponentListener
   @Override
   public void componentResized(final ComponentEvent e) 
   {
-    // Resize the table columns
-    this.resizeColumns(true);     
+    // Resize the table columns, the columns themselves are unchanged
+    this.resizeColumns();     
   }
 
   @Override
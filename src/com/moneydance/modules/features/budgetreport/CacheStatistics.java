@@ -0,0 +1,137 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Class to count the hits and misses of a cache.
+* Each cache gets its statistics by name so that all instances of a cache
+* share one set of counters and the counters of all caches can be reported
+* together, i.e. by the ReportEngine MBean.
+*/
+public final class CacheStatistics {
+    // All of the cache statistics by name in the order they were created
+    private static final Map<String, CacheStatistics> caches = new LinkedHashMap<String, CacheStatistics>();
+
+    // The name of the cache
+    private final String name;
+
+    // The number of lookups found in the cache
+    private final AtomicLong hits = new AtomicLong();
+
+    // The number of lookups not found in the cache
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the statistics of a cache, creating them the first time.
+     *
+     * @param name - The name of the cache.
+     * @return CacheStatistics - The statistics of the cache.
+     */
+    public static CacheStatistics get(final String name) {
+        synchronized (CacheStatistics.caches)
+            {
+            CacheStatistics statistics = CacheStatistics.caches.get(name);
+            if (statistics == null)
+                {
+                statistics = new CacheStatistics(name);
+                CacheStatistics.caches.put(name, statistics);
+                }
+            return statistics;
+            }
+    }
+
+    /**
+     * Get the hit ratio of every cache.
+     *
+     * @return Map<String, Double> - The hit ratio (0...1) of each cache by name.
+     */
+    public static Map<String, Double> getHitRatios() {
+        final Map<String, Double> ratios = new LinkedHashMap<String, Double>();
+        synchronized (CacheStatistics.caches)
+            {
+            for (final CacheStatistics statistics : CacheStatistics.caches.values())
+                ratios.put(statistics.name, Double.valueOf(statistics.getHitRatio()));
+            }
+        return ratios;
+    }
+
+    private CacheStatistics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Count a lookup found in the cache.
+     */
+    public void hit() {
+        this.hits.incrementAndGet();
+    }
+
+    /**
+     * Count a lookup not found in the cache.
+     */
+    public void miss() {
+        this.misses.incrementAndGet();
+    }
+
+    /**
+     * @return the name of the cache
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the number of lookups found in the cache
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups not found in the cache
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups found in the cache (0...1), 0 if there were no lookups
+     */
+    public double getHitRatio() {
+        final long hits = this.hits.get();
+        final long total = hits + this.misses.get();
+        return (total != 0) ? (double) hits / total : 0;
+    }
+}
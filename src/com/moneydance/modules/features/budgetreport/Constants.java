@@ -34,13 +34,19 @@ public abstract class Constants {
     /*
      * Report Period constants
     */
-    public static final String[] periods            = { "Automatic", "This Year", "Last Year", "This Month", "Last Month", "Custom" };
+    public static final String[] periods            = { "Automatic", "This Year", "Last Year", "This Month", "Last Month", "Custom",
+                                                        "Last 12 Months", "Last 24 Months" };
     public static final int PERIOD_AUTOMATIC        = 0;
     public static final int PERIOD_THIS_YEAR        = 1;
     public static final int PERIOD_LAST_YEAR        = 2;
     public static final int PERIOD_THIS_MONTH       = 3;
     public static final int PERIOD_LAST_MONTH       = 4;
     public static final int PERIOD_CUSTOM           = 5;
+    public static final int PERIOD_LAST_12_MONTHS   = 6;
+    public static final int PERIOD_LAST_24_MONTHS   = 7;
+
+    // The most months in a report, the longest period
+    public static final int MAX_MONTHS              = 24;
 
     /*
      * Export Menu Items
@@ -50,20 +56,26 @@ public abstract class Constants {
                                                         "Save as Tab Delimited", 
                                                         "Save as Comma Delimited (CSV)", 
                                                         "Save as CSV, Encoded for Excel)", 
-                                                        "Save as HTML" };
+                                                        "Save as HTML",
+                                                        "Save as PDF",
+                                                        "Save as PNG Images" };
     public static final int EXPORT_CLIPBOARD        = 0;
     public static final int EXPORT_CLIPBOARD_CSV    = 1;
     public static final int EXPORT_TAB              = 2;
     public static final int EXPORT_CSV              = 3;
     public static final int EXPORT_EXCEL            = 4;
     public static final int EXPORT_HTML             = 5;
+    public static final int EXPORT_PDF              = 6;
+    public static final int EXPORT_PNG              = 7;
 
     /*
      * Report subtotal constants
      */
-    public static final String[] subtotal           = { "None", "Subtotal by Month" };
+    public static final String[] subtotal           = { "None", "Subtotal by Month", "Subtotal by Quarter", "Subtotal by Half Year" };
     public static final int SUBTOTAL_NONE           = 0;
     public static final int SUBTOTAL_MONTH          = 1;
+    public static final int SUBTOTAL_QUARTER        = 2;
+    public static final int SUBTOTAL_HALF           = 3;
     
     /*
      * Report months list
@@ -79,6 +91,8 @@ public abstract class Constants {
      */
     public static String DEFAULT_REPORT             = "MonthlyBudgetReport_default_report";
     public static String UNSAVED_REPORT             = "<Report Not Memorized>";
+    public static String WARM_START                 = "MonthlyBudgetReport_warm_start";
+    public static String ACTUALS_FILE               = "MonthlyBudgetReport.actuals";
 
     /*
      * Table column widths
@@ -89,6 +103,12 @@ public abstract class Constants {
     public static final int PRINT_CATEGORY_WIDTH    = 240;
     public static final int PRINT_VALUE_WIDTH       = 60; 
 
+    /*
+     * Parallel aggregation of transactions
+     */
+    public static final int PARALLEL_SPLITS         = 250000;    // Fewest splits totaled in parallel
+    public static final int CHUNK_SPLITS            = 32768;     // Most splits in a chunk totaled by one thread
+
     /*
      * UUIDs for special categories
      */
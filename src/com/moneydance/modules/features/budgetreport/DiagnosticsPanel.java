@@ -0,0 +1,177 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+
+/**
+* Panel to display the statistics of the most recent report builds.
+* The panel shows one row per build, newest first, with the time spent in each
+* phase and the counters collected while building and displaying the report.
+* The rows are refreshed once a second while the panel is showing so that the
+* structure, paint and cell counters of the current report keep updating.
+*/
+public class DiagnosticsPanel extends JPanel {
+    // How often to refresh the panel while it is showing (milliseconds)
+    private static final int REFRESH_INTERVAL = 1000;
+
+    // The preferred height of the panel
+    private static final int PANEL_HEIGHT = 160;
+
+    // The fixed column names, the phase names are inserted after "Build ms"
+    private static final String[] leadingColumns = { "Time", "Report", "Build ms" };
+    private static final String[] trailingColumns = { "Categories", "Budget Lookups", "Splits", "Conversions", "Cells" };
+
+    // The table model holding one row per build
+    private final DefaultTableModel historyModel;
+
+    // Timer used to refresh the panel
+    private final Timer refreshTimer;
+
+    // Format of the build time column
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+
+    /**
+     * Create the diagnostics panel.
+     */
+    public DiagnosticsPanel() {
+        super(new BorderLayout());
+        this.setBorder(new EmptyBorder(10, 0, 0, 0));
+        this.setPreferredSize(new Dimension(0, DiagnosticsPanel.PANEL_HEIGHT));
+
+        // Build the column names
+        final String[] columns = new String[DiagnosticsPanel.leadingColumns.length + ReportStatistics.phases.length + DiagnosticsPanel.trailingColumns.length];
+        System.arraycopy(DiagnosticsPanel.leadingColumns, 0, columns, 0, DiagnosticsPanel.leadingColumns.length);
+        for (int i = 0; i < ReportStatistics.phases.length; i++)
+            columns[DiagnosticsPanel.leadingColumns.length + i] = ReportStatistics.phases[i] + " ms";
+        System.arraycopy(DiagnosticsPanel.trailingColumns, 0, columns, DiagnosticsPanel.leadingColumns.length + ReportStatistics.phases.length, DiagnosticsPanel.trailingColumns.length);
+
+        // Create a read only table model for the history
+        this.historyModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(final int row, final int column) {
+                return false;
+            }
+        };
+
+        // Add a title and the history table
+        this.add(new JLabel("Report build diagnostics (last " + ReportStatistics.HISTORY_SIZE + " builds)"), BorderLayout.NORTH);
+        final JTable historyTable = new JTable(this.historyModel);
+        historyTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        historyTable.getColumnModel().getColumn(1).setPreferredWidth(200);
+        this.add(new JScrollPane(historyTable), BorderLayout.CENTER);
+
+        // Create the refresh timer, it only runs while the panel is showing
+        this.refreshTimer = new Timer(DiagnosticsPanel.REFRESH_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                DiagnosticsPanel.this.refresh();
+            }
+        });
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        this.refresh();
+        this.refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        this.refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Reload the rows of the panel from the build history.
+     */
+    public void refresh() {
+        final List<ReportStatistics> history = ReportStatistics.getHistory();
+
+        // Resize the table to the number of builds in the history
+        this.historyModel.setRowCount(history.size());
+
+        // Fill in one row per build
+        for (int row = 0; row < history.size(); row++)
+            {
+            final ReportStatistics statistics = history.get(row);
+            int column = 0;
+            this.setCell(this.timeFormat.format(new Date(statistics.getStartTime())), row, column++);
+            this.setCell(statistics.getReportName(), row, column++);
+            this.setCell(DiagnosticsPanel.toMillis(statistics.getBuildNanos()), row, column++);
+            for (int phase = 0; phase < ReportStatistics.phases.length; phase++)
+                this.setCell(DiagnosticsPanel.toMillis(statistics.getPhaseNanos(phase)), row, column++);
+            this.setCell(Long.valueOf(statistics.getCategoriesVisited()), row, column++);
+            this.setCell(Long.valueOf(statistics.getBudgetLookups()), row, column++);
+            this.setCell(Long.valueOf(statistics.getSplitsScanned()), row, column++);
+            this.setCell(Long.valueOf(statistics.getConversions()), row, column++);
+            this.setCell(Long.valueOf(statistics.getCellsFormatted()), row, column++);
+            }
+    }
+
+    /**
+     * Set a cell of the history table only when its value changed so that an
+     * unchanged history does not repaint the table.
+     *
+     * @param value - The new value of the cell.
+     * @param row - The row of the cell.
+     * @param column - The column of the cell.
+     */
+    private void setCell(final Object value, final int row, final int column) {
+        if (!value.equals(this.historyModel.getValueAt(row, column)))
+            this.historyModel.setValueAt(value, row, column);
+    }
+
+    /**
+     * Format a time in nanoseconds as milliseconds.
+     *
+     * @param nanos - The time in nanoseconds.
+     * @return String - The time in milliseconds with one decimal place.
+     */
+    private static String toMillis(final long nanos) {
+        return String.format("%.1f", nanos / 1000000.0);
+    }
+}
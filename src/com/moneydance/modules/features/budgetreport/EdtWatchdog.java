@@ -0,0 +1,246 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import javax.swing.SwingUtilities;
+
+/**
+* Opt-in watchdog to measure how long extension callbacks block the event
+* dispatch thread (EDT).
+* Callbacks are wrapped in a section ended in a finally block:
+*
+* <pre>
+*   final EdtWatchdog.Section section = EdtWatchdog.enter("Main.invoke");
+*   try
+*     {
+*     ...
+*     }
+*   finally
+*     {
+*     section.end();
+*     }
+* </pre>
+*
+* When a section runs on the EDT for longer than the threshold a daemon thread
+* samples the stack of the EDT, and when the section ends the block is logged
+* to System.err along with the sampled stack. Only the outermost section is
+* measured, nested sections are part of it.
+*
+* <p><b>Note:</b> The watchdog is disabled unless Moneydance is started with
+* -Dbudgetreport.edt.watchdog=&lt;threshold in milliseconds&gt;.
+*/
+public final class EdtWatchdog {
+    // The system property holding the threshold in milliseconds
+    public static final String THRESHOLD_PROPERTY   = "budgetreport.edt.watchdog";
+
+    // The smallest threshold allowed (milliseconds)
+    private static final long MIN_THRESHOLD         = 20;
+
+    // The threshold in nanoseconds, 0 when the watchdog is disabled
+    private static final long thresholdNanos = EdtWatchdog.readThreshold();
+
+    // Section returned when nothing is measured
+    private static final Section NO_SECTION = new Section(null, null, 0);
+
+    // The outermost section running on the EDT, null if none
+    private static volatile Section current = null;
+
+    // The sampling thread, started when the first section is entered and
+    // stopped when the extension is unloaded
+    private static volatile Thread sampler = null;
+
+    /**
+     * A callback running on the EDT.
+     */
+    public static final class Section {
+        // The name of the callback
+        private final String name;
+
+        // The event dispatch thread
+        private final Thread thread;
+
+        // The time the section started (System.nanoTime)
+        private final long start;
+
+        // The EDT stack sampled once the threshold was exceeded
+        private volatile StackTraceElement[] sample = null;
+
+        private Section(final String name, final Thread thread, final long start) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+        }
+
+        /**
+         * End the section and log it if it blocked the EDT longer than the
+         * threshold. Ending a section again does nothing.
+         */
+        public void end() {
+            if (this != EdtWatchdog.current)
+                return;
+
+            EdtWatchdog.current = null;
+            final long elapsed = System.nanoTime() - this.start;
+            if (elapsed >= EdtWatchdog.thresholdNanos)
+                EdtWatchdog.log(this, elapsed);
+        }
+    }
+
+    /**
+     * Enter a callback section.
+     *
+     * @param name - The name of the callback i.e. "Main.invoke".
+     * @return Section - The section to end when the callback returns.
+     */
+    public static Section enter(final String name) {
+        // Nothing to measure when disabled, off the EDT or nested in another section
+        if ((EdtWatchdog.thresholdNanos == 0) || (EdtWatchdog.current != null) || !SwingUtilities.isEventDispatchThread())
+            return EdtWatchdog.NO_SECTION;
+
+        // Make sure the sampler is running
+        if (EdtWatchdog.sampler == null)
+            EdtWatchdog.startSampler();
+
+        final Section section = new Section(name, Thread.currentThread(), System.nanoTime());
+        EdtWatchdog.current = section;
+        return section;
+    }
+
+    /**
+     * @return true if the watchdog is enabled
+     */
+    public static boolean isEnabled() {
+        return EdtWatchdog.thresholdNanos != 0;
+    }
+
+    /**
+     * Stop the thread sampling the EDT stack, i.e. when the extension is
+     * unloaded. It is started again if another section is entered.
+     */
+    public static synchronized void stop() {
+        if (EdtWatchdog.sampler != null)
+            {
+            EdtWatchdog.sampler.interrupt();
+            EdtWatchdog.sampler = null;
+            }
+    }
+
+    /**
+     * Start the daemon thread sampling the EDT stack of long sections.
+     */
+    private static synchronized void startSampler() {
+        // Started by another section in the meantime
+        if (EdtWatchdog.sampler != null)
+            return;
+
+        // Poll four times per threshold so a sample is taken soon after the threshold is exceeded
+        final long pollMillis = Math.max(1, (EdtWatchdog.thresholdNanos / 1000000) / 4);
+
+        EdtWatchdog.sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true)
+                    {
+                    try
+                        {
+                        Thread.sleep(pollMillis);
+                        }
+                    catch (final InterruptedException e)
+                        {
+                        return;
+                        }
+
+                    // Sample the EDT once per section when it exceeds the threshold
+                    final Section section = EdtWatchdog.current;
+                    if ((section != null) && (section.sample == null) && ((System.nanoTime() - section.start) >= EdtWatchdog.thresholdNanos))
+                        section.sample = section.thread.getStackTrace();
+                    }
+            }
+        }, "Budget Report EDT watchdog");
+        EdtWatchdog.sampler.setDaemon(true);
+        EdtWatchdog.sampler.start();
+    }
+
+    /**
+     * Log a section that blocked the EDT.
+     *
+     * @param section - The section.
+     * @param elapsed - The time the section took in nanoseconds.
+     */
+    private static void log(final Section section, final long elapsed) {
+        final StringBuilder message = new StringBuilder();
+        message.append("WARNING: Monthly Budget Report blocked the event dispatch thread for ");
+        message.append(elapsed / 1000000);
+        message.append(" ms in ");
+        message.append(section.name);
+
+        // Add the sampled stack if the section lasted long enough to be sampled
+        final StackTraceElement[] sample = section.sample;
+        if (sample != null)
+            {
+            message.append(", sampled stack:");
+            for (final StackTraceElement element : sample)
+                {
+                message.append(System.lineSeparator());
+                message.append("\tat ");
+                message.append(element);
+                }
+            }
+        System.err.println(message);
+    }
+
+    /**
+     * Read the threshold from the system property.
+     *
+     * @return long - The threshold in nanoseconds, 0 if the watchdog is disabled.
+     */
+    private static long readThreshold() {
+        final String value = System.getProperty(EdtWatchdog.THRESHOLD_PROPERTY);
+        if (value == null)
+            return 0;
+
+        try
+            {
+            return Math.max(EdtWatchdog.MIN_THRESHOLD, Long.parseLong(value.trim())) * 1000000;
+            }
+        catch (final NumberFormatException e)
+            {
+            System.err.println("ERROR: Invalid "+EdtWatchdog.THRESHOLD_PROPERTY+" threshold: "+value);
+            return 0;
+            }
+    }
+
+    /**
+     * No instances, the watchdog is static.
+     */
+    private EdtWatchdog() {
+    }
+}
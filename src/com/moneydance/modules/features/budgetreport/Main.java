@@ -7,12 +7,21 @@ import java.awt.Image;
 import java.awt.Toolkit;
 import java.io.ByteArrayOutputStream;
 
+import javax.swing.SwingUtilities;
+
+import com.infinitekind.moneydance.model.AccountBook;
 import com.moneydance.apps.md.controller.FeatureModule;
 import com.moneydance.apps.md.controller.FeatureModuleContext;
 
 public class Main extends FeatureModule {
   private BudgetReportWindow budgetReportWindow = null;
 
+  // Builds the default report in the background when a data file is opened
+  private final ReportWarmup warmup = new ReportWarmup();
+
+  // The memorized report catalog of the data file open, loaded when first needed
+  private ReportCatalog catalog = null;
+
   public void init() {
     // the first thing we will do is register this module to be invoked via the application toolbar
     final FeatureModuleContext context = this.getContext();
@@ -22,24 +31,65 @@ public class Main extends FeatureModule {
     catch (final Exception e) {
       e.printStackTrace(System.err);
     }
+
+    // Expose the report engine metrics over JMX
+    ReportEngine.getInstance().register();
+  }
+
+  /** Called when the extension is unloaded */
+  public void cleanup() {
+    // Remove the report engine metrics from JMX
+    ReportEngine.getInstance().unregister();
+
+    // Stop the warm start
+    this.warmup.dispose();
+
+    // Stop watching the memorized reports
+    this.closeCatalog();
+
+    // Stop sampling the event dispatch thread
+    EdtWatchdog.stop();
+  }
+
+  /** Process an application event, warm start the data file when it opens */
+  public void handleEvent(final String appEvent) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (appEvent.equals("md:file:opened")) {
+          Main.this.warmup.start(Main.this.getContext());
+        }
+        else if (appEvent.equals("md:file:closing")) {
+          Main.this.warmup.discard();
+          Main.this.closeCatalog();
+        }
+      }
+    });
   }
 
   /** Process an invocation of this module with the given URI */
   public void invoke(final String uri) {
-    String command = uri;
-    int theIdx = uri.indexOf('?');
-    if (theIdx >= 0) {
-      command = uri.substring(0, theIdx);
-    }
-    else {
-      theIdx = uri.indexOf(':');
+    // Measure how long the invocation blocks the event dispatch thread
+    final EdtWatchdog.Section section = EdtWatchdog.enter("Main.invoke");
+    try {
+      String command = uri;
+      int theIdx = uri.indexOf('?');
       if (theIdx >= 0) {
         command = uri.substring(0, theIdx);
       }
-    }
+      else {
+        theIdx = uri.indexOf(':');
+        if (theIdx >= 0) {
+          command = uri.substring(0, theIdx);
+        }
+      }
 
-    if (command.equals("showconsole")) {
-      this.showConsole();
+      if (command.equals("showconsole")) {
+        this.showConsole();
+      }
+    }
+    finally {
+      section.end();
     }
   }
 
@@ -60,6 +110,41 @@ public class Main extends FeatureModule {
   }
 
   
+  /** 
+   * @return ReportWarmup - The warm start of the default report.
+   */
+  ReportWarmup getWarmup() {
+    return this.warmup;
+  }
+
+
+  /** 
+   * Get the memorized report catalog of a data file, loading it the first
+   * time it is needed in the session.
+   * 
+   * @param book - The account book of the data file.
+   * @return ReportCatalog - The catalog.
+   */
+  ReportCatalog getCatalog(final AccountBook book) {
+    if ((this.catalog == null) || !this.catalog.getRootFolder().equals(book.getRootFolder())) {
+      this.closeCatalog();
+      this.catalog = new ReportCatalog(book.getRootFolder());
+    }
+    return this.catalog;
+  }
+
+
+  /** 
+   * Stop watching the memorized reports of the data file closed.
+   */
+  private void closeCatalog() {
+    if (this.catalog != null) {
+      this.catalog.dispose();
+      this.catalog = null;
+    }
+  }
+
+  
   /**
    * Called to close the window.
    */
@@ -115,7 +200,9 @@ public class Main extends FeatureModule {
         }
       }
     else {
-      // Force a reload if the window is already initialized.
+      // Force a reload if the window is already initialized. Budgets are not
+      // covered by the data file change stamp so drop any cached reports.
+      this.budgetReportWindow.getModel().clearCaches();
       this.budgetReportWindow.getModel().LoadData();
       this.budgetReportWindow.setVisible(true);
       this.budgetReportWindow.toFront();
@@ -0,0 +1,511 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.infinitekind.moneydance.model.AbstractTxn;
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+import com.infinitekind.moneydance.model.AccountListener;
+import com.infinitekind.moneydance.model.AccountUtil;
+import com.infinitekind.moneydance.model.Budget;
+import com.infinitekind.moneydance.model.BudgetItem;
+import com.infinitekind.moneydance.model.BudgetItemList;
+import com.infinitekind.moneydance.model.BudgetPeriod;
+import com.infinitekind.moneydance.model.CurrencyType;
+import com.infinitekind.moneydance.model.CurrencyUtil;
+import com.infinitekind.moneydance.model.PeriodType;
+import com.infinitekind.moneydance.model.TransactionListener;
+import com.infinitekind.moneydance.model.Txn;
+import com.infinitekind.moneydance.model.TxnSearch;
+import com.infinitekind.util.DateUtil;
+import com.moneydance.apps.md.controller.FeatureModuleContext;
+
+/**
+* Report data source backed by the current Moneydance data file.
+*
+* <p><b>Note:</b> All methods must be called on the event dispatch thread,
+* where Moneydance reads and changes the data file. The data model is not
+* documented as safe to read from another thread, so reports built in the
+* background are built from a BookSnapshot taken on the event dispatch
+* thread.
+*/
+public class MoneydanceDataSource implements ReportDataSource {
+    // The context of the extension
+    private final FeatureModuleContext context;
+
+    // The current data file
+    private final AccountBook book;
+
+    // Accounts for the categories returned by getCategories
+    private final Map<String, Account> accounts = new HashMap<String, Account>();
+
+    // Currency types already looked up by ID string
+    private final Map<String, CurrencyType> currencies = new HashMap<String, CurrencyType>();
+
+    // Budget item lists already looked up by budget name
+    private final Map<String, BudgetItemList> budgetItemLists = new HashMap<String, BudgetItemList>();
+
+    // Change stamp incremented whenever a category or transaction changes
+    private final AtomicLong changeStamp = new AtomicLong();
+
+    // Monthly totals of past years saved between sessions
+    private final ActualsStore actualsStore;
+
+    // Listener to advance the change stamp when a category changes
+    private final AccountListener accountListener = new AccountListener() {
+        @Override
+        public void accountAdded(final Account parent, final Account account) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+        }
+
+        @Override
+        public void accountBalanceChanged(final Account account) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+        }
+
+        @Override
+        public void accountDeleted(final Account parent, final Account account) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+        }
+
+        @Override
+        public void accountModified(final Account account) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+        }
+    };
+
+    // Listener to advance the change stamp and update the actuals store when a transaction changes
+    private final TransactionListener transactionListener = new TransactionListener() {
+        @Override
+        public void transactionAdded(final AbstractTxn transaction) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+            MoneydanceDataSource.this.actualsStore.invalidateYear(transaction.getDateInt() / 10000);
+        }
+
+        @Override
+        public void transactionModified(final AbstractTxn transaction) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+            MoneydanceDataSource.this.actualsStore.revalidate();
+        }
+
+        @Override
+        public void transactionRemoved(final AbstractTxn transaction) {
+            MoneydanceDataSource.this.changeStamp.incrementAndGet();
+            MoneydanceDataSource.this.actualsStore.revalidate();
+        }
+    };
+
+    // Hit and miss counters of the lookup caches
+    private static final CacheStatistics currencyStatistics = CacheStatistics.get("Currency types");
+    private static final CacheStatistics budgetStatistics = CacheStatistics.get("Budget item lists");
+
+    /**
+     * Create a data source for the current Moneydance data file.
+     *
+     * @param context - The feature module (extension) context.
+     */
+    public MoneydanceDataSource(final FeatureModuleContext context) {
+        // Save context for later
+        this.context = context;
+
+        // Save the account book for later
+        this.book = context.getCurrentAccountBook();
+
+        // Open the actual totals saved next to the memorized reports
+        this.actualsStore = new ActualsStore(new File(this.book.getRootFolder(), Constants.ACTUALS_FILE), new Supplier<Map<Integer, Long>>() {
+            @Override
+            public Map<Integer, Long> get() {
+                return MoneydanceDataSource.this.getYearStamps();
+            }
+        });
+
+        // Listen for changes to the data file
+        this.book.addAccountListener(this.accountListener);
+        this.book.getTransactionSet().addTransactionListener(this.transactionListener);
+    }
+
+    /**
+     * @return The base currency ID string of the data file
+     */
+    @Override
+    public String getBaseCurrency() {
+        return this.book.getCurrencies().getBaseType().getIDString();
+    }
+
+    /**
+     * @return The names of the monthly budgets in the data file
+     */
+    @Override
+    public String[] getBudgetNames() {
+        return new MyBudgetList(this.context).getBudgetNames();
+    }
+
+    /**
+     * Get the active income and expense categories in account tree order.
+     *
+     * @return List<ReportCategory> - The categories to report.
+     */
+    @Override
+    public List<ReportCategory> getCategories() {
+        final List<ReportCategory> categories = new ArrayList<ReportCategory>();
+
+        // Iterate through the accounts to find all active Income and Expense categories
+        // Note that accounts and categories are the same, they are all Accounts.
+        for (final Iterator<Account> iter = AccountUtil.getAccountIterator(this.book); iter.hasNext(); )
+            {
+            // Get the account
+            final Account acct = iter.next();
+
+            // Is the account type one that we're looking for?
+            final Account.AccountType type = acct.getAccountType();
+            if ((type != Account.AccountType.INCOME) && (type != Account.AccountType.EXPENSE))
+                continue;
+
+            // Is the account active
+            if ((acct.getAccountOrParentIsInactive()) || (acct.getHideOnHomePage()))
+                continue;
+
+            // Loop through the sub categories of this category to see if it has any active children
+            // You can't simply use acct.getSubAccountCount() as it will also count inactive accounts.
+            boolean hasChildren = false;
+            for (final Account sub : acct.getSubAccounts())
+                {
+                if ((!sub.getAccountOrParentIsInactive()) && (!sub.getHideOnHomePage()))
+                    {
+                    // We only have to find one to declare that this category has children
+                    hasChildren = true;
+                    break;
+                    }
+                }
+
+            // Save the account so budgets can be looked up later
+            this.accounts.put(acct.getUUID(), acct);
+
+            // Add the category
+            categories.add(new ReportCategory(acct.getUUID(), acct.getFullAccountName(), acct.getAccountName(), type, acct.getCurrencyType().getIDString(), hasChildren));
+            }
+
+        return categories;
+    }
+
+    /**
+     * Get the budget amount of a category for a month.
+     *
+     * @param budgetName - The name of the budget.
+     * @param category - The category to get the budget amount for.
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @return long - The budget amount, 0 if no budget amount exists.
+     */
+    @Override
+    public long getBudgetAmount(final String budgetName, final ReportCategory category, final int year, final int month) {
+        // Get the budget item list, looking up the budget the first time it is used
+        BudgetItemList budgetItemList = this.budgetItemLists.get(budgetName);
+        if (budgetItemList != null)
+            MoneydanceDataSource.budgetStatistics.hit();
+        else
+            {
+            MoneydanceDataSource.budgetStatistics.miss();
+            final Budget budget = new MyBudgetList(this.context).getBudget(budgetName);
+            if (budget == null)
+                return 0;
+            budgetItemList = budget.getItemList();
+            this.budgetItemLists.put(budgetName, budgetItemList);
+            }
+
+        // Get the account for the category
+        final Account acct = this.accounts.get(category.getUUID());
+        if (acct == null)
+            return 0;
+
+        // Find the existing budget value for the month
+        final BudgetItem i = budgetItemList.getBudgetItemForCategory(acct, new BudgetPeriod(DateUtil.getDate(year, month, 1), PeriodType.MONTH));
+        if (i != null)
+            return i.getAmount();
+        else
+            return 0;
+    }
+
+    /**
+     * Visit all income and expense splits dated in the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each split found.
+     */
+    @Override
+    public void scanTransactions(final int startDate, final int endDate, final TransactionVisitor visitor) {
+        // Past years are visited as monthly totals from the actuals store, a
+        // range spanning years is split at the start of each year
+        int from = startDate;
+        while ((from < endDate) && ActualsStore.isHistorical(from / 10000))
+            {
+            final int year = from / 10000;
+            final int to = Math.min(endDate, DateUtil.getDate(year + 1, 1, 1));
+            this.visitYearTotals(year, from, to, visitor);
+            from = to;
+            }
+
+        // The current year onwards is searched in one pass
+        if (from < endDate)
+            this.searchTransactions(from, endDate, visitor);
+    }
+
+    /**
+     * Get the splits in a date range as chunks that can be visited
+     * concurrently. Only totaling the chunks is parallel: the transaction set
+     * is searched serially on the calling thread, as the Moneydance data model
+     * is not documented as safe to search from several threads, and the
+     * splits found are copied into arrays that are then chunked. This search
+     * bounds the speedup of the parallel totals, past years cost little as
+     * their totals come from the actuals store.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param chunkSize - The maximum number of splits in a chunk.
+     * @return List<TransactionChunk> - The chunks in date order.
+     */
+    @Override
+    public List<TransactionChunk> getTransactionChunks(final int startDate, final int endDate, final int chunkSize) {
+        final SplitBuffer buffer = new SplitBuffer();
+        this.scanTransactions(startDate, endDate, buffer);
+        return buffer.getChunks(chunkSize);
+    }
+
+    /**
+     * Estimate the number of splits in a date range without searching: the
+     * number of transactions in the data file. Past years are visited as at
+     * most one total per category and month, each totaling a split or more.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @return long - The estimated number of splits.
+     */
+    @Override
+    public long estimateSplits(final int startDate, final int endDate) {
+        return this.book.getTransactionSet().getTransactionCount();
+    }
+
+    /**
+     * Visit the monthly totals of a past year, totaling the year and saving
+     * it in the actuals store with its stamp if it is not stored yet.
+     *
+     * @param year - The year (YYYY).
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each category and month.
+     */
+    private void visitYearTotals(final int year, final int startDate, final int endDate, final TransactionVisitor visitor) {
+        Map<String, long[]> totals = this.actualsStore.getYear(year);
+        if (totals == null)
+            {
+            // Total the whole year, it costs the same single pass over the transactions
+            final int generation = this.actualsStore.getGeneration();
+            final Map<String, long[]> yearTotals = new HashMap<String, long[]>();
+            final long[] stamp = new long[1];
+            this.searchTransactions(DateUtil.getDate(year, 1, 1), DateUtil.getDate(year + 1, 1, 1), new TransactionVisitor() {
+                @Override
+                public void visit(final String categoryUUID, final int date, final long value) {
+                    long[] months = yearTotals.get(categoryUUID);
+                    if (months == null)
+                        {
+                        months = new long[12];
+                        yearTotals.put(categoryUUID, months);
+                        }
+                    months[((date / 100) % 100) - 1] += value;
+                    stamp[0] += ActualsStore.hashSplit(categoryUUID, date, value);
+                }
+            });
+            this.actualsStore.putYear(year, yearTotals, stamp[0], generation);
+            totals = yearTotals;
+            }
+
+        // Visit the totals of the months in the range
+        final int firstMonth = (startDate / 100) % 100;
+        final int lastMonth = ((endDate / 10000) > year) ? 12 : ((endDate / 100) % 100) - 1;
+        for (final Map.Entry<String, long[]> entry : totals.entrySet())
+            {
+            final long[] months = entry.getValue();
+            for (int month = firstMonth; month <= lastMonth; month++)
+                {
+                if (months[month - 1] != 0)
+                    visitor.visit(entry.getKey(), DateUtil.getDate(year, month, 1), months[month - 1]);
+                }
+            }
+    }
+
+    /**
+     * Search the transaction set for the income and expense splits dated in
+     * the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each split found.
+     */
+    private void searchTransactions(final int startDate, final int endDate, final TransactionVisitor visitor) {
+        // Search for the income and expense splits in the date range
+        final TxnSearch search = new TxnSearch() {
+            @Override
+            public boolean matches(final Txn transaction) {
+                final Account.AccountType type = transaction.getAccount().getAccountType();
+                return ((type == Account.AccountType.INCOME) || (type == Account.AccountType.EXPENSE))
+                    && (transaction.getDateInt() >= startDate) && (transaction.getDateInt() < endDate);
+            }
+
+            @Override
+            public boolean matchesAll() {
+                return false;
+            }
+        };
+
+        // Visit each split found
+        for (final AbstractTxn txnLine : this.book.getTransactionSet().getTransactions(search))
+            visitor.visit(txnLine.getAccount().getUUID(), txnLine.getDateInt(), txnLine.getValue());
+    }
+
+    /**
+     * Convert a value from one currency to another.
+     *
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID string of the currency of the value.
+     * @param toCurrency - The ID string of the currency to convert to.
+     * @return long - The converted value.
+     */
+    @Override
+    public long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        if (fromCurrency.equals(toCurrency))
+            return value;
+        return CurrencyUtil.convertValue(value, this.getCurrencyType(fromCurrency), this.getCurrencyType(toCurrency));
+    }
+
+    /**
+     * Format a value for display.
+     *
+     * @param value - The value to format.
+     * @param currency - The ID string of the currency of the value.
+     * @param separator - The decimal separator character.
+     * @return String - The formatted value.
+     */
+    @Override
+    public String formatValue(final long value, final String currency, final char separator) {
+        return this.getCurrencyType(currency).formatFancy(value, separator);
+    }
+
+    /**
+     * Forget the cached currency types and budget item lists.
+     */
+    @Override
+    public void clearCaches() {
+        this.currencies.clear();
+        this.budgetItemLists.clear();
+    }
+
+    /**
+     * @return the change stamp of the data file
+     */
+    @Override
+    public long getChangeStamp() {
+        return this.changeStamp.get();
+    }
+
+    /**
+     * Stop listening for changes to the data file.
+     */
+    @Override
+    public void dispose() {
+        this.book.removeAccountListener(this.accountListener);
+        this.book.getTransactionSet().removeTransactionListener(this.transactionListener);
+        this.actualsStore.close();
+    }
+
+    /**
+     * Compute the stamps of the past years for the actuals store in one pass
+     * over the transaction set. The search matches nothing so no result set
+     * is built, each income and expense split is only hashed into its year.
+     *
+     * @return Map<Integer, Long> - The stamp of each past year with splits.
+     */
+    private Map<Integer, Long> getYearStamps() {
+        final Map<Integer, Long> stamps = new HashMap<Integer, Long>();
+        final TxnSearch search = new TxnSearch() {
+            @Override
+            public boolean matches(final Txn transaction) {
+                final Account.AccountType type = transaction.getAccount().getAccountType();
+                final int year = transaction.getDateInt() / 10000;
+                if (((type == Account.AccountType.INCOME) || (type == Account.AccountType.EXPENSE))
+                    && ActualsStore.isHistorical(year))
+                    {
+                    final long hash = ActualsStore.hashSplit(transaction.getAccount().getUUID(), transaction.getDateInt(), transaction.getValue());
+                    final Long stamp = stamps.get(Integer.valueOf(year));
+                    stamps.put(Integer.valueOf(year), Long.valueOf(((stamp != null) ? stamp.longValue() : 0) + hash));
+                    }
+                return false;
+            }
+
+            @Override
+            public boolean matchesAll() {
+                return false;
+            }
+        };
+        this.book.getTransactionSet().getTransactions(search);
+        return stamps;
+    }
+
+    /**
+     * Get the currency type for a currency ID string.
+     *
+     * @param currency - The ID string of the currency.
+     * @return CurrencyType - The currency type, the base currency if not found.
+     */
+    private CurrencyType getCurrencyType(final String currency) {
+        CurrencyType type = this.currencies.get(currency);
+        if (type != null)
+            MoneydanceDataSource.currencyStatistics.hit();
+        else
+            {
+            MoneydanceDataSource.currencyStatistics.miss();
+            type = this.book.getCurrencies().getCurrencyByIDString(currency);
+            if (type == null)
+                type = this.book.getCurrencies().getBaseType();
+            this.currencies.put(currency, type);
+            }
+        return type;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import com.infinitekind.util.DateUtil;
+
+/**
+* A range of whole months that may span calendar years, i.e. a fiscal year
+* from July to June or the last 24 months.
+* The months of the range are numbered 1...getMonthCount() from the first
+* month, independent of the calendar year, and the report values are kept by
+* that number. A date is mapped to its month of the range with a single
+* subtraction, so the transactions of the whole range are bucketed in one
+* pass.
+*/
+public final class MonthRange {
+    // The first month of the range as months since year 0 (year * 12 + month - 1)
+    private final int first;
+
+    // The number of months in the range
+    private final int count;
+
+    /**
+     * @param startYear - The year of the first month (YYYY).
+     * @param startMonth - The first month (1...12).
+     * @param endYear - The year of the last month (YYYY).
+     * @param endMonth - The last month (1...12), included in the range.
+     */
+    public MonthRange(final int startYear, final int startMonth, final int endYear, final int endMonth) {
+        this.first = MonthRange.toMonths(startYear, startMonth);
+        this.count = (MonthRange.toMonths(endYear, endMonth) - this.first) + 1;
+        if (this.count < 1)
+            throw new IllegalArgumentException("The range ends before it starts: "+startMonth+"/"+startYear+" - "+endMonth+"/"+endYear);
+    }
+
+    /**
+     * Get the months of a report.
+     *
+     * @param report - The report, with its period resolved.
+     * @return MonthRange - The months of the report.
+     */
+    public static MonthRange of(final Report report) {
+        return new MonthRange(report.getYear(), report.getStartMonth(), report.getEndYear(), report.getEndMonth());
+    }
+
+    /**
+     * Get the smallest range holding the months of this range and another.
+     *
+     * @param other - The other range.
+     * @return MonthRange - The range from the first month of either range to
+     * the last month of either.
+     */
+    public MonthRange union(final MonthRange other) {
+        final int start = Math.min(this.first, other.first);
+        final int end = Math.max(this.first + this.count, other.first + other.count) - 1;
+        return new MonthRange(start / 12, (start % 12) + 1, end / 12, (end % 12) + 1);
+    }
+
+    /**
+     * @return the number of months in the range
+     */
+    public int getMonthCount() {
+        return this.count;
+    }
+
+    /**
+     * Get the month of the range a date falls in.
+     *
+     * @param date - The date (YYYYMMDD).
+     * @return int - The month of the range (1...getMonthCount()), or 0 if
+     * the date is outside the range.
+     */
+    public int indexOf(final int date) {
+        final int index = (((date / 10000) * 12) + ((date / 100) % 100)) - this.first;
+        return ((index > 0) && (index <= this.count)) ? index : 0;
+    }
+
+    /**
+     * @param index - A month of the range (1...getMonthCount()).
+     * @return the calendar year of the month (YYYY)
+     */
+    public int getYear(final int index) {
+        return (this.first + index - 1) / 12;
+    }
+
+    /**
+     * @param index - A month of the range (1...getMonthCount()).
+     * @return the calendar month of the month (1...12)
+     */
+    public int getMonth(final int index) {
+        return ((this.first + index - 1) % 12) + 1;
+    }
+
+    /**
+     * @return the first date of the range (YYYYMMDD)
+     */
+    public int getStartDate() {
+        return DateUtil.getDate(this.getYear(1), this.getMonth(1), 1);
+    }
+
+    /**
+     * @return the date after the range (YYYYMMDD), not included in the range
+     */
+    public int getEndDate() {
+        return DateUtil.getDate(this.getYear(this.count + 1), this.getMonth(this.count + 1), 1);
+    }
+
+    /**
+     * Format the range for report headers, i.e. "July 2023 - June 2024".
+     *
+     * @param space - The space between words i.e. " " or "&amp;nbsp;" for HTML.
+     * @return String - The range.
+     */
+    public String format(final String space) {
+        return Constants.months[this.getMonth(1) - 1]+space+this.getYear(1)+space+"-"+space
+            +Constants.months[this.getMonth(this.count) - 1]+space+this.getYear(this.count);
+    }
+
+    /**
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @return the months since year 0
+     */
+    private static int toMonths(final int year, final int month) {
+        return (year * 12) + month - 1;
+    }
+}
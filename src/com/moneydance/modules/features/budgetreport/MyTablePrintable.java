@@ -92,10 +92,12 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
 import java.text.MessageFormat;
+import java.util.Arrays;
 
 import javax.swing.JTable;
 import javax.swing.table.JTableHeader;
@@ -139,19 +141,21 @@ class MyTablePrintable implements Printable {
     private final MessageFormat[] footerFormat;
 
     /**
-     * The most recent page index asked to print.
+     * The top of each row followed by the bottom of the last row.
      */
-    private int last = -1;
+    private final int[] rowY;
 
     /**
-     * The next row to print.
+     * The left of each column, in column model order, followed by the right
+     * of the last column.
      */
-    private int row = 0;
+    private final int[] colX;
 
     /**
-     * The next column to print.
+     * The pages laid out for the most recent printable area, null until the
+     * first page is printed or counted.
      */
-    private int col = 0;
+    private PageMap pageMap = null;
 
     /**
      * Used to store an area of the table to be printed.
@@ -231,6 +235,18 @@ class MyTablePrintable implements Printable {
         this.headerFormat = headerFormat;
         this.footerFormat = footerFormat;
 
+        // cache the row heights and column widths, the table doesn't change
+        // while it is printed
+        final int rowCount = table.getRowCount();
+        this.rowY = new int[rowCount + 1];
+        for (int r = 0; r < rowCount; r++)
+            this.rowY[r + 1] = this.rowY[r] + table.getRowHeight(r);
+
+        final int colCount = this.colModel.getColumnCount();
+        this.colX = new int[colCount + 1];
+        for (int c = 0; c < colCount; c++)
+            this.colX[c + 1] = this.colX[c] + this.colModel.getColumn(c).getWidth();
+
         // derive the header and footer font from the table's font
         this.headerFont1 = table.getFont().deriveFont(Font.BOLD, MyTablePrintable.HEADER_FONT_SIZE_1);    // First line of the header
         this.headerFont2 = table.getFont().deriveFont(Font.PLAIN, MyTablePrintable.HEADER_FONT_SIZE_2);   // Subsequent lines of the header
@@ -249,6 +265,10 @@ class MyTablePrintable implements Printable {
      * @throws PrinterException if an error causes printing to be aborted
      */
     public int print(final Graphics graphics, final PageFormat pageFormat, final int pageIndex) throws PrinterException {
+        // Start the flight recorder event for this page
+        final ReportEvents.PrintPage pageEvent = new ReportEvents.PrintPage(pageIndex);
+        pageEvent.begin();
+
         // for easy access to these values
         final int imageableWidth = (int) pageFormat.getImageableWidth();
         final int imageableHeight = (int) pageFormat.getImageableHeight();
@@ -346,29 +366,17 @@ class MyTablePrintable implements Printable {
         // dictated by the previous two assertions
         assert sf > 0;
 
-        // This is in a loop for two reasons:
-        // First, it allows us to catch up in case we're called starting
-        // with a non-zero pageIndex. Second, we know that we can be called
-        // for the same page multiple times. The condition of this while
-        // loop acts as a check, ensuring that we don't attempt to do the
-        // calculations again when we are called subsequent times for the
-        // same page.
-        while (this.last < pageIndex) {
-            // if we are finished all columns in all rows
-            if ((this.row >= this.table.getRowCount()) && (this.col == 0))
-                return Printable.NO_SUCH_PAGE;
-
-            // rather than multiplying every row and column by the scale factor
-            // in findNextClip, just pass a width and height that have already
-            // been divided by it
-            final int scaledWidth = (int) (imageableWidth / sf);
-            final int scaledHeight = (int) ((availableSpace - this.hclip.height) / sf);
-
-            // calculate the area of the table to be printed for this page
-            this.findNextClip(scaledWidth, scaledHeight);
-
-            this.last++;
-        }
+        // rather than multiplying every row and column by the scale factor
+        // when laying out the pages, just pass a width and height that have
+        // already been divided by it
+        final int scaledWidth = (int) (imageableWidth / sf);
+        final int scaledHeight = (int) ((availableSpace - this.hclip.height) / sf);
+
+        // lay out all of the pages once, then find this page directly
+        pageEvent.pagesPaginated = this.layout(scaledWidth, scaledHeight);
+        if (pageIndex >= this.pageMap.getPageCount())
+            return Printable.NO_SUCH_PAGE;
+        this.pageMap.getClip(pageIndex, this.clip);
 
         // Create a copy of the graphics object so we don't affect the one given to us
         final Graphics2D g2d = (Graphics2D) graphics.create();
@@ -470,9 +478,78 @@ class MyTablePrintable implements Printable {
         // dispose the graphics copy
         g2d.dispose();
 
+        // Commit the page event with the report being printed
+        if (this.table.getModel() instanceof TableModel)
+            {
+            final TableModel model = (TableModel) this.table.getModel();
+            pageEvent.commitFor(model.getCurrentReport(), model.getBudgetCategoriesList());
+            }
+        else
+            pageEvent.commitFor(null, null);
+
         return Printable.PAGE_EXISTS;
     }
 
+    /**
+     * Get the number of pages the table prints on, without printing it.
+     *
+     * @param pageFormat the size and orientation of the pages
+     * @return the number of pages
+     * @throws PrinterException if the printable area is too small
+     */
+    public int getPageCount(final PageFormat pageFormat) throws PrinterException {
+        final int imageableWidth = (int) pageFormat.getImageableWidth();
+        if (imageableWidth <= 0)
+            throw new PrinterException("Width of printable area is too small.");
+
+        // measure the header and footer text the same way print does
+        final Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        final int availableSpace;
+        try
+            {
+            availableSpace = (int) pageFormat.getImageableHeight()
+                - this.getTextSpace(graphics, this.headerFormat, this.headerFont1, this.headerFont2)
+                - this.getTextSpace(graphics, this.footerFormat, this.footerFont, this.footerFont);
+            }
+        finally
+            {
+            graphics.dispose();
+            }
+        if (availableSpace <= 0)
+            throw new PrinterException("Height of printable area is too small.");
+
+        double sf = 1.0D;
+        if ((this.printMode == JTable.PrintMode.FIT_WIDTH) && (this.totalColWidth > imageableWidth))
+            sf = (double) imageableWidth / (double) this.totalColWidth;
+
+        this.layout((int) (imageableWidth / sf), (int) ((availableSpace - this.hclip.height) / sf));
+        return this.pageMap.getPageCount();
+    }
+
+    /**
+     * Measure the vertical space taken by header or footer text, including
+     * the gap between the text and the table.
+     *
+     * @param graphics the graphics to measure with
+     * @param formats the formats of the lines of text, or null for none
+     * @param firstFont the font of the first line
+     * @param font the font of the other lines
+     * @return the space needed
+     */
+    private int getTextSpace(final Graphics graphics, final MessageFormat[] formats, final Font firstFont, final Font font) {
+        if (formats == null)
+            return 0;
+
+        final Object[] pageNumber = new Object[]{Integer.valueOf(1)};
+        int space = MyTablePrintable.H_F_SPACE;
+        for (int i = 0; i < formats.length; i++)
+            {
+            graphics.setFont((i == 0) ? firstFont : font);
+            space += (int) Math.ceil(graphics.getFontMetrics().getStringBounds(formats[i].format(pageNumber), graphics).getHeight());
+            }
+        return space;
+    }
+
     /**
      * A helper method that encapsulates common code for rendering the header
      * and footer text.
@@ -518,85 +595,116 @@ class MyTablePrintable implements Printable {
     }
 
     /**
-     * Calculate the area of the table to be printed for the next page. This
-     * should only be called if there are rows and columns left to print.
-     *
-     * To avoid an infinite loop in printing, this will always put at least one
-     * cell on each page.
+     * Lay out the pages for a printable area unless they are already laid out
+     * for it. Rows are spread over as many bands of pages as needed, and in
+     * <code>JTable.PrintMode.NORMAL</code> each band of rows is spread over
+     * the same bands of columns. At least one row and one column are put on
+     * each page to avoid an infinite loop in printing.
      *
      * @param pw the width of the area to print in
      * @param ph the height of the area to print in
+     * @return the number of pages laid out, 0 if they were already laid out
      */
-    private void findNextClip(final int pw, final int ph) {
-        final boolean ltr = this.table.getComponentOrientation().isLeftToRight();
-
-        // if we're ready to start a new set of rows
-        if (this.col == 0) {
-            if (ltr) 
-                {
-                // adjust clip to the left of the first column
-                this.clip.x = 0;
-                } 
-            else 
-                {
-                // adjust clip to the right of the first column
-                this.clip.x = this.totalColWidth;
-                }
-
-            // adjust clip to the top of the next set of rows
-            this.clip.y += this.clip.height;
-
-            // adjust clip width and height to be zero
-            this.clip.width = 0;
-            this.clip.height = 0;
-
-            // fit as many rows as possible, and at least one
-            final int rowCount = this.table.getRowCount();
-            int rowHeight = this.table.getRowHeight(this.row);
-            do {
-                this.clip.height += rowHeight;
-
-                if (++this.row >= rowCount)
-                    break;
-
-                rowHeight = this.table.getRowHeight(this.row);
-            } while (this.clip.height + rowHeight <= ph);
-        }
-
-        // we can short-circuit for JTable.PrintMode.FIT_WIDTH since
-        // we'll always fit all columns on the page
-        if (this.printMode == JTable.PrintMode.FIT_WIDTH) 
+    private int layout(final int pw, final int ph) {
+        if ((this.pageMap != null) && (this.pageMap.width == pw) && (this.pageMap.height == ph))
+            return 0;
+
+        // fit as many rows as possible on each band, and at least one
+        final int rowCount = this.rowY.length - 1;
+        final int[] rowBands = new int[rowCount + 1];
+        int rowBandCount = 0;
+        for (int first = 0; first < rowCount; )
             {
-            this.clip.x = 0;
-            this.clip.width = this.totalColWidth;
-            return;
+            rowBands[rowBandCount++] = first;
+            int end = first + 1;
+            while ((end < rowCount) && (this.rowY[end + 1] - this.rowY[first] <= ph))
+                end++;
+            first = end;
             }
+        rowBands[rowBandCount] = rowCount;
 
-        if (ltr) 
+        // fit as many columns as possible on each band, and at least one,
+        // except that FIT_WIDTH always fits all of the columns
+        final int colCount = this.colX.length - 1;
+        final int[] colBands = new int[colCount + 1];
+        int colBandCount = 0;
+        if (this.printMode == JTable.PrintMode.FIT_WIDTH)
+            colBands[colBandCount++] = 0;
+        else
             {
-            // adjust clip to the left of the next set of columns
-            this.clip.x += this.clip.width;
+            for (int first = 0; first < colCount; )
+                {
+                colBands[colBandCount++] = first;
+                int end = first + 1;
+                while ((end < colCount) && (this.colX[end + 1] - this.colX[first] <= pw))
+                    end++;
+                first = end;
+                }
             }
+        colBands[colBandCount] = colCount;
 
-        // adjust clip width to be zero
-        this.clip.width = 0;
+        this.pageMap = new PageMap(pw, ph, Arrays.copyOf(rowBands, rowBandCount + 1), Arrays.copyOf(colBands, colBandCount + 1));
+        return this.pageMap.getPageCount();
+    }
 
-        // fit as many columns as possible, and at least one
-        final int colCount = this.table.getColumnCount();
-        int colWidth = this.colModel.getColumn(this.col).getWidth();
-        do {
-            this.clip.width += colWidth;
-            if (!ltr)
-                this.clip.x -= colWidth;
+    /**
+     * The pages of the table laid out for a printable area. Pages are
+     * numbered across the column bands of the first band of rows, then across
+     * those of the next band of rows and so on.
+     */
+    private final class PageMap {
+        /**
+         * The printable area the pages were laid out for.
+         */
+        private final int width;
+        private final int height;
+
+        /**
+         * The first row of each band of rows followed by the row count.
+         */
+        private final int[] rowBands;
+
+        /**
+         * The first column of each band of columns followed by the column count.
+         */
+        private final int[] colBands;
+
+        PageMap(final int width, final int height, final int[] rowBands, final int[] colBands) {
+            this.width = width;
+            this.height = height;
+            this.rowBands = rowBands;
+            this.colBands = colBands;
+        }
 
-            if (++this.col >= colCount) 
-                {
-                // reset col to 0 to indicate we've finished all columns
-                this.col = 0;
-                break;
-                }
+        /**
+         * @return the number of pages, 0 if the table has no rows
+         */
+        int getPageCount() {
+            return (this.rowBands.length - 1) * (this.colBands.length - 1);
+        }
 
-            colWidth = this.colModel.getColumn(this.col).getWidth();
-        } while (this.clip.width + colWidth <= pw);
+        /**
+         * Get the area of the table printed on a page.
+         *
+         * @param pageIndex the zero based index of the page
+         * @param clip the rectangle to store the area in
+         */
+        void getClip(final int pageIndex, final Rectangle clip) {
+            final int[] rowY = MyTablePrintable.this.rowY;
+            final int[] colX = MyTablePrintable.this.colX;
+            final int rowBand = pageIndex / (this.colBands.length - 1);
+            final int colBand = pageIndex % (this.colBands.length - 1);
+
+            clip.y = rowY[this.rowBands[rowBand]];
+            clip.height = rowY[this.rowBands[rowBand + 1]] - clip.y;
+
+            final int left = colX[this.colBands[colBand]];
+            final int right = colX[this.colBands[colBand + 1]];
+            clip.width = right - left;
+            if (MyTablePrintable.this.table.getComponentOrientation().isLeftToRight())
+                clip.x = left;
+            else
+                clip.x = MyTablePrintable.this.totalColWidth - right;
+        }
     }
 } 
@@ -0,0 +1,313 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+* Minimal PDF writer for report pages.
+* Pages are drawn with filled rectangles and text in the standard Helvetica
+* and Helvetica-Bold fonts, which every PDF reader provides, so nothing has to
+* be embedded. Each page is compressed and written to the stream as soon as it
+* is finished, only the offsets of the objects are kept until the end.
+*
+* <p><b>Note:</b> Text is written in WinAnsiEncoding, characters it cannot
+* encode are written as '?'. Coordinates are in points from the top left
+* corner of the page, as in Java 2D.
+*/
+class PdfWriter implements ReportRenderer.Canvas {
+    // Object numbers of the objects written first
+    private static final int CATALOG            = 1;
+    private static final int PAGES              = 2;
+    private static final int FONT_REGULAR       = 3;
+    private static final int FONT_BOLD          = 4;
+
+    // Widths of the characters 32...126 in 1/1000 of the font size (Helvetica AFM)
+    private static final short[] regularWidths = {
+        278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+        556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+        1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+        667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+        333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+        556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584 };
+
+    // Widths of the characters 32...126 in 1/1000 of the font size (Helvetica-Bold AFM)
+    private static final short[] boldWidths = {
+        278, 333, 474, 556, 556, 889, 722, 238, 333, 333, 389, 584, 278, 333, 278, 278,
+        556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 333, 333, 584, 584, 584, 611,
+        975, 722, 722, 722, 722, 667, 611, 778, 722, 278, 556, 722, 611, 833, 722, 778,
+        667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 333, 278, 333, 584, 556,
+        333, 556, 611, 556, 611, 556, 333, 611, 611, 278, 278, 556, 278, 889, 611, 611,
+        611, 611, 389, 556, 333, 611, 556, 778, 556, 556, 500, 389, 280, 389, 584 };
+
+    // Width of the other characters (1/1000 of the font size)
+    private static final short DEFAULT_WIDTH    = 556;
+
+    // The stream the document is written to
+    private final OutputStream out;
+
+    // The number of bytes written so far
+    private long position = 0;
+
+    // The offsets of the objects written, [0] is object 1
+    private final List<Long> offsets = new ArrayList<Long>();
+
+    // The object numbers of the pages written
+    private final List<Integer> pages = new ArrayList<Integer>();
+
+    // Content of the page being drawn, null between pages
+    private StringBuilder content = null;
+
+    // The size of the page being drawn (points)
+    private float pageWidth;
+    private float pageHeight;
+
+    /**
+     * Start a document.
+     *
+     * @param out - The stream to write the document to, it is not closed.
+     * @throws IOException - If the stream cannot be written.
+     */
+    PdfWriter(final OutputStream out) throws IOException {
+        this.out = out;
+
+        // Header, the binary comment tells transfer programs the file is binary
+        this.write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+        // Reserve the catalog and the page tree, the page tree is written last
+        this.offsets.add(Long.valueOf(0));
+        this.offsets.add(Long.valueOf(0));
+        this.writeObject(PdfWriter.CATALOG, "<< /Type /Catalog /Pages "+PdfWriter.PAGES+" 0 R >>");
+
+        // The two standard fonts used
+        this.writeObject(this.newObject(), "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>");
+        this.writeObject(this.newObject(), "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>");
+    }
+
+    /**
+     * Start a new page.
+     *
+     * @param width - The width of the page (points).
+     * @param height - The height of the page (points).
+     */
+    void beginPage(final float width, final float height) {
+        this.pageWidth = width;
+        this.pageHeight = height;
+        this.content = new StringBuilder(16384);
+    }
+
+    /**
+     * Finish the page being drawn and write it to the stream.
+     *
+     * @throws IOException - If the stream cannot be written.
+     */
+    void endPage() throws IOException {
+        // Compress the page content
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(this.content.length() / 4);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed))
+            {
+            deflater.write(this.content.toString().getBytes(StandardCharsets.ISO_8859_1));
+            }
+        this.content = null;
+
+        // The content stream
+        final int contentObject = this.newObject();
+        this.beginObject(contentObject);
+        this.write("<< /Length "+compressed.size()+" /Filter /FlateDecode >>\nstream\n");
+        compressed.writeTo(this.out);
+        this.position += compressed.size();
+        this.write("\nendstream\nendobj\n");
+
+        // The page
+        final int pageObject = this.newObject();
+        this.writeObject(pageObject, "<< /Type /Page /Parent "+PdfWriter.PAGES+" 0 R /MediaBox [0 0 "+PdfWriter.number(this.pageWidth)+" "
+            +PdfWriter.number(this.pageHeight)+"] /Resources << /Font << /F1 "+PdfWriter.FONT_REGULAR+" 0 R /F2 "+PdfWriter.FONT_BOLD
+            +" 0 R >> >> /Contents "+contentObject+" 0 R >>");
+        this.pages.add(Integer.valueOf(pageObject));
+    }
+
+    /**
+     * Finish the document by writing the page tree and the cross-reference
+     * table, then flush the stream.
+     *
+     * @throws IOException - If the stream cannot be written.
+     */
+    void finish() throws IOException {
+        // The page tree
+        final StringBuilder kids = new StringBuilder();
+        for (final Integer page : this.pages)
+            kids.append(page).append(" 0 R ");
+        this.writeObject(PdfWriter.PAGES, "<< /Type /Pages /Kids [ "+kids+"] /Count "+this.pages.size()+" >>");
+
+        // Cross-reference table, each entry must be exactly 20 bytes
+        final long xref = this.position;
+        final StringBuilder table = new StringBuilder();
+        table.append("xref\n0 ").append(this.offsets.size() + 1).append("\n0000000000 65535 f \n");
+        for (final Long offset : this.offsets)
+            table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offset));
+        table.append("trailer\n<< /Size ").append(this.offsets.size() + 1).append(" /Root ").append(PdfWriter.CATALOG).append(" 0 R >>\n");
+        table.append("startxref\n").append(xref).append("\n%%EOF\n");
+        this.write(table.toString());
+        this.out.flush();
+    }
+
+    /**
+     * @return the number of pages written
+     */
+    int getPageCount() {
+        return this.pages.size();
+    }
+
+    @Override
+    public void setColor(final Color color) {
+        this.content.append(PdfWriter.number(color.getRed() / 255f)).append(' ')
+            .append(PdfWriter.number(color.getGreen() / 255f)).append(' ')
+            .append(PdfWriter.number(color.getBlue() / 255f)).append(" rg\n");
+    }
+
+    @Override
+    public void fillRect(final float x, final float y, final float width, final float height) {
+        this.content.append(PdfWriter.number(x)).append(' ').append(PdfWriter.number(this.pageHeight - y - height)).append(' ')
+            .append(PdfWriter.number(width)).append(' ').append(PdfWriter.number(height)).append(" re f\n");
+    }
+
+    @Override
+    public void drawText(final String text, final float x, final float y, final boolean bold, final float size) {
+        this.content.append("BT /").append(bold ? "F2 " : "F1 ").append(PdfWriter.number(size)).append(" Tf ")
+            .append(PdfWriter.number(x)).append(' ').append(PdfWriter.number(this.pageHeight - y)).append(" Td (");
+
+        // Encode the text, escaping the characters that delimit strings
+        for (int i = 0; i < text.length(); i++)
+            {
+            final char c = PdfWriter.encode(text.charAt(i));
+            if ((c == '(') || (c == ')') || (c == '\\'))
+                this.content.append('\\');
+            this.content.append(c);
+            }
+        this.content.append(") Tj ET\n");
+    }
+
+    @Override
+    public float stringWidth(final String text, final boolean bold, final float size) {
+        final short[] widths = bold ? PdfWriter.boldWidths : PdfWriter.regularWidths;
+        int width = 0;
+        for (int i = 0; i < text.length(); i++)
+            {
+            final char c = text.charAt(i);
+            width += ((c >= 32) && (c <= 126)) ? widths[c - 32] : PdfWriter.DEFAULT_WIDTH;
+            }
+        return (width * size) / 1000f;
+    }
+
+    /**
+     * Encode a character in WinAnsiEncoding.
+     *
+     * @param c - The character.
+     * @return char - The code of the character (0...255), '?' if it has none.
+     */
+    private static char encode(final char c) {
+        if (((c >= 32) && (c <= 126)) || ((c >= 160) && (c <= 255)))
+            return c;
+        else if (c == '\u20ac')     // Euro sign
+            return (char) 128;
+        else if (c == '\u2212')     // Minus sign
+            return '-';
+        else
+            return '?';
+    }
+
+    /**
+     * Format a number for the content of a page, with at most two decimals.
+     *
+     * @param value - The number.
+     * @return String - The formatted number.
+     */
+    private static String number(final float value) {
+        final long hundredths = Math.round(value * 100.0);
+        if (hundredths % 100 == 0)
+            return Long.toString(hundredths / 100);
+        return String.format(Locale.ROOT, "%.2f", Double.valueOf(hundredths / 100.0));
+    }
+
+    /**
+     * Allocate the number of a new object.
+     *
+     * @return int - The object number.
+     */
+    private int newObject() {
+        this.offsets.add(Long.valueOf(0));
+        return this.offsets.size();
+    }
+
+    /**
+     * Write a complete object.
+     *
+     * @param object - The object number.
+     * @param body - The body of the object.
+     * @throws IOException - If the stream cannot be written.
+     */
+    private void writeObject(final int object, final String body) throws IOException {
+        this.beginObject(object);
+        this.write(body);
+        this.write("\nendobj\n");
+    }
+
+    /**
+     * Record the offset of an object and write its header.
+     *
+     * @param object - The object number.
+     * @throws IOException - If the stream cannot be written.
+     */
+    private void beginObject(final int object) throws IOException {
+        this.offsets.set(object - 1, Long.valueOf(this.position));
+        this.write(object+" 0 obj\n");
+    }
+
+    /**
+     * Write text to the stream, one byte per character.
+     *
+     * @param text - The text.
+     * @throws IOException - If the stream cannot be written.
+     */
+    private void write(final String text) throws IOException {
+        final byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        this.out.write(bytes);
+        this.position += bytes.length;
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dialog;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Printable;
+import java.awt.print.PrinterException;
+import java.awt.print.PrinterJob;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+
+/**
+* Print preview of a report.
+* The pages are rendered from the same MyTablePrintable that prints them, on a
+* background thread and only when the user pages to them or next to them.
+* Rendered pages are kept as images so paging back and forth and zooming
+* don't render them again, and printing from the preview reuses the pages
+* already laid out by the printable.
+*
+* <p><b>Note:</b> The printable must only be used by the preview, its page map
+* and print table are not shared with other threads. All rendering happens on
+* the preview thread until the preview prints or closes.
+*/
+public class PrintPreview extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    // Scale the pages are rendered at so that they stay sharp when zoomed in
+    private static final double RENDER_SCALE    = 1.5;
+
+    // The most rendered pages kept
+    private static final int MAX_PAGES          = 8;
+
+    // Gap around the page (pixels)
+    private static final int MARGIN             = 16;
+
+    // Zoom levels
+    private static final String[] zoomNames     = { "50%", "75%", "100%", "125%", "150%" };
+    private static final double[] zooms         = { 0.5, 0.75, 1.0, 1.25, 1.5 };
+
+    // The printable rendering the pages
+    private final MyTablePrintable printable;
+
+    // The print job used to set up the page and print
+    private final PrinterJob job;
+
+    // Single thread rendering the pages
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Budget Report print preview");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // The page format previewed
+    private PageFormat pageFormat;
+
+    // The number of pages, -1 until the pages are laid out
+    private int pageCount = -1;
+
+    // The page displayed (0...n)
+    private volatile int pageIndex = 0;
+
+    // Incremented when the page format changes so that pages rendered for the old one are dropped
+    private int generation = 0;
+
+    // The zoom factor
+    private double zoom = 1.0;
+
+    // Rendered pages, least recently used first (event dispatch thread only)
+    private final Map<Integer, BufferedImage> images = new LinkedHashMap<Integer, BufferedImage>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, BufferedImage> eldest) {
+            return this.size() > PrintPreview.MAX_PAGES;
+        }
+    };
+
+    // Pages queued for rendering (event dispatch thread only)
+    private final Set<Integer> queued = new HashSet<Integer>();
+
+    // Controls
+    private final JLabel pageLabel = new JLabel();
+    private final JButton previousButton = new JButton("Previous");
+    private final JButton nextButton = new JButton("Next");
+    private final PagePanel pagePanel = new PagePanel();
+
+    /**
+     * Create a print preview.
+     *
+     * @param owner - The window owning the preview.
+     * @param printable - The printable to preview, used only by the preview.
+     * @param job - The print job to set up the page and print with.
+     */
+    public PrintPreview(final Window owner, final MyTablePrintable printable, final PrinterJob job) {
+        super(owner, "Print Preview", Dialog.ModalityType.APPLICATION_MODAL);
+        this.printable = printable;
+        this.job = job;
+        this.pageFormat = job.defaultPage();
+
+        this.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        this.setLayout(new BorderLayout());
+
+        // Tool bar
+        final JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        this.add(toolBar, BorderLayout.NORTH);
+
+        this.previousButton.setToolTipText("Show the previous page");
+        this.previousButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                PrintPreview.this.showPage(PrintPreview.this.pageIndex - 1);
+            }
+        });
+        toolBar.add(this.previousButton);
+
+        toolBar.add(this.pageLabel);
+
+        this.nextButton.setToolTipText("Show the next page");
+        this.nextButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                PrintPreview.this.showPage(PrintPreview.this.pageIndex + 1);
+            }
+        });
+        toolBar.add(this.nextButton);
+
+        final JComboBox<String> zoomSelector = new JComboBox<String>(PrintPreview.zoomNames);
+        zoomSelector.setSelectedIndex(2);
+        zoomSelector.setToolTipText("Zoom the page");
+        zoomSelector.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                // Zooming scales the rendered page, nothing is rendered again
+                PrintPreview.this.zoom = PrintPreview.zooms[zoomSelector.getSelectedIndex()];
+                PrintPreview.this.pagePanel.revalidate();
+                PrintPreview.this.pagePanel.repaint();
+            }
+        });
+        toolBar.add(zoomSelector);
+
+        final JButton setupButton = new JButton("Page Setup");
+        setupButton.setToolTipText("Change the paper size, orientation and margins");
+        setupButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                PrintPreview.this.doPageSetup();
+            }
+        });
+        toolBar.add(setupButton);
+
+        final JButton printButton = new JButton("Print");
+        printButton.setToolTipText("Print the report as previewed");
+        printButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                PrintPreview.this.doPrint();
+            }
+        });
+        toolBar.add(printButton);
+
+        final JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                PrintPreview.this.dispose();
+            }
+        });
+        toolBar.add(closeButton);
+
+        // The page
+        final JScrollPane scrollPane = new JScrollPane(this.pagePanel);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        scrollPane.setPreferredSize(new Dimension(760, 820));
+        this.add(scrollPane, BorderLayout.CENTER);
+
+        // Stop rendering when the preview closes
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(final WindowEvent e) {
+                PrintPreview.this.executor.shutdownNow();
+            }
+        });
+
+        this.pack();
+        this.setLocationRelativeTo(owner);
+        this.layOut();
+    }
+
+    /**
+     * Lay out the pages for the page format on the preview thread and show
+     * the first page once the page count is known.
+     */
+    private void layOut() {
+        final int scheduled = this.generation;
+        final PageFormat format = (PageFormat) this.pageFormat.clone();
+        this.pageCount = -1;
+        this.updateControls();
+        this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try
+                    {
+                    final int count = PrintPreview.this.printable.getPageCount(format);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (scheduled != PrintPreview.this.generation)
+                                return;
+                            PrintPreview.this.pageCount = count;
+                            PrintPreview.this.showPage(0);
+                        }
+                    });
+                    }
+                catch (final PrinterException e)
+                    {
+                    System.err.println("ERROR: The report could not be laid out for the print preview: "+e.getMessage());
+                    }
+            }
+        });
+    }
+
+    /**
+     * Show a page, rendering it and the pages next to it if they are not
+     * rendered yet.
+     *
+     * @param index - The page to show (0...n).
+     */
+    private void showPage(final int index) {
+        if ((index < 0) || (index >= this.pageCount))
+            return;
+        this.pageIndex = index;
+        this.updateControls();
+
+        // The page shown first, then the ones the user is likely to turn to
+        this.render(index);
+        this.render(index + 1);
+        this.render(index - 1);
+
+        this.pagePanel.revalidate();
+        this.pagePanel.repaint();
+    }
+
+    /**
+     * Queue a page for rendering unless it is rendered or queued already.
+     *
+     * @param index - The page to render (0...n).
+     */
+    private void render(final int index) {
+        final Integer page = Integer.valueOf(index);
+        if ((index < 0) || (index >= this.pageCount) || this.images.containsKey(page) || !this.queued.add(page))
+            return;
+
+        final int scheduled = this.generation;
+        final PageFormat format = (PageFormat) this.pageFormat.clone();
+        this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // Skip pages the user has paged away from
+                BufferedImage image = null;
+                if (Math.abs(index - PrintPreview.this.pageIndex) <= 1)
+                    image = PrintPreview.this.renderPage(format, index);
+
+                final BufferedImage rendered = image;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        PrintPreview.this.finish(page, rendered, scheduled);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Render a page on the preview thread.
+     *
+     * @param format - The page format.
+     * @param index - The page to render (0...n).
+     * @return BufferedImage - The page, or null if it could not be rendered.
+     */
+    private BufferedImage renderPage(final PageFormat format, final int index) {
+        final BufferedImage image = new BufferedImage((int) Math.ceil(format.getWidth() * PrintPreview.RENDER_SCALE),
+            (int) Math.ceil(format.getHeight() * PrintPreview.RENDER_SCALE), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = image.createGraphics();
+        try
+            {
+            // White paper
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            // Render the page in points, as the printer would
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.scale(PrintPreview.RENDER_SCALE, PrintPreview.RENDER_SCALE);
+            if (this.printable.print(g2d, format, index) != Printable.PAGE_EXISTS)
+                return null;
+            return image;
+            }
+        catch (final PrinterException e)
+            {
+            System.err.println("ERROR: Page "+(index + 1)+" could not be rendered for the print preview: "+e.getMessage());
+            return null;
+            }
+        finally
+            {
+            g2d.dispose();
+            }
+    }
+
+    /**
+     * Keep a rendered page and display it if it is the page shown.
+     *
+     * @param page - The page rendered.
+     * @param image - The rendered page, null if it was skipped or failed.
+     * @param scheduled - The generation the page was rendered in.
+     */
+    private void finish(final Integer page, final BufferedImage image, final int scheduled) {
+        if (scheduled != this.generation)
+            return;
+        this.queued.remove(page);
+        if (image == null)
+            return;
+
+        this.images.put(page, image);
+        if (page.intValue() == this.pageIndex)
+            this.pagePanel.repaint();
+    }
+
+    /**
+     * Let the user change the page format and lay out the pages again.
+     */
+    private void doPageSetup() {
+        final PageFormat format = this.job.pageDialog(this.pageFormat);
+        if (format == this.pageFormat)
+            return;
+
+        // Pages rendered for the old format are no longer valid
+        this.pageFormat = format;
+        this.generation++;
+        this.images.clear();
+        this.queued.clear();
+        this.layOut();
+    }
+
+    /**
+     * Print the report as previewed and close the preview.
+     */
+    private void doPrint() {
+        this.job.setPrintable(this.printable, this.pageFormat);
+        if (!this.job.printDialog())
+            return;
+
+        // The printable is used by this thread from now on
+        this.executor.shutdownNow();
+        try
+            {
+            this.executor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        catch (final InterruptedException e)
+            {
+            Thread.currentThread().interrupt();
+            }
+
+        // Measure how long printing blocks the event dispatch thread
+        final EdtWatchdog.Section section = EdtWatchdog.enter("PrintPreview.doPrint");
+        try
+            {
+            this.job.print();
+            }
+        catch (final PrinterException e)
+            {
+            // End the section before the error dialog, it waits for the user
+            section.end();
+
+            e.printStackTrace();
+
+            JOptionPane.showMessageDialog( this,
+            "The print job did not complete successfully!",
+            "Print Error",
+            JOptionPane.ERROR_MESSAGE);
+            }
+        finally
+            {
+            section.end();
+            }
+        this.dispose();
+    }
+
+    /**
+     * Update the page label and paging buttons.
+     */
+    private void updateControls() {
+        if (this.pageCount < 0)
+            this.pageLabel.setText("Laying out pages...");
+        else if (this.pageCount == 0)
+            this.pageLabel.setText("Nothing to print");
+        else
+            this.pageLabel.setText("Page "+(this.pageIndex + 1)+" of "+this.pageCount);
+        this.previousButton.setEnabled((this.pageCount > 0) && (this.pageIndex > 0));
+        this.nextButton.setEnabled(this.pageIndex < this.pageCount - 1);
+    }
+
+    /**
+     * Panel painting the page shown at the zoom selected.
+     */
+    private final class PagePanel extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        PagePanel() {
+            this.setBackground(Color.GRAY);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            final PrintPreview preview = PrintPreview.this;
+            return new Dimension((int) (preview.pageFormat.getWidth() * preview.zoom) + (2 * PrintPreview.MARGIN),
+                (int) (preview.pageFormat.getHeight() * preview.zoom) + (2 * PrintPreview.MARGIN));
+        }
+
+        @Override
+        protected void paintComponent(final Graphics g) {
+            super.paintComponent(g);
+            final PrintPreview preview = PrintPreview.this;
+
+            // Center the page in the panel
+            final int width = (int) (preview.pageFormat.getWidth() * preview.zoom);
+            final int height = (int) (preview.pageFormat.getHeight() * preview.zoom);
+            final int x = Math.max(PrintPreview.MARGIN, (this.getWidth() - width) / 2);
+            final int y = PrintPreview.MARGIN;
+
+            // Draw the rendered page scaled to the zoom, or blank paper until it is rendered
+            final BufferedImage image = preview.images.get(Integer.valueOf(preview.pageIndex));
+            if (image != null)
+                {
+                final Graphics2D g2d = (Graphics2D) g.create();
+                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2d.drawImage(image, x, y, width, height, null);
+                g2d.dispose();
+                }
+            else
+                {
+                g.setColor(Color.WHITE);
+                g.fillRect(x, y, width, height);
+                if (preview.pageCount != 0)
+                    {
+                    g.setColor(Color.GRAY);
+                    g.drawString("Rendering page...", x + PrintPreview.MARGIN, y + (2 * PrintPreview.MARGIN));
+                    }
+                }
+            g.setColor(Color.BLACK);
+            g.drawRect(x - 1, y - 1, width + 1, height + 1);
+        }
+    }
+}
@@ -30,32 +30,72 @@
  */ 
 package com.moneydance.modules.features.budgetreport;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Calendar;
 
+/**
+* The parameters of a report.
+* Memorized reports are stored one per file in the data file folder, named
+* after the report with the extension ".mbrpt". The file holds a magic
+* number, the format version and then the fields in a fixed order written
+* with DataOutputStream. Newer versions only ever append fields, so a report
+* file can always be read by the version that wrote it or a later one.
+*
+* <p><b>Note:</b> Reports memorized before the format existed are Java
+* serialized. They are still read, and rewritten in the current format the
+* first time they are read, which is why the class remains Serializable.
+*/
 public class Report implements Serializable {
     /*
 	 * Static and transient fields are not stored
 	 */
     private static final long serialVersionUID = 1L;
 
+    // The extension of memorized report files
+    public static final String FILE_EXTENSION   = ".mbrpt";
+
+    // Identifies a memorized report file ("MBRP")
+    private static final int MAGIC              = 0x4D425250;
+
+    // The version of the file format written
+    public static final int VERSION             = 2;
+
+    // The start of a Java serialization stream, used by the old report files
+    private static final int SERIALIZED_MAGIC   = 0xACED0005;
+
     // true when this is a memorized report
     private transient boolean memorized;
 
+    // true when the report was read from a file in the old serialized format
+    private transient boolean legacy;
+
     /*
 	 * Fields to be stored
 	 */
     private String  reportName;  // This is also the file name for memorized reports
     private String  budgetName;
     private int     period;
-    private int     year;
+    private int     year;        // The year of the start month
     private int     startMonth;
+    private int     endYear;     // The year of the end month, reports may span years
     private int     endMonth;
     private int     subtotalBy;
     private boolean subtotalParents;
     private boolean categoryCurrency;
 
     /**
-     * Create a new report.
+     * Create a new report of months within one year.
      * 
      * @param reportName - The name of the report, usually the file name as well.
      * @param budgetName - The budget name to use for this report.
@@ -68,11 +108,30 @@ public class Report implements Serializable {
      * @param categoryCurrency - True the categories should be displayed in their currency, false for base currency.
      */
     public Report(final String reportName, final String budgetName, final int period, final int year, final int startMonth, final int endMonth, final int subtotalBy, final boolean subtotalParents, final boolean categoryCurrency) {
+        this(reportName, budgetName, period, year, startMonth, year, endMonth, subtotalBy, subtotalParents, categoryCurrency);
+    }
+
+    /**
+     * Create a new report that may span years.
+     * 
+     * @param reportName - The name of the report, usually the file name as well.
+     * @param budgetName - The budget name to use for this report.
+     * @param period - The period selected.
+     * @param year - The year of the beginning month, if manually entered.
+     * @param startMonth - The beginning month, if manually entered.
+     * @param endYear - The year of the ending month, if manually entered.
+     * @param endMonth - The ending month, if manually entered.
+     * @param subtotalBy - The subtotal by selection.
+     * @param subtotalParents - True if parent categories should be totaled and displayed.
+     * @param categoryCurrency - True the categories should be displayed in their currency, false for base currency.
+     */
+    public Report(final String reportName, final String budgetName, final int period, final int year, final int startMonth, final int endYear, final int endMonth, final int subtotalBy, final boolean subtotalParents, final boolean categoryCurrency) {
         this.reportName = reportName;
         this.budgetName = budgetName;
         this.period = period;
         this.year = year;
         this.startMonth = startMonth;
+        this.endYear = endYear;
         this.endMonth = endMonth;
         this.subtotalBy = subtotalBy;
         this.subtotalParents = subtotalParents;
@@ -80,16 +139,290 @@ public class Report implements Serializable {
         this.memorized = false;
     }
 
+    /**
+     * Create a copy of a report.
+     * 
+     * @param report - The report to copy.
+     */
+    public Report(final Report report) {
+        this(report.reportName, report.budgetName, report.period, report.year, report.startMonth, report.endYear, report.endMonth, report.subtotalBy, report.subtotalParents, report.categoryCurrency);
+        this.memorized = report.memorized;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
     @Override
     public String toString() {
         return "Report [budgetName=" + this.budgetName + ", period=" + this.period + ", year=" + this.year + ", startMonth="
-                + this.startMonth + ", endMonth=" + this.endMonth + ", subtotalBy=" + this.subtotalBy + ", subtotalParents="
+                + this.startMonth + ", endYear=" + this.endYear + ", endMonth=" + this.endMonth + ", subtotalBy=" + this.subtotalBy + ", subtotalParents="
                 + this.subtotalParents + ", categoryCurrency " + this.categoryCurrency + "]";
     }
 
+    /**
+     * Read a memorized report from its file in the data file folder. A report
+     * saved in the old Java serialized format is flagged as legacy, the
+     * report catalog saves it in the current format.
+     *
+     * @param rootFolder - The folder of the data file.
+     * @param name - The name of the report.
+     * @return Report - The report read, flagged as memorized.
+     * @throws IOException - The report could not be read, FileNotFoundException
+     * if it does not exist.
+     * @throws ClassNotFoundException - The file does not hold a report.
+     */
+    public static Report read(final File rootFolder, final String name) throws IOException, ClassNotFoundException {
+        // Get the file to load the report from
+        final File file = Report.getFile(rootFolder, name);
+
+        // Report files are tiny, read the whole file at once
+        final byte[] bytes;
+        try
+            {
+            bytes = Files.readAllBytes(file.toPath());
+            }
+        catch (final NoSuchFileException e)
+            {
+            throw new FileNotFoundException(file.getAbsolutePath());
+            }
+
+        final Report report;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes)))
+            {
+            final int magic = (bytes.length >= 4) ? in.readInt() : 0;
+            if (magic == Report.MAGIC)
+                report = Report.readFields(in, name);
+            else if (magic == Report.SERIALIZED_MAGIC)
+                {
+                report = Report.readSerialized(bytes);
+                report.legacy = true;
+                Report.checkMonths(report, name);
+                }
+            else
+                throw new ClassNotFoundException("The file "+file.getName()+" is not a memorized report");
+            }
+
+        // Set the report loaded from file flag (meaning it's memorized)
+        report.setMemorized(true);
+        return report;
+    }
+
+    /**
+     * @return the contents of the report file
+     */
+    byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+            {
+            out.writeInt(Report.MAGIC);
+            this.writeFields(out);
+            }
+        catch (final IOException e)
+            {
+            // Not possible writing to memory
+            throw new IllegalStateException(e);
+            }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the file of a memorized report.
+     *
+     * @param rootFolder - The folder of the data file.
+     * @param name - The name of the report.
+     * @return File - The report file.
+     */
+    public static File getFile(final File rootFolder, final String name) {
+        return new File(rootFolder, name+Report.FILE_EXTENSION);
+    }
+
+    /**
+     * Write the format version and the fields of the report. The report
+     * catalog stores reports the same way.
+     *
+     * @param out - The stream to write to.
+     * @throws IOException - The stream could not be written.
+     */
+    void writeFields(final DataOutputStream out) throws IOException {
+        out.writeInt(Report.VERSION);
+
+        // Version 1 fields
+        out.writeUTF(this.reportName);
+        out.writeBoolean(this.budgetName != null);
+        if (this.budgetName != null)
+            out.writeUTF(this.budgetName);
+        out.writeInt(this.period);
+        out.writeInt(this.year);
+        out.writeInt(this.startMonth);
+        out.writeInt(this.endMonth);
+        out.writeInt(this.subtotalBy);
+        out.writeBoolean(this.subtotalParents);
+        out.writeBoolean(this.categoryCurrency);
+
+        // Version 2 fields
+        out.writeInt(this.endYear);
+    }
+
+    /**
+     * Read the format version and the fields of a report, after the magic
+     * number of a report file.
+     *
+     * @param in - The stream positioned at the version.
+     * @param name - The name of the report, for error messages.
+     * @return Report - The report read.
+     * @throws IOException - The file is truncated or from a newer version.
+     */
+    static Report readFields(final DataInputStream in, final String name) throws IOException {
+        final int version = in.readInt();
+        if ((version < 1) || (version > Report.VERSION))
+            throw new IOException("The report ("+name+") was saved by a newer version of the extension (format "+version+")");
+
+        // Version 1 fields
+        final String reportName = in.readUTF();
+        final String budgetName = in.readBoolean() ? in.readUTF() : null;
+        final int period = in.readInt();
+        final int year = in.readInt();
+        final int startMonth = in.readInt();
+        final int endMonth = in.readInt();
+        final int subtotalBy = in.readInt();
+        final boolean subtotalParents = in.readBoolean();
+        final boolean categoryCurrency = in.readBoolean();
+
+        // Version 2 fields, reports of older versions end in the year they start
+        final int endYear = (version >= 2) ? in.readInt() : year;
+        final Report report = new Report(reportName, budgetName, period, year, startMonth, endYear, endMonth, subtotalBy, subtotalParents, categoryCurrency);
+        Report.checkMonths(report, name);
+        return report;
+    }
+
+    /**
+     * Check that the months of a report read from a file can be reported. A
+     * damaged or hand edited file could otherwise hold more months than the
+     * report values have room for.
+     *
+     * @param report - The report read.
+     * @param name - The name of the report, for the error message.
+     * @throws IOException - The months are not valid.
+     */
+    private static void checkMonths(final Report report, final String name) throws IOException {
+        if ((report.startMonth < 1) || (report.startMonth > 12) || (report.endMonth < 1) || (report.endMonth > 12))
+            throw new IOException("The report ("+name+") has an invalid month: "+report.startMonth+" - "+report.endMonth);
+
+        final int months = (((report.endYear * 12) + report.endMonth) - ((report.year * 12) + report.startMonth)) + 1;
+        if ((months < 1) || (months > Constants.MAX_MONTHS))
+            throw new IOException("The report ("+name+") covers "+months+" months, it must cover 1 to "+Constants.MAX_MONTHS+" months");
+    }
+
+    /**
+     * Read a report saved with Java serialization.
+     *
+     * @param bytes - The contents of the report file.
+     * @return Report - The report read.
+     * @throws IOException - The report could not be read.
+     * @throws ClassNotFoundException - The file does not hold a report.
+     */
+    private static Report readSerialized(final byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+            {
+            // Only allow our Report objects
+            final ObjectInputFilter filter = ObjectInputFilter.Config.createFilter("com.moneydance.modules.features.budgetreport.Report;!*");
+            ois.setObjectInputFilter(filter);
+
+            // Read in the report, these reports end in the year they start
+            final Report report = (Report) ois.readObject();
+            report.endYear = report.year;
+            return report;
+            }
+    }
+
+    /**
+     * Depending on the period, set the year, startMonth, endYear and endMonth
+     * fields based on the time given. Custom reports keep their own dates.
+     *
+     * @param now - The current time.
+     */
+    public void resolvePeriod(final Calendar now) {
+        final int thisYear = now.get(Calendar.YEAR);
+        final int thisMonth = now.get(Calendar.MONTH) + 1;  // Calendar months are 0...11 and we want 1...12
+
+        switch (this.period) 
+            {
+            case Constants.PERIOD_AUTOMATIC:
+                this.year = thisYear;
+                this.startMonth = 1;
+                this.endYear = thisYear;
+                this.endMonth = thisMonth;
+                break;
+
+            case Constants.PERIOD_THIS_YEAR:
+                this.year = thisYear;
+                this.startMonth = 1;
+                this.endYear = thisYear;
+                this.endMonth = 12;
+                break;
+            
+            case Constants.PERIOD_LAST_YEAR:
+                this.year = thisYear - 1;
+                this.startMonth = 1;
+                this.endYear = thisYear - 1;
+                this.endMonth = 12;
+                break;
+
+            case Constants.PERIOD_THIS_MONTH:
+                this.year = thisYear;
+                this.startMonth = thisMonth;
+                this.endYear = thisYear;
+                this.endMonth = thisMonth;
+                break;    
+
+            case Constants.PERIOD_LAST_MONTH:
+                if (thisMonth == 1)
+                    {
+                    this.year = thisYear - 1;
+                    this.startMonth = 12;
+                    this.endYear = thisYear - 1;
+                    this.endMonth = 12;
+                    }
+                else
+                    {
+                    this.year = thisYear;
+                    this.startMonth = thisMonth - 1;
+                    this.endYear = thisYear;
+                    this.endMonth = thisMonth - 1;
+                    }
+                break;    
+
+            // Rolling periods end with the current month
+            case Constants.PERIOD_LAST_12_MONTHS:
+                this.setRollingPeriod(thisYear, thisMonth, 12);
+                break;
+
+            case Constants.PERIOD_LAST_24_MONTHS:
+                this.setRollingPeriod(thisYear, thisMonth, 24);
+                break;
+                
+            // The year, startMonth, endYear and endMonth are already in the report data  
+            case Constants.PERIOD_CUSTOM:
+            default:
+                break;
+            }
+    }
+
+    /**
+     * Set the dates of a period of months ending with the month given.
+     *
+     * @param endYear - The year of the last month (YYYY).
+     * @param endMonth - The last month (1...12).
+     * @param months - The number of months in the period.
+     */
+    private void setRollingPeriod(final int endYear, final int endMonth, final int months) {
+        final int first = ((endYear * 12) + endMonth) - months;
+        this.year = first / 12;
+        this.startMonth = (first % 12) + 1;
+        this.endYear = endYear;
+        this.endMonth = endMonth;
+    }
+
     /**
      * @return the serialversionuid 
      */
@@ -115,6 +448,14 @@ public class Report implements Serializable {
         this.memorized = memorized;
     }
 
+    /**
+     * @return true if the report was read from a file in the old serialized
+     * format and has not been saved in the current format yet
+     */
+    public boolean isLegacy() {
+        return this.legacy;
+    }
+
     /**
      * @return the reportName
      */
@@ -185,6 +526,20 @@ public class Report implements Serializable {
         this.startMonth = startMonth;
     }
     
+    /**
+     * @return the year of the endMonth
+     */
+    public int getEndYear() {
+        return this.endYear;
+    }
+    
+    /**
+     * @param endYear the year of the endMonth to set
+     */
+    public void setEndYear(final int endYear) {
+        this.endYear = endYear;
+    }
+    
     /**
      * @return the endMonth
      */
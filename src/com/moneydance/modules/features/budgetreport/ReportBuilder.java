@@ -0,0 +1,210 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+* Class to build the budget categories list for a report.
+* The categories, budget values and actual totals are read from a report data
+* source and rolled up into the special Income-Expenses, Income and Expenses
+* rows as well as into any parent categories.
+*/
+public class ReportBuilder {
+    // The data source to build reports from
+    private final ReportDataSource dataSource;
+
+    /**
+     * Create a report builder for a data source.
+     *
+     * @param dataSource - The data source to build reports from.
+     */
+    public ReportBuilder(final ReportDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the data source
+     */
+    public ReportDataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    /**
+     * Build the budget categories list for a report.
+     *
+     * @param report - The report to build.
+     * @param model - The table model to notify of budget value changes, may be null.
+     * @return BudgetCategoriesList - The budget categories list with budget and actual values.
+     * @throws CancellationException if the thread building the report is interrupted.
+     */
+    public BudgetCategoriesList build(final Report report, final TableModel model) {
+        return this.build(report, model, true);
+    }
+
+    /**
+     * Build the budget categories list for a report.
+     *
+     * @param report - The report to build.
+     * @param model - The table model to notify of budget value changes, may be null.
+     * @param record - true to add the build to the statistics history, false
+     * for builds the user did not ask for, i.e. prefetches.
+     * @return BudgetCategoriesList - The budget categories list with budget and actual values.
+     * @throws CancellationException if the thread building the report is interrupted.
+     */
+    public BudgetCategoriesList build(final Report report, final TableModel model, final boolean record) {
+        // Start the flight recorder event for the whole build
+        final ReportEvents.Build buildEvent = new ReportEvents.Build();
+        buildEvent.begin();
+
+        // Get the months of the report, which may span years
+        final MonthRange range = MonthRange.of(report);
+
+        // Create a new Budget Categories list
+        final BudgetCategoriesList budgetCategoriesList = new BudgetCategoriesList(this.dataSource);
+
+        // Get the statistics for this build
+        final ReportStatistics statistics = budgetCategoriesList.getStatistics();
+        statistics.setReportName(report.getReportName());
+
+        // Get the categories to report
+        ReportEvents.BuildPhase phaseEvent = new ReportEvents.BuildPhase(ReportStatistics.phases[ReportStatistics.PHASE_TRAVERSAL]);
+        phaseEvent.begin();
+        long start = statistics.startPhase();
+        final List<ReportCategory> categories = this.dataSource.getCategories();
+        statistics.endPhase(ReportStatistics.PHASE_TRAVERSAL, start);
+        phaseEvent.commitFor(report, budgetCategoriesList);
+
+        // Add the categories and their budget values, the traversal and budget
+        // phases are interleaved category by category
+        phaseEvent = new ReportEvents.BuildPhase(ReportStatistics.phases[ReportStatistics.PHASE_TRAVERSAL] + " and " + ReportStatistics.phases[ReportStatistics.PHASE_BUDGETS]);
+        phaseEvent.begin();
+
+        // Create a special category for the Income - Expenses total row
+        budgetCategoriesList.add(Constants.UUID_OVERALL, "Income-Expenses", Account.AccountType.ROOT, 0);
+
+        // Add a special category to the table for "Income"
+        budgetCategoriesList.add(Constants.UUID_INCOME, "Income", Account.AccountType.INCOME, 1);
+
+        // Add all the Income categories
+        for (final ReportCategory category : categories)
+            this.addIf(budgetCategoriesList, category, Account.AccountType.INCOME, report, model, range);
+
+        // Add a special category to the table for "Expenses"
+        budgetCategoriesList.add(Constants.UUID_EXPENSE, "Expenses", Account.AccountType.EXPENSE, 1);
+
+        // Add all the Expense categories
+        for (final ReportCategory category : categories)
+            this.addIf(budgetCategoriesList, category, Account.AccountType.EXPENSE, report, model, range);
+
+        phaseEvent.commitFor(report, budgetCategoriesList);
+
+        // Retrieve the actual totals for all categories in one pass over the transactions
+        phaseEvent = new ReportEvents.BuildPhase(ReportStatistics.phases[ReportStatistics.PHASE_TRANSACTIONS]);
+        phaseEvent.begin();
+        start = statistics.startPhase();
+        new TransactionTotals(budgetCategoriesList, this.dataSource, range);
+        statistics.endPhase(ReportStatistics.PHASE_TRANSACTIONS, start);
+        phaseEvent.commitFor(report, budgetCategoriesList);
+
+        // Update the parent actual totals. Categories are in account tree order so
+        // the totals of each category only include its own transactions when it
+        // is rolled up to its parents.
+        phaseEvent = new ReportEvents.BuildPhase(ReportStatistics.phases[ReportStatistics.PHASE_ROLLUPS]);
+        phaseEvent.begin();
+        start = statistics.startPhase();
+        for (final ReportCategory category : categories)
+            {
+            final BudgetCategoryItem item = budgetCategoriesList.getCategoryItem(category.getUUID());
+            if (item != null)
+                item.updateParentActualTotals(budgetCategoriesList, item);
+            }
+        statistics.endPhase(ReportStatistics.PHASE_ROLLUPS, start);
+        phaseEvent.commitFor(report, budgetCategoriesList);
+        buildEvent.commitFor(report, budgetCategoriesList);
+
+        // Add this build to the history
+        if (record)
+            ReportStatistics.record(statistics);
+
+        return budgetCategoriesList;
+    }
+
+    /**
+     * This method adds a category to the budget category list if it is the
+     * proper type and loads its budget values.
+     *
+     * @param budgetCategoriesList - The list to add the category to.
+     * @param category - The category to add.
+     * @param type - The category type we're looking for.
+     * @param report - The report being built.
+     * @param model - The table model to notify of budget value changes, may be null.
+     * @param range - The months to retrieve.
+     */
+    private void addIf(final BudgetCategoriesList budgetCategoriesList, final ReportCategory category, final Account.AccountType type, final Report report, final TableModel model, final MonthRange range) {
+        // Is the category the type that we're looking for?
+        if (category.getType() != type)
+            return;
+
+        // Stop a background build that has been cancelled
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException();
+
+        // Count the category visited
+        final ReportStatistics statistics = budgetCategoriesList.getStatistics();
+        statistics.countCategory();
+
+        // Add this category
+        long start = statistics.startPhase();
+        final BudgetCategoryItem item = budgetCategoriesList.add(category);
+        statistics.endPhase(ReportStatistics.PHASE_TRAVERSAL, start);
+        if (item == null)
+            return;
+
+        // If this is not a roll-up category then we need to get the current budget values for this category
+        if (!item.hasChildren())
+            {
+            start = statistics.startPhase();
+            for (int month = 1; month <= range.getMonthCount(); month++)
+                {
+                // Find existing budget values for each month
+                final long amount = this.dataSource.getBudgetAmount(report.getBudgetName(), category, range.getYear(month), range.getMonth(month));
+                statistics.countBudgetLookup();
+                if (amount != 0)
+                    item.setBudgetValueForMonth(model, budgetCategoriesList, month, amount, type);
+                }
+            statistics.endPhase(ReportStatistics.PHASE_BUDGETS, start);
+            }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+* Least recently used cache of computed reports.
+* Switching back to a report viewed a moment ago reuses the budget categories
+* list computed for it instead of building it again. The cache is bounded by
+* the number of reports and by their estimated memory, and all entries are
+* dropped as soon as the change stamp of the data source moves on. Budget
+* edits fire no events and do not move the change stamp, the report window
+* clears the cache when the user comes back from another Moneydance window.
+*/
+public class ReportCache {
+    // The most reports kept in the cache
+    public static final int MAX_ENTRIES         = 8;
+
+    // The most memory the cached reports may use (estimated bytes)
+    public static final long MAX_BYTES          = 32L * 1024 * 1024;
+
+    // Hit and miss counters of the cache
+    private static final CacheStatistics cacheStatistics = CacheStatistics.get("Report grids");
+
+    // The cached reports in least recently used order
+    private final LinkedHashMap<Key, BudgetCategoriesList> entries = new LinkedHashMap<Key, BudgetCategoriesList>(16, 0.75f, true);
+
+    // The change stamp the cached reports were computed at
+    private long changeStamp = 0;
+
+    // The estimated memory used by the cached reports
+    private long bytes = 0;
+
+    /**
+     * Key of a cached report. The subtotal and category currency options only
+     * change how the values are displayed, not the values computed, so they
+     * are not part of the key and reports differing only in them share an
+     * entry.
+     */
+    public static final class Key {
+        private final String budgetName;
+        private final int year;
+        private final int startMonth;
+        private final int endYear;
+        private final int endMonth;
+        private final long changeStamp;
+
+        /**
+         * Create the key of a report.
+         *
+         * @param report - The report.
+         * @param changeStamp - The change stamp of the data source.
+         */
+        public Key(final Report report, final long changeStamp) {
+            this.budgetName = report.getBudgetName();
+            this.year = report.getYear();
+            this.startMonth = report.getStartMonth();
+            this.endYear = report.getEndYear();
+            this.endMonth = report.getEndMonth();
+            this.changeStamp = changeStamp;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return (this.year == other.year) && (this.startMonth == other.startMonth) && (this.endYear == other.endYear) && (this.endMonth == other.endMonth)
+                && (this.changeStamp == other.changeStamp) && this.budgetName.equals(other.budgetName);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = this.budgetName.hashCode();
+            hash = (31 * hash) + this.year;
+            hash = (31 * hash) + this.startMonth;
+            hash = (31 * hash) + this.endYear;
+            hash = (31 * hash) + this.endMonth;
+            return (31 * hash) + Long.hashCode(this.changeStamp);
+        }
+    }
+
+    /**
+     * Get a cached report.
+     *
+     * @param key - The key of the report.
+     * @return BudgetCategoriesList - The cached report or null if it is not cached.
+     */
+    public BudgetCategoriesList get(final Key key) {
+        // Drop all of the reports if the data has changed since they were computed
+        if (key.changeStamp != this.changeStamp)
+            {
+            this.clear();
+            this.changeStamp = key.changeStamp;
+            }
+
+        final BudgetCategoriesList budgetCategoriesList = this.entries.get(key);
+        if (budgetCategoriesList != null)
+            ReportCache.cacheStatistics.hit();
+        else
+            ReportCache.cacheStatistics.miss();
+        return budgetCategoriesList;
+    }
+
+    /**
+     * Check if a report is cached without counting a hit or miss.
+     *
+     * @param key - The key of the report.
+     * @return boolean - true if the report is cached.
+     */
+    public boolean contains(final Key key) {
+        return (key.changeStamp == this.changeStamp) && this.entries.containsKey(key);
+    }
+
+    /**
+     * Add a report to the cache, evicting the least recently used reports
+     * when the cache is over its limits.
+     *
+     * @param key - The key of the report.
+     * @param budgetCategoriesList - The computed report.
+     */
+    public void put(final Key key, final BudgetCategoriesList budgetCategoriesList) {
+        // Never cache a report computed from older data
+        if (key.changeStamp != this.changeStamp)
+            return;
+
+        final BudgetCategoriesList old = this.entries.put(key, budgetCategoriesList);
+        if (old != null)
+            this.bytes -= old.estimateMemory();
+        this.bytes += budgetCategoriesList.estimateMemory();
+
+        // Evict the least recently used reports, always keeping the newest one
+        final Iterator<Map.Entry<Key, BudgetCategoriesList>> iter = this.entries.entrySet().iterator();
+        while (((this.entries.size() > ReportCache.MAX_ENTRIES) || (this.bytes > ReportCache.MAX_BYTES)) && (this.entries.size() > 1))
+            {
+            final Map.Entry<Key, BudgetCategoriesList> eldest = iter.next();
+            this.bytes -= eldest.getValue().estimateMemory();
+            iter.remove();
+            }
+    }
+
+    /**
+     * Drop all of the cached reports.
+     */
+    public void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * @return the number of reports cached
+     */
+    public int size() {
+        return this.entries.size();
+    }
+}
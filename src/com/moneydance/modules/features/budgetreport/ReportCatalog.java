@@ -0,0 +1,631 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+
+/**
+* Catalog of the memorized reports of a data file.
+* The definitions of all the memorized reports are kept in memory and in one
+* catalog file next to the report files, so the report selector and report
+* loads don't list the data file folder or open the report files. The catalog
+* is loaded once per session and kept up to date as reports are memorized,
+* renamed and forgotten. The report files themselves are still written so
+* that older versions of the extension can read them. All the files are
+* written in the background by a ReportWriter, the catalog is updated right
+* away.
+*
+* <p>A WatchService watches the folder for report files changed by anything
+* other than the extension, i.e. copied in or deleted by hand, and reloads
+* only those. When the catalog is loaded the folder is listed once and the
+* size and modification time of each report file are compared with those
+* saved in the catalog, without opening the files. Only the report files
+* added, replaced or edited while Moneydance was not running are read, and
+* the reports deleted are dropped. The folder modification time can't stand
+* in for the comparison, the atomic renames of the writer and Moneydance's
+* own files change it all the time. Only when the catalog is missing or
+* can't be read is every report file read.
+*
+* <p><b>Note:</b> All methods must be called on the event dispatch thread.
+*/
+public class ReportCatalog {
+    // The name of the catalog file in the data file folder
+    public static final String FILE_NAME        = "MonthlyBudgetReport.catalog";
+
+    // Identifies the catalog file ("MBRC")
+    private static final int MAGIC              = 0x4D425243;
+
+    // The version of the catalog file format
+    public static final int VERSION             = 1;
+
+    // The data file folder holding the reports
+    private final File rootFolder;
+
+    // The catalog file
+    private final File file;
+
+    // The memorized reports by name, sorted by name
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+
+    // Listeners told when the reports change
+    private final EventListenerList listeners = new EventListenerList();
+
+    // Watches the folder for report files changed outside the extension, null if not available
+    private WatchService watchService = null;
+
+    // Writes the report files and the catalog file in the background
+    private final ReportWriter writer = new ReportWriter(new ReportWriter.Callback() {
+        @Override
+        public void written(final Map<File, Integer> files, final IOException error) {
+            ReportCatalog.this.written(files, error);
+        }
+    });
+
+    // The number of writes pending for each report file, whose changes are the extension's own
+    private final Map<File, Integer> writing = new HashMap<File, Integer>();
+
+    // true once the catalog is disposed and its writer closed
+    private boolean disposed = false;
+
+    /**
+     * A memorized report and the state of its file when it was read or
+     * written, to tell changes made by the extension from others.
+     */
+    private static final class Entry {
+        private final Report report;
+        private final long lastModified;
+        private final long length;
+
+        private Entry(final Report report, final long lastModified, final long length) {
+            this.report = report;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        /**
+         * @param reportFile - The file of the report.
+         * @return true if the file is still the one the entry was made from
+         */
+        private boolean matches(final File reportFile) {
+            return (reportFile.lastModified() == this.lastModified) && (reportFile.length() == this.length);
+        }
+    }
+
+    /**
+     * Load the catalog of a data file, bringing it up to date with the report
+     * files, and start watching the folder.
+     *
+     * @param rootFolder - The folder of the data file.
+     */
+    public ReportCatalog(final File rootFolder) {
+        this.rootFolder = rootFolder;
+        this.file = new File(rootFolder, ReportCatalog.FILE_NAME);
+
+        // A missing or unreadable catalog is rebuilt from the report files,
+        // otherwise only the report files that differ from it are read
+        final boolean loaded = this.file.exists() && this.load();
+        final boolean changed = this.scan();
+        if (changed || !loaded)
+            this.save();
+
+        this.startWatching();
+    }
+
+    /**
+     * @return the data file folder of the catalog
+     */
+    public File getRootFolder() {
+        return this.rootFolder;
+    }
+
+    /**
+     * @return the names of the memorized reports, sorted
+     */
+    public List<String> getReportNames() {
+        return new ArrayList<String>(this.entries.keySet());
+    }
+
+    /**
+     * Get a memorized report.
+     *
+     * @param name - The name of the report.
+     * @return Report - A copy of the report, flagged as memorized.
+     * @throws FileNotFoundException - There is no report of that name.
+     */
+    public Report getReport(final String name) throws FileNotFoundException {
+        final Entry entry = this.entries.get(name);
+        if (entry == null)
+            throw new FileNotFoundException(Report.getFile(this.rootFolder, name).getAbsolutePath());
+
+        final Report report = new Report(entry.report);
+        report.setMemorized(true);
+        return report;
+    }
+
+    /**
+     * Memorize a report. Its file and the catalog are saved in the
+     * background, an error saving them is shown to the user.
+     *
+     * @param report - The report, named.
+     */
+    public void put(final Report report) {
+        this.update(report, null);
+    }
+
+    /**
+     * Memorize a renamed report in place of the original. The new report
+     * file is saved before the original is deleted.
+     *
+     * @param oldName - The name of the original report.
+     * @param report - The report, named with its new name.
+     */
+    public void rename(final String oldName, final Report report) {
+        this.update(report, oldName);
+    }
+
+    /**
+     * Forget a memorized report, deleting its file in the background.
+     *
+     * @param name - The name of the report.
+     */
+    public void remove(final String name) {
+        final Map<File, byte[]> files = new LinkedHashMap<File, byte[]>();
+        files.put(Report.getFile(this.rootFolder, name), null);
+        final boolean removed = this.entries.remove(name) != null;
+        this.submit(files);
+        if (removed)
+            this.fireChanged();
+    }
+
+    /**
+     * @param listener - Listener told when the memorized reports change.
+     */
+    public void addChangeListener(final ChangeListener listener) {
+        this.listeners.add(ChangeListener.class, listener);
+    }
+
+    /**
+     * @param listener - The listener to remove.
+     */
+    public void removeChangeListener(final ChangeListener listener) {
+        this.listeners.remove(ChangeListener.class, listener);
+    }
+
+    /**
+     * Stop watching the folder and finish saving the reports.
+     */
+    public void dispose() {
+        if (this.watchService != null)
+            {
+            try
+                {
+                this.watchService.close();
+                }
+            catch (final IOException e)
+                {
+                System.err.println("ERROR: Could not stop watching the memorized reports: "+e.getMessage());
+                }
+            this.watchService = null;
+            }
+        this.disposed = true;
+        this.writer.close();
+    }
+
+    /**
+     * Memorize a report, replacing another one if it was renamed, and queue
+     * the files to be written together.
+     *
+     * @param report - The report, named.
+     * @param oldName - The name of the report replaced, null if none.
+     */
+    private void update(final Report report, final String oldName) {
+        final String name = report.getReportName();
+        final Report copy = new Report(report);
+        final Map<File, byte[]> files = new LinkedHashMap<File, byte[]>();
+        files.put(Report.getFile(this.rootFolder, name), copy.toBytes());
+
+        // The state of the file is known once it has been written
+        this.entries.put(name, new Entry(copy, 0, -1));
+        if ((oldName != null) && !oldName.equals(name))
+            {
+            files.put(Report.getFile(this.rootFolder, oldName), null);
+            this.entries.remove(oldName);
+            }
+        this.submit(files);
+        this.fireChanged();
+    }
+
+    /**
+     * Queue report files to be written along with the catalog.
+     *
+     * @param files - The report files to write, or to delete when the contents are null.
+     */
+    private void submit(final Map<File, byte[]> files) {
+        for (final File reportFile : files.keySet())
+            this.writing.merge(reportFile, 1, Integer::sum);
+        this.writer.submit(files, this.file, this.toBytes());
+    }
+
+    /**
+     * Called when report files have been written, to record the state of
+     * the files or to reload them if they could not be written.
+     *
+     * @param files - The report files written or deleted, with the number of
+     * submissions of each file the write covered.
+     * @param error - The error that stopped the write, null if it succeeded.
+     */
+    private void written(final Map<File, Integer> files, final IOException error) {
+        // The writer is closed, the next session reads the files it wrote again
+        if (this.disposed)
+            return;
+
+        boolean changed = false;
+        for (final Map.Entry<File, Integer> written : files.entrySet())
+            {
+            // Wait for the last write of the file, a write may cover several submissions
+            final File reportFile = written.getKey();
+            if (this.writing.merge(reportFile, -written.getValue(), Integer::sum) > 0)
+                continue;
+            this.writing.remove(reportFile);
+
+            final String filename = reportFile.getName();
+            final String name = filename.substring(0, filename.length() - Report.FILE_EXTENSION.length());
+            if (error != null)
+                changed |= this.refresh(name);
+            else
+                {
+                final Entry entry = this.entries.get(name);
+                if ((entry != null) && !entry.matches(reportFile))
+                    {
+                    this.entries.put(name, ReportCatalog.newEntry(entry.report, reportFile));
+                    changed = true;
+                    }
+                }
+            }
+
+        // Save the state of the files in the catalog so they are not read next session
+        if (changed)
+            this.save();
+
+        if (error != null)
+            {
+            this.fireChanged();
+            JOptionPane.showMessageDialog(null,
+            "Error saving the memorized reports: "+error.toString(),
+            "Error",
+            JOptionPane.ERROR_MESSAGE);
+            }
+    }
+
+    /**
+     * Load the catalog file.
+     *
+     * @return boolean - true if the catalog was loaded, false if it is not a
+     * catalog or from a newer version.
+     */
+    private boolean load() {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(this.file.toPath()))))
+            {
+            if ((in.readInt() != ReportCatalog.MAGIC) || (in.readInt() != ReportCatalog.VERSION))
+                return false;
+
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++)
+                {
+                final long lastModified = in.readLong();
+                final long length = in.readLong();
+                final Report report = Report.readFields(in, ReportCatalog.FILE_NAME);
+                this.entries.put(report.getReportName(), new Entry(report, lastModified, length));
+                }
+            return true;
+            }
+        catch (final IOException e)
+            {
+            System.err.println("ERROR: The memorized report catalog could not be read, it will be rebuilt: "+e.getMessage());
+            this.entries.clear();
+            return false;
+            }
+    }
+
+    /**
+     * Save the catalog file in the background.
+     */
+    private void save() {
+        this.writer.submit(Collections.<File, byte[]>emptyMap(), this.file, this.toBytes());
+    }
+
+    /**
+     * @return the contents of the catalog file
+     */
+    private byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (this.entries.size() * 64));
+        try (DataOutputStream out = new DataOutputStream(bytes))
+            {
+            out.writeInt(ReportCatalog.MAGIC);
+            out.writeInt(ReportCatalog.VERSION);
+            out.writeInt(this.entries.size());
+            for (final Entry entry : this.entries.values())
+                {
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.length);
+                entry.report.writeFields(out);
+                }
+            }
+        catch (final IOException e)
+            {
+            // Not possible writing to memory
+            throw new IllegalStateException(e);
+            }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check the catalog against the report files in the folder, reading
+     * only those added or changed.
+     *
+     * @return boolean - true if the catalog changed.
+     */
+    private boolean scan() {
+        final Set<String> names = new TreeSet<String>(this.entries.keySet());
+        final Set<String> listed = this.listReports();
+        if (listed != null)
+            names.addAll(listed);
+
+        boolean changed = false;
+        for (final String name : names)
+            changed |= this.refresh(name);
+        return changed;
+    }
+
+    /**
+     * @return the names of the report files in the folder, null if the folder
+     * could not be listed
+     */
+    private Set<String> listReports() {
+        final String[] filenames = this.rootFolder.list((f, name) -> name.endsWith(Report.FILE_EXTENSION));
+        if (filenames == null)
+            return null;
+
+        final Set<String> names = new TreeSet<String>();
+        for (final String filename : filenames)
+            names.add(filename.substring(0, filename.length() - Report.FILE_EXTENSION.length()));
+        return names;
+    }
+
+    /**
+     * Bring the entry of a report up to date with its file.
+     *
+     * @param name - The name of the report.
+     * @return boolean - true if the entry changed.
+     */
+    private boolean refresh(final String name) {
+        final File reportFile = Report.getFile(this.rootFolder, name);
+        final Entry entry = this.entries.get(name);
+
+        // The extension is still writing the file
+        if (this.writing.containsKey(reportFile))
+            return false;
+
+        // Deleted
+        if (!reportFile.exists())
+            return this.entries.remove(name) != null;
+
+        // Unchanged, including the changes made by the extension
+        if ((entry != null) && entry.matches(reportFile))
+            return false;
+
+        this.entries.remove(name);
+        this.read(name);
+        return true;
+    }
+
+    /**
+     * Read a report file into the catalog.
+     *
+     * @param name - The name of the report.
+     */
+    private void read(final String name) {
+        try
+            {
+            final File reportFile = Report.getFile(this.rootFolder, name);
+            final Report report = Report.read(this.rootFolder, name);
+            report.setReportName(name);
+            if (!report.isLegacy())
+                {
+                this.entries.put(name, ReportCatalog.newEntry(report, reportFile));
+                return;
+                }
+
+            // Save an old report file in the current format, over the file it was read from
+            this.entries.put(name, new Entry(report, 0, -1));
+            this.submit(Collections.singletonMap(reportFile, report.toBytes()));
+            }
+        catch (final IOException | ClassNotFoundException e)
+            {
+            System.err.println("ERROR: The memorized report ("+name+") could not be read: "+e.getMessage());
+            }
+    }
+
+    /**
+     * Start the thread watching the folder for report files changed outside
+     * the extension.
+     */
+    private void startWatching() {
+        final WatchService service;
+        try
+            {
+            service = FileSystems.getDefault().newWatchService();
+            this.rootFolder.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        catch (final IOException | UnsupportedOperationException e)
+            {
+            // The catalog still works, outside changes are seen next session
+            System.err.println("ERROR: Could not watch the memorized reports for changes: "+e.getMessage());
+            return;
+            }
+        this.watchService = service;
+
+        final Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ReportCatalog.this.watch(service);
+            }
+        }, "Budget Report catalog watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Wait for changes to report files and refresh them on the event
+     * dispatch thread, until the watch service is closed.
+     *
+     * @param service - The watch service.
+     */
+    private void watch(final WatchService service) {
+        try
+            {
+            while (true)
+                {
+                final WatchKey key = service.take();
+
+                // Collect the report files changed, all of them if events were lost
+                final Set<String> names = new HashSet<String>();
+                boolean overflow = false;
+                for (final WatchEvent<?> event : key.pollEvents())
+                    {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        overflow = true;
+                    else
+                        {
+                        final String filename = ((Path) event.context()).toString();
+                        if (filename.endsWith(Report.FILE_EXTENSION))
+                            names.add(filename.substring(0, filename.length() - Report.FILE_EXTENSION.length()));
+                        }
+                    }
+                key.reset();
+
+                if (overflow || !names.isEmpty())
+                    {
+                    final boolean all = overflow;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            ReportCatalog.this.changed(service, names, all);
+                        }
+                    });
+                    }
+                }
+            }
+        catch (final InterruptedException | ClosedWatchServiceException e)
+            {
+            // The catalog was disposed
+            }
+    }
+
+    /**
+     * Refresh report files changed in the folder.
+     *
+     * @param service - The watch service reporting the change.
+     * @param names - The names of the reports changed.
+     * @param all - true to check all the report files because events were lost.
+     */
+    private void changed(final WatchService service, final Set<String> names, final boolean all) {
+        // Ignore changes reported after the catalog was disposed
+        if (service != this.watchService)
+            return;
+
+        boolean changed = false;
+        if (all)
+            changed = this.scan();
+        else
+            {
+            for (final String name : names)
+                changed |= this.refresh(name);
+            }
+
+        if (changed)
+            {
+            this.save();
+            this.fireChanged();
+            }
+    }
+
+    /**
+     * Tell the listeners that the memorized reports changed.
+     */
+    private void fireChanged() {
+        final ChangeEvent event = new ChangeEvent(this);
+        for (final ChangeListener listener : this.listeners.getListeners(ChangeListener.class))
+            listener.stateChanged(event);
+    }
+
+    /**
+     * Create an entry for a report and its file.
+     *
+     * @param report - The report.
+     * @param reportFile - The file of the report.
+     * @return Entry - The entry.
+     */
+    private static Entry newEntry(final Report report, final File reportFile) {
+        return new Entry(report, reportFile.lastModified(), reportFile.length());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+* Class describing a category supplied by a report data source.
+* This is a read only description of a Moneydance category (account) that does
+* not depend on the Moneydance data model so that stand-in data sources can
+* supply categories as well.
+*/
+public final class ReportCategory {
+    // The unique identifier of this category
+    private final String uuid;
+
+    // The full name of this category i.e. "Auto:Fuel"
+    private final String fullName;
+
+    // The short name of this category i.e. "Fuel"
+    private final String shortName;
+
+    // The type of category, Account.AccountType.INCOME or Account.AccountType.EXPENSE
+    private final Account.AccountType type;
+
+    // The ID string of the currency for this category
+    private final String currency;
+
+    // true when this category has active children
+    private final boolean hasChildren;
+
+    /**
+     * Create a new report category.
+     *
+     * @param uuid - The unique identifier of this category.
+     * @param fullName - The full name of this category i.e. "Auto:Fuel".
+     * @param shortName - The short name of this category i.e. "Fuel".
+     * @param type - Account.AccountType.INCOME or Account.AccountType.EXPENSE.
+     * @param currency - The ID string of the currency for this category.
+     * @param hasChildren - true if this category has active children, false otherwise.
+     */
+    public ReportCategory(final String uuid, final String fullName, final String shortName, final Account.AccountType type, final String currency, final boolean hasChildren) {
+        this.uuid = uuid;
+        this.fullName = fullName;
+        this.shortName = shortName;
+        this.type = type;
+        this.currency = currency;
+        this.hasChildren = hasChildren;
+    }
+
+    /**
+     * @return the uuid
+     */
+    public String getUUID() {
+        return this.uuid;
+    }
+
+    /**
+     * @return the fullName
+     */
+    public String getFullName() {
+        return this.fullName;
+    }
+
+    /**
+     * @return the shortName
+     */
+    public String getShortName() {
+        return this.shortName;
+    }
+
+    /**
+     * @return the category type
+     */
+    public Account.AccountType getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the ID string of the category currency
+     */
+    public String getCurrency() {
+        return this.currency;
+    }
+
+    /**
+     * @return true if this category has active children
+     */
+    public boolean hasChildren() {
+        return this.hasChildren;
+    }
+}
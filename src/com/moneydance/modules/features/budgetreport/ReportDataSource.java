@@ -0,0 +1,186 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.List;
+
+/**
+* Interface for the data a report is built from.
+* The report engine only reads categories, budget amounts and transactions
+* through this interface so that it can be fed either by the Moneydance data
+* file or by a stand-in data source such as a synthetic book used for scale
+* testing.
+*
+* <p><b>Note:</b> Currencies are identified by their ID strings (i.e. "USD").
+*/
+public interface ReportDataSource {
+    /**
+     * Callback used to visit the transactions (splits) of a date range.
+     */
+    public interface TransactionVisitor {
+        /**
+         * Called once for each split found in the range being scanned. A data
+         * source may also visit the total of a category for a whole month,
+         * dated the first of the month.
+         *
+         * @param categoryUUID - The UUID of the category (account) of the split.
+         * @param date - The date of the split (YYYYMMDD).
+         * @param value - The value of the split in the category currency.
+         */
+        void visit(String categoryUUID, int date, long value);
+    }
+
+    /**
+     * A chunk of the transactions (splits) of a date range. The chunks of a
+     * range hold disjoint splits and may be visited concurrently, each by a
+     * single thread.
+     */
+    public interface TransactionChunk {
+        /**
+         * @return the number of splits in the chunk
+         */
+        int size();
+
+        /**
+         * Visit the splits of the chunk.
+         *
+         * @param visitor - The visitor to call for each split.
+         */
+        void scan(TransactionVisitor visitor);
+    }
+
+    /**
+     * Get the base currency of the data source.
+     *
+     * @return String - The ID string of the base currency.
+     */
+    String getBaseCurrency();
+
+    /**
+     * Get the names of the monthly budgets available.
+     *
+     * @return String[] - Sorted array of budget names.
+     */
+    String[] getBudgetNames();
+
+    /**
+     * Get the active income and expense categories in account tree order,
+     * i.e. each parent category is followed by all of its children. Inactive
+     * categories and categories hidden from the home page are not returned.
+     *
+     * @return List<ReportCategory> - The categories to report.
+     */
+    List<ReportCategory> getCategories();
+
+    /**
+     * Get the budget amount of a category for a month.
+     *
+     * @param budgetName - The name of the budget.
+     * @param category - The category to get the budget amount for.
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @return long - The budget amount, 0 if no budget amount exists.
+     */
+    long getBudgetAmount(String budgetName, ReportCategory category, int year, int month);
+
+    /**
+     * Visit all income and expense splits dated in the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each split found.
+     */
+    void scanTransactions(int startDate, int endDate, TransactionVisitor visitor);
+
+    /**
+     * Get the income and expense splits dated in the range specified split
+     * into chunks that can be visited concurrently. Visiting all of the
+     * chunks visits exactly the splits scanTransactions would visit.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param chunkSize - The maximum number of splits in a chunk.
+     * @return List<TransactionChunk> - The chunks in date order.
+     */
+    List<TransactionChunk> getTransactionChunks(int startDate, int endDate, int chunkSize);
+
+    /**
+     * Estimate the number of splits scanTransactions would visit in the range
+     * specified without visiting them. The estimate is never below the number
+     * visited, so a range estimated below a threshold is below it.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @return long - The estimated number of splits.
+     */
+    long estimateSplits(int startDate, int endDate);
+
+    /**
+     * Convert a value from one currency to another.
+     *
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID string of the currency of the value.
+     * @param toCurrency - The ID string of the currency to convert to.
+     * @return long - The converted value.
+     */
+    long convertValue(long value, String fromCurrency, String toCurrency);
+
+    /**
+     * Format a value for display.
+     *
+     * @param value - The value to format.
+     * @param currency - The ID string of the currency of the value.
+     * @param separator - The decimal separator character.
+     * @return String - The formatted value.
+     */
+    String formatValue(long value, String currency, char separator);
+
+    /**
+     * Forget any lookups cached by the data source so that they are read
+     * again the next time they are needed.
+     */
+    void clearCaches();
+
+    /**
+     * Get the change stamp of the data. The stamp changes whenever a category
+     * or transaction is added, modified or removed so it can be used to tell
+     * whether a report computed earlier is still current.
+     *
+     * @return long - The change stamp.
+     */
+    long getChangeStamp();
+
+    /**
+     * Release any resources held by the data source, i.e. listeners
+     * registered with the data file. The data source is not used afterwards.
+     */
+    void dispose();
+}
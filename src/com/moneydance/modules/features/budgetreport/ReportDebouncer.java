@@ -0,0 +1,246 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+* Class to coalesce changes of the report parameters while they are being
+* edited. Each change restarts a short timer and only when the parameters
+* have been still for QUIET_PERIOD is the report built, in the background.
+* A change made while a report is being built cancels that build as its
+* parameters are stale. The report built is added to the report cache so that
+* applying the parameters only has to display it. The data of the report is
+* copied into a BookSnapshot when the timer fires, on the event dispatch
+* thread, and the report is built from the snapshot.
+*
+* <p><b>Note:</b> All methods must be called on the event dispatch thread.
+*/
+public class ReportDebouncer {
+    // How long the parameters must be still before the report is built (milliseconds)
+    public static final int QUIET_PERIOD        = 300;
+
+    // The data source to build the reports from
+    private final ReportDataSource dataSource;
+
+    // The cache to add the reports to
+    private final ReportCache reportCache;
+
+    // Single thread to build the reports on, the user is waiting for them
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Budget Report parameters");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Timer restarted by each change, the report is built when it fires
+    private final Timer timer;
+
+    // The report requested last, null once its build has started
+    private Report requested = null;
+
+    // The report being built and its key, null if none
+    private Future<BudgetCategoriesList> building = null;
+    private ReportCache.Key buildingKey = null;
+
+    /**
+     * Create a debouncer.
+     *
+     * @param dataSource - The data source to build the reports from.
+     * @param reportCache - The cache to add the reports to.
+     */
+    public ReportDebouncer(final ReportDataSource dataSource, final ReportCache reportCache) {
+        this.dataSource = dataSource;
+        this.reportCache = reportCache;
+        this.timer = new Timer(ReportDebouncer.QUIET_PERIOD, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                ReportDebouncer.this.start();
+            }
+        });
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Request the report for the parameters just changed. The report is built
+     * once no other change is requested for QUIET_PERIOD.
+     *
+     * @param report - The report with the parameters changed, it is copied.
+     */
+    public void request(final Report report) {
+        // The report being built is stale now
+        this.cancelBuild();
+
+        this.requested = new Report(report);
+        this.timer.restart();
+    }
+
+    /**
+     * Wait for the report with the key given if it is being built, and cancel
+     * anything else requested.
+     *
+     * @param key - The key of the report needed.
+     * @return BudgetCategoriesList - The report, or null if it was not being built.
+     */
+    public BudgetCategoriesList await(final ReportCache.Key key) {
+        // Nothing else is needed now
+        this.timer.stop();
+        this.requested = null;
+        if ((this.building == null) || !key.equals(this.buildingKey))
+            {
+            this.cancelBuild();
+            return null;
+            }
+
+        // Finishing the build is quicker than starting it over
+        final Future<BudgetCategoriesList> future = this.building;
+        this.building = null;
+        this.buildingKey = null;
+        try
+            {
+            return future.get();
+            }
+        catch (final InterruptedException e)
+            {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+            }
+        catch (final ExecutionException | CancellationException e)
+            {
+            return null;
+            }
+    }
+
+    /**
+     * Cancel the report requested, whether it is waiting for the parameters
+     * to be still or being built.
+     */
+    public void cancel() {
+        this.timer.stop();
+        this.requested = null;
+        this.cancelBuild();
+    }
+
+    /**
+     * Cancel everything and stop the build thread.
+     */
+    public void dispose() {
+        this.cancel();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Cancel the report being built, if any.
+     */
+    private void cancelBuild() {
+        if (this.building != null)
+            {
+            this.building.cancel(true);
+            this.building = null;
+            this.buildingKey = null;
+            }
+    }
+
+    /**
+     * Start building the report requested once the parameters are still.
+     */
+    private void start() {
+        final Report report = this.requested;
+        this.requested = null;
+        if (report == null)
+            return;
+
+        // Nothing to build if the report was computed recently
+        final ReportCache.Key key = new ReportCache.Key(report, this.dataSource.getChangeStamp());
+        if (this.reportCache.contains(key))
+            return;
+
+        // Copy the data of the report here, the build thread only reads the copy
+        final BookSnapshot snapshot = BookSnapshot.take(this.dataSource, report.getBudgetName(), MonthRange.of(report));
+        if (snapshot == null)
+            return;
+
+        this.buildingKey = key;
+        this.building = this.executor.submit(new Callable<BudgetCategoriesList>() {
+            @Override
+            public BudgetCategoriesList call() {
+                final BudgetCategoriesList budgetCategoriesList;
+                try
+                    {
+                    budgetCategoriesList = new ReportBuilder(snapshot).build(report, null);
+                    }
+                finally
+                    {
+                    snapshot.release();
+                    }
+
+                // Add the report to the cache on the event dispatch thread
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ReportDebouncer.this.finish(key, budgetCategoriesList);
+                    }
+                });
+                return budgetCategoriesList;
+            }
+        });
+    }
+
+    /**
+     * Add a report built to the cache.
+     *
+     * @param key - The key of the report.
+     * @param budgetCategoriesList - The report.
+     */
+    private void finish(final ReportCache.Key key, final BudgetCategoriesList budgetCategoriesList) {
+        this.reportCache.put(key, budgetCategoriesList);
+        if (key.equals(this.buildingKey))
+            {
+            this.building = null;
+            this.buildingKey = null;
+            }
+    }
+}
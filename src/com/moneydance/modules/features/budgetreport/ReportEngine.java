@@ -0,0 +1,230 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+
+/**
+* Platform MBean exposing the metrics of the report engine.
+* Build times and split counts come from the report build history, the cache
+* hit ratios from the cache statistics and the memory estimate from the
+* category items of the table models that are still open. The table models
+* are removed when they are disposed, and tracked weakly so the MBean never
+* keeps alive a model that was dropped without being disposed.
+*/
+public final class ReportEngine implements ReportEngineMXBean {
+    // The object name the MBean is registered under
+    public static final String OBJECT_NAME = "com.moneydance.modules.features.budgetreport:type=ReportEngine";
+
+    // The single instance of the report engine MBean
+    private static final ReportEngine instance = new ReportEngine();
+
+    // The table models that have not been disposed or garbage collected
+    private final Set<TableModel> models = Collections.newSetFromMap(new WeakHashMap<TableModel, Boolean>());
+
+    /**
+     * @return the report engine MBean
+     */
+    public static ReportEngine getInstance() {
+        return ReportEngine.instance;
+    }
+
+    private ReportEngine() {
+    }
+
+    /**
+     * Register the MBean with the platform MBean server, replacing any MBean
+     * left behind by a previous load of the extension.
+     */
+    public void register() {
+        try
+            {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(ReportEngine.OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            }
+        catch (final JMException e)
+            {
+            System.err.println("ERROR: Unable to register the report engine MBean: "+e.toString());
+            }
+    }
+
+    /**
+     * Unregister the MBean from the platform MBean server.
+     */
+    public void unregister() {
+        try
+            {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(ReportEngine.OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            }
+        catch (final JMException e)
+            {
+            System.err.println("ERROR: Unable to unregister the report engine MBean: "+e.toString());
+            }
+    }
+
+    /**
+     * Track a table model.
+     *
+     * @param model - The table model created.
+     */
+    void addModel(final TableModel model) {
+        synchronized (this.models)
+            {
+            this.models.add(model);
+            }
+    }
+
+    /**
+     * Stop tracking a table model that has been disposed.
+     *
+     * @param model - The table model disposed.
+     */
+    void removeModel(final TableModel model) {
+        synchronized (this.models)
+            {
+            this.models.remove(model);
+            }
+    }
+
+    /**
+     * @return A copy of the live table models
+     */
+    private List<TableModel> getModels() {
+        synchronized (this.models)
+            {
+            return new ArrayList<TableModel>(this.models);
+            }
+    }
+
+    @Override
+    public double getLastBuildMillis() {
+        final List<ReportStatistics> history = ReportStatistics.getHistory();
+        if (history.isEmpty())
+            return 0;
+        return history.get(0).getBuildNanos() / 1000000.0;
+    }
+
+    @Override
+    public double getAverageBuildMillis() {
+        final List<ReportStatistics> history = ReportStatistics.getHistory();
+        if (history.isEmpty())
+            return 0;
+
+        long nanos = 0;
+        for (final ReportStatistics statistics : history)
+            nanos += statistics.getBuildNanos();
+        return (nanos / history.size()) / 1000000.0;
+    }
+
+    @Override
+    public double getSplitsScannedPerSecond() {
+        long splits = 0;
+        long nanos = 0;
+        for (final ReportStatistics statistics : ReportStatistics.getHistory())
+            {
+            splits += statistics.getSplitsScanned();
+            nanos += statistics.getPhaseNanos(ReportStatistics.PHASE_TRANSACTIONS);
+            }
+        return (nanos != 0) ? (splits * 1000000000.0) / nanos : 0;
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRatios() {
+        return CacheStatistics.getHitRatios();
+    }
+
+    @Override
+    public int getLiveTableModels() {
+        synchronized (this.models)
+            {
+            return this.models.size();
+            }
+    }
+
+    @Override
+    public long getCategoryStoreBytes() {
+        long bytes = 0;
+        for (final TableModel model : this.getModels())
+            {
+            final BudgetCategoriesList budgetCategoriesList = model.getBudgetCategoriesList();
+            if (budgetCategoriesList != null)
+                bytes += budgetCategoriesList.estimateMemory();
+            }
+        return bytes;
+    }
+
+    @Override
+    public void clearCaches() {
+        // The caches are used on the event dispatch thread so clear them there
+        for (final TableModel model : this.getModels())
+            {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    model.clearCaches();
+                }
+            });
+            }
+    }
+
+    @Override
+    public void forceRebuild() {
+        // Reports are built on the event dispatch thread, clear the caches so
+        // that nothing computed earlier is reused
+        for (final TableModel model : this.getModels())
+            {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    model.clearCaches();
+                    model.LoadData();
+                }
+            });
+            }
+    }
+}
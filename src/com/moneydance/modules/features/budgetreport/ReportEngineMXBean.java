@@ -0,0 +1,81 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.Map;
+
+/**
+* Management interface of the report engine.
+* The report engine is registered as a platform MBean so that its metrics can
+* be watched with JConsole or any other JMX client during long running
+* Moneydance sessions.
+*/
+public interface ReportEngineMXBean {
+    /**
+     * @return The time taken by the most recent report build in milliseconds
+     */
+    double getLastBuildMillis();
+
+    /**
+     * @return The average time taken by the recent report builds in milliseconds
+     */
+    double getAverageBuildMillis();
+
+    /**
+     * @return The number of splits scanned per second by the recent report builds
+     */
+    double getSplitsScannedPerSecond();
+
+    /**
+     * @return The hit ratio (0...1) of each cache by name
+     */
+    Map<String, Double> getCacheHitRatios();
+
+    /**
+     * @return The number of table models that have not been disposed or garbage collected
+     */
+    int getLiveTableModels();
+
+    /**
+     * @return The estimated memory used by the category items of all live table models in bytes
+     */
+    long getCategoryStoreBytes();
+
+    /**
+     * Clear the caches of all live table models.
+     */
+    void clearCaches();
+
+    /**
+     * Rebuild the reports of all live table models.
+     */
+    void forceRebuild();
+}
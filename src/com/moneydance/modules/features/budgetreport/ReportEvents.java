@@ -0,0 +1,199 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+* Java Flight Recorder events emitted by the Budget Report extension.
+* Every event carries the report name, the number of categories in the report,
+* the number of months reported and the number of splits scanned so that slow
+* frames in a recording can be matched to the report that caused them. The
+* events cost next to nothing when no recording is running.
+*/
+public final class ReportEvents {
+    // Prefix of the event names
+    private static final String PREFIX = "com.moneydance.budgetreport.";
+
+    /**
+     * Fields and helpers shared by all of the report events.
+     */
+    @Category({ "Moneydance", "Budget Report" })
+    public abstract static class ReportEvent extends Event {
+        @Label("Report Name")
+        String reportName;
+
+        @Label("Category Count")
+        @Description("The number of rows (categories) in the report")
+        int categoryCount;
+
+        @Label("Month Span")
+        @Description("The number of months reported")
+        int monthSpan;
+
+        @Label("Split Count")
+        @Description("The number of splits scanned to build the report")
+        long splitCount;
+
+        /**
+         * End the event and commit it if it is enabled and lasted longer
+         * than its threshold.
+         *
+         * @param report - The report the event is for, may be null.
+         * @param budgetCategoriesList - The categories of the report, may be null.
+         */
+        public void commitFor(final Report report, final BudgetCategoriesList budgetCategoriesList) {
+            this.end();
+            if (!this.shouldCommit())
+                return;
+
+            if (report != null)
+                {
+                this.reportName = report.getReportName();
+                this.monthSpan = MonthRange.of(report).getMonthCount();
+                }
+            if (budgetCategoriesList != null)
+                {
+                this.categoryCount = budgetCategoriesList.getCategoryCount();
+                this.splitCount = budgetCategoriesList.getStatistics().getSplitsScanned();
+                }
+            this.commit();
+        }
+    }
+
+    /**
+     * A complete report build.
+     */
+    @Name(ReportEvents.PREFIX + "Build")
+    @Label("Report Build")
+    @Description("Build of the budget and actual values of a report")
+    public static final class Build extends ReportEvent {
+    }
+
+    /**
+     * One phase of a report build.
+     */
+    @Name(ReportEvents.PREFIX + "BuildPhase")
+    @Label("Report Build Phase")
+    @Description("One phase of a report build or display")
+    public static final class BuildPhase extends ReportEvent {
+        // The event type, to check whether phases are recorded before creating an event
+        private static final EventType TYPE = EventType.getEventType(BuildPhase.class);
+
+        @Label("Phase")
+        String phase;
+
+        /**
+         * @return true if a recording is running that records build phases,
+         * checked on hot paths such as painting so no event is created otherwise
+         */
+        public static boolean isRecorded() {
+            return BuildPhase.TYPE.isEnabled();
+        }
+
+        /**
+         * @param phase - The name of the phase (see ReportStatistics.phases).
+         */
+        public BuildPhase(final String phase) {
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * A model refresh (LoadData) which blocks the event dispatch thread when
+     * run on it.
+     */
+    @Name(ReportEvents.PREFIX + "ModelRefresh")
+    @Label("Report Model Refresh")
+    @Description("Reload of the report table model")
+    public static final class ModelRefresh extends ReportEvent {
+        @Label("On Event Dispatch Thread")
+        boolean onEventThread;
+
+        /**
+         * @param onEventThread - true when the refresh runs on the event dispatch thread.
+         */
+        public ModelRefresh(final boolean onEventThread) {
+            this.onEventThread = onEventThread;
+        }
+    }
+
+    /**
+     * An export of a report.
+     */
+    @Name(ReportEvents.PREFIX + "Export")
+    @Label("Report Export")
+    @Description("Export of a report to the clipboard or a file")
+    public static final class Export extends ReportEvent {
+        @Label("Format")
+        String format;
+
+        /**
+         * @param format - The export format (see Constants.exportItems).
+         */
+        public Export(final String format) {
+            this.format = format;
+        }
+    }
+
+    /**
+     * The layout and rendering of one printed page.
+     */
+    @Name(ReportEvents.PREFIX + "PrintPage")
+    @Label("Report Print Page")
+    @Description("Pagination and rendering of one page of a printed report")
+    public static final class PrintPage extends ReportEvent {
+        @Label("Page Index")
+        int pageIndex;
+
+        @Label("Pages Paginated")
+        @Description("The number of pages laid out while printing this page, all of them for the first page")
+        int pagesPaginated;
+
+        /**
+         * @param pageIndex - The index of the page printed.
+         */
+        public PrintPage(final int pageIndex) {
+            this.pageIndex = pageIndex;
+        }
+    }
+
+    /**
+     * No instances, this class only holds the event types.
+     */
+    private ReportEvents() {
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+* Class to compute the periods next to the report displayed in the background.
+* After a report is displayed the previous and next month of a monthly report,
+* or the previous year of a yearly report, are built on a low priority thread
+* and added to the report cache so that stepping to them is instant. Any
+* mouse button or key press, or a new report load, cancels the prefetch.
+* Once the report displayed is painted the data of the periods is copied into
+* a BookSnapshot on the event dispatch thread, the background thread only
+* builds from the snapshot.
+*
+* <p><b>Note:</b> All methods must be called on the event dispatch thread.
+*/
+public class ReportPrefetcher {
+    // The data source to build the reports from
+    private final ReportDataSource dataSource;
+
+    // The cache to add the reports to
+    private final ReportCache reportCache;
+
+    // Single low priority thread to build the reports on
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Budget Report prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    // The prefetch queued or running, null if none
+    private Future<?> pending = null;
+
+    // Incremented whenever the prefetch is cancelled so that a late start is dropped
+    private int generation = 0;
+
+    // Listener to cancel the prefetch when the user does something
+    private final AWTEventListener inputListener = new AWTEventListener() {
+        @Override
+        public void eventDispatched(final AWTEvent event) {
+            // Only a button or key press, moving the mouse over the window or
+            // releasing a key is not the user starting something else
+            final int id = event.getID();
+            if ((id == MouseEvent.MOUSE_PRESSED) || (id == KeyEvent.KEY_PRESSED))
+                ReportPrefetcher.this.cancel();
+        }
+    };
+
+    // true while the input listener is registered
+    private boolean listening = false;
+
+    /**
+     * Create a prefetcher.
+     *
+     * @param dataSource - The data source to build the reports from.
+     * @param reportCache - The cache to add the reports to.
+     */
+    public ReportPrefetcher(final ReportDataSource dataSource, final ReportCache reportCache) {
+        this.dataSource = dataSource;
+        this.reportCache = reportCache;
+    }
+
+    /**
+     * Start computing the periods next to a report in the background. Any
+     * prefetch already running is cancelled first.
+     *
+     * @param report - The report just displayed.
+     */
+    public void prefetch(final Report report) {
+        this.cancel();
+
+        // Skip periods that are already cached
+        final long changeStamp = this.dataSource.getChangeStamp();
+        final List<Report> neighbours = new ArrayList<Report>();
+        for (final Report neighbour : ReportPrefetcher.getNeighbours(report))
+            {
+            if (!this.reportCache.contains(new ReportCache.Key(neighbour, changeStamp)))
+                neighbours.add(neighbour);
+            }
+        if (neighbours.isEmpty())
+            return;
+
+        // Copy the data once the report displayed has been painted
+        final int scheduled = this.generation;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (scheduled == ReportPrefetcher.this.generation)
+                    ReportPrefetcher.this.start(neighbours, scheduled);
+            }
+        });
+
+        // Cancel the prefetch as soon as the user presses a mouse button or key
+        if (!this.listening)
+            {
+            Toolkit.getDefaultToolkit().addAWTEventListener(this.inputListener, AWTEvent.MOUSE_EVENT_MASK | AWTEvent.KEY_EVENT_MASK);
+            this.listening = true;
+            }
+    }
+
+    /**
+     * Cancel any prefetch queued or running.
+     */
+    public void cancel() {
+        this.generation++;
+        if (this.pending != null)
+            {
+            this.pending.cancel(true);
+            this.pending = null;
+            }
+        this.stopListening();
+    }
+
+    /**
+     * Cancel any prefetch and stop the prefetch thread.
+     */
+    public void dispose() {
+        this.cancel();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Copy the data of the neighbouring periods and build them on the
+     * prefetch thread.
+     *
+     * @param neighbours - The reports to build.
+     * @param scheduled - The generation the prefetch was started in.
+     */
+    private void start(final List<Report> neighbours, final int scheduled) {
+        // One snapshot covers all the neighbours, they have the same budget
+        MonthRange range = MonthRange.of(neighbours.get(0));
+        for (final Report neighbour : neighbours)
+            range = range.union(MonthRange.of(neighbour));
+        final BookSnapshot snapshot = BookSnapshot.take(this.dataSource, neighbours.get(0).getBudgetName(), range);
+        if (snapshot == null)
+            {
+            this.stopListening();
+            return;
+            }
+
+        this.pending = this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try
+                    {
+                    for (final Report neighbour : neighbours)
+                        {
+                        // Keep the statistics history to the reports the user asked for
+                        final BudgetCategoriesList budgetCategoriesList = new ReportBuilder(snapshot).build(neighbour, null, false);
+                        final ReportCache.Key key = new ReportCache.Key(neighbour, snapshot.getChangeStamp());
+
+                        // Add the report to the cache on the event dispatch thread
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                ReportPrefetcher.this.reportCache.put(key, budgetCategoriesList);
+                            }
+                        });
+                        }
+                    }
+                catch (final CancellationException e)
+                    {
+                    // The user started something else
+                    }
+                finally
+                    {
+                    snapshot.release();
+                    }
+
+                // Stop listening for user input unless another prefetch has started
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (scheduled == ReportPrefetcher.this.generation)
+                            {
+                            ReportPrefetcher.this.pending = null;
+                            ReportPrefetcher.this.stopListening();
+                            }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop listening for user input.
+     */
+    private void stopListening() {
+        if (this.listening)
+            {
+            Toolkit.getDefaultToolkit().removeAWTEventListener(this.inputListener);
+            this.listening = false;
+            }
+    }
+
+    /**
+     * Get the reports for the periods the user is likely to step to next: the
+     * previous and next month of a one month report, otherwise the same
+     * months of the previous year.
+     *
+     * @param report - The report displayed.
+     * @return List<Report> - The neighbouring reports.
+     */
+    static List<Report> getNeighbours(final Report report) {
+        final List<Report> neighbours = new ArrayList<Report>();
+        final int year = report.getYear();
+        final int month = report.getStartMonth();
+
+        if (MonthRange.of(report).getMonthCount() == 1)
+            {
+            // Previous month
+            if (month == 1)
+                neighbours.add(ReportPrefetcher.copy(report, year - 1, 12, year - 1, 12));
+            else
+                neighbours.add(ReportPrefetcher.copy(report, year, month - 1, year, month - 1));
+
+            // Next month
+            if (month == 12)
+                neighbours.add(ReportPrefetcher.copy(report, year + 1, 1, year + 1, 1));
+            else
+                neighbours.add(ReportPrefetcher.copy(report, year, month + 1, year, month + 1));
+            }
+        else
+            // Previous year
+            neighbours.add(ReportPrefetcher.copy(report, year - 1, report.getStartMonth(), report.getEndYear() - 1, report.getEndMonth()));
+
+        return neighbours;
+    }
+
+    /**
+     * Copy a report for another period.
+     *
+     * @param report - The report to copy.
+     * @param year - The year of the start month of the copy.
+     * @param startMonth - The start month of the copy.
+     * @param endYear - The year of the end month of the copy.
+     * @param endMonth - The end month of the copy.
+     * @return Report - The copy of the report.
+     */
+    private static Report copy(final Report report, final int year, final int startMonth, final int endYear, final int endMonth) {
+        return new Report(report.getReportName()+" (prefetch)", report.getBudgetName(), Constants.PERIOD_CUSTOM, year, startMonth, endYear, endMonth,
+            report.getSubtotalBy(), report.isSubtotalParents(), report.isUseCategoryCurrency());
+    }
+}
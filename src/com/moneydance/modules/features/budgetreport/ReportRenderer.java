@@ -0,0 +1,520 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+* Headless renderer of report pages.
+* The pages are drawn straight from a report snapshot, without a JTable or
+* any window, so reports can be archived as PDF or PNG documents from batch
+* runs as well as from the report window. The pages look like the printed
+* report: the report name and dates at the top, the page number at the
+* bottom, and the table spread over as many pages as needed, rows first.
+*
+* <p>For example, to archive a report without a window:
+*
+* <pre>
+*   final TableModel model = new TableModel(report, dataSource);
+*   final ReportRenderer renderer = new ReportRenderer(model.getSnapshot(), model, new PageFormat());
+*   try (OutputStream out = new FileOutputStream(file))
+*     {
+*     renderer.writePdf(out);
+*     }
+* </pre>
+*
+* <p><b>Note:</b> The cell text is formatted once when the renderer is
+* created, rendering a page only draws it. Coordinates are in points.
+*/
+public class ReportRenderer {
+    // Scale of the PNG images, 2 renders at 144 dots per inch
+    public static final double PNG_SCALE        = 2.0;
+
+    // Font sizes (points)
+    private static final float CELL_FONT_SIZE   = Table.PRINT_FONT_SIZE;
+    private static final float TITLE_FONT_SIZE  = 10;
+    private static final float DATES_FONT_SIZE  = 8;
+    private static final float FOOTER_FONT_SIZE = 8;
+
+    // Height of the table rows (points), the same as the printed table
+    private static final float ROW_HEIGHT       = Math.round(Table.PRINT_FONT_SIZE) + 5;
+
+    // Space between the header or footer text and the table (points)
+    private static final float H_F_SPACE        = 8;
+
+    // Space between the cell text and the cell edges (points)
+    private static final float PADDING          = 2;
+
+    // Colors of the rollup rows, also used by the table outside Moneydance
+    static final Color OVERALL_FG               = new Color(0, 51, 153);     // Income-Expense row
+    static final Color ROLLUP_FG                = new Color(0, 102, 204);    // Other rollup rows
+
+    /**
+     * Target the pages are drawn on.
+     */
+    interface Canvas {
+        /**
+         * @param color - The color of the rectangles and text drawn next.
+         */
+        void setColor(Color color);
+
+        /**
+         * Fill a rectangle.
+         *
+         * @param x - The left edge.
+         * @param y - The top edge.
+         * @param width - The width.
+         * @param height - The height.
+         */
+        void fillRect(float x, float y, float width, float height);
+
+        /**
+         * Draw text.
+         *
+         * @param text - The text.
+         * @param x - The left edge of the text.
+         * @param y - The baseline of the text.
+         * @param bold - true for bold text.
+         * @param size - The font size.
+         */
+        void drawText(String text, float x, float y, boolean bold, float size);
+
+        /**
+         * Measure text.
+         *
+         * @param text - The text.
+         * @param bold - true for bold text.
+         * @param size - The font size.
+         * @return float - The width of the text.
+         */
+        float stringWidth(String text, boolean bold, float size);
+    }
+
+    // The page format
+    private final PageFormat pageFormat;
+
+    // The header and footer text
+    private final String title;
+    private final String dates;
+
+    // The column names and the formatted cells, [row][column]
+    private final String[] columnNames;
+    private final String[][] cells;
+
+    // The report rendered, for the styles of the rows and cells
+    private final ReportSnapshot snapshot;
+
+    // Left edge of each column and of the end of the table, [0] is 0
+    private final float[] colX;
+
+    // First column of each band of columns and the end of the columns
+    private final int[] colBands;
+
+    // The number of rows on each page
+    private final int rowsPerPage;
+
+    // The number of pages
+    private final int pageCount;
+
+    /**
+     * Create a renderer for US letter pages with one inch margins.
+     *
+     * @param snapshot - The report to render.
+     * @param model - The table model formatting the values.
+     */
+    public ReportRenderer(final ReportSnapshot snapshot, final TableModel model) {
+        this(snapshot, model, new PageFormat());
+    }
+
+    /**
+     * Create a renderer.
+     *
+     * @param snapshot - The report to render.
+     * @param model - The table model formatting the values.
+     * @param pageFormat - The size, orientation and margins of the pages.
+     */
+    public ReportRenderer(final ReportSnapshot snapshot, final TableModel model, final PageFormat pageFormat) {
+        this.pageFormat = (PageFormat) pageFormat.clone();
+        this.snapshot = snapshot;
+
+        // Header text, the same as the printed report
+        final Report report = snapshot.getReport();
+        this.title = (report != null) ? report.getReportName() : "";
+        this.dates = (report != null) ? MonthRange.of(report).format(" ") : "";
+
+        // Format every cell once
+        final int rowCount = snapshot.getRowCount();
+        final int colCount = snapshot.getColumnCount();
+        this.columnNames = new String[colCount];
+        for (int column = 0; column < colCount; column++)
+            this.columnNames[column] = snapshot.getColumnName(column);
+        this.cells = new String[rowCount][colCount];
+        for (int row = 0; row < rowCount; row++)
+            {
+            for (int column = 0; column < colCount; column++)
+                {
+                final Object value = model.getValueAt(snapshot, row, column);
+                this.cells[row][column] = (value != null) ? value.toString() : "";
+                }
+            }
+
+        // Column edges, the category column is wider
+        this.colX = new float[colCount + 1];
+        for (int column = 0; column < colCount; column++)
+            this.colX[column + 1] = this.colX[column] + ((column == 0) ? Constants.PRINT_CATEGORY_WIDTH : Constants.PRINT_VALUE_WIDTH);
+
+        // Fit as many columns as possible on each band, and at least one
+        final float width = (float) this.pageFormat.getImageableWidth();
+        final int[] bands = new int[colCount + 1];
+        int bandCount = 0;
+        for (int first = 0; first < colCount; )
+            {
+            bands[bandCount++] = first;
+            int end = first + 1;
+            while ((end < colCount) && (this.colX[end + 1] - this.colX[first] <= width))
+                end++;
+            first = end;
+            }
+        bands[bandCount] = colCount;
+        this.colBands = new int[bandCount + 1];
+        System.arraycopy(bands, 0, this.colBands, 0, bandCount + 1);
+
+        // Fit as many rows as possible under the header row, and at least one
+        final float tableHeight = (float) this.pageFormat.getImageableHeight() - ReportRenderer.getHeaderSpace() - ReportRenderer.getFooterSpace();
+        this.rowsPerPage = Math.max(1, (int) (tableHeight / ReportRenderer.ROW_HEIGHT) - 1);
+
+        // Each band of rows is spread over all the bands of columns
+        final int rowBandCount = Math.max(1, (rowCount + this.rowsPerPage - 1) / this.rowsPerPage);
+        this.pageCount = (colCount == 0) ? 0 : rowBandCount * bandCount;
+    }
+
+    /**
+     * @return the number of pages
+     */
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    /**
+     * @return the page format of the pages
+     */
+    public PageFormat getPageFormat() {
+        return (PageFormat) this.pageFormat.clone();
+    }
+
+    /**
+     * Draw a page on a graphics context, in points from the top left corner
+     * of the page.
+     *
+     * @param g2d - The graphics context.
+     * @param pageIndex - The page (0...n).
+     */
+    public void render(final Graphics2D g2d, final int pageIndex) {
+        this.render(new GraphicsCanvas(g2d), pageIndex);
+    }
+
+    /**
+     * Render a page into an image.
+     *
+     * @param pageIndex - The page (0...n).
+     * @param scale - The number of pixels per point.
+     * @return BufferedImage - The page.
+     */
+    public BufferedImage renderImage(final int pageIndex, final double scale) {
+        final BufferedImage image = new BufferedImage((int) Math.ceil(this.pageFormat.getWidth() * scale),
+            (int) Math.ceil(this.pageFormat.getHeight() * scale), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = image.createGraphics();
+        try
+            {
+            // White paper
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g2d.scale(scale, scale);
+            this.render(g2d, pageIndex);
+            }
+        finally
+            {
+            g2d.dispose();
+            }
+        return image;
+    }
+
+    /**
+     * Write the pages as PNG images. A single page is written to the file
+     * given, otherwise the page number is added to the name of each file,
+     * i.e. "Report-1.png", "Report-2.png" and so on.
+     *
+     * @param file - The file to write, its name should end with ".png".
+     * @param scale - The number of pixels per point.
+     * @return List<File> - The files written.
+     * @throws IOException - If a file cannot be written.
+     */
+    public List<File> writePng(final File file, final double scale) throws IOException {
+        // Split the name into the base name and extension
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+        final String baseName = (dot > 0) ? name.substring(0, dot) : name;
+        final String extension = (dot > 0) ? name.substring(dot) : ".png";
+
+        final List<File> files = new ArrayList<File>(this.pageCount);
+        for (int page = 0; page < this.pageCount; page++)
+            {
+            final File pageFile = (this.pageCount == 1) ? file : new File(file.getParentFile(), baseName+"-"+(page + 1)+extension);
+            if (!ImageIO.write(this.renderImage(page, scale), "png", pageFile))
+                throw new IOException("No PNG image writer is available");
+            files.add(pageFile);
+            }
+        return files;
+    }
+
+    /**
+     * Write the pages as a PDF document.
+     *
+     * @param out - The stream to write the document to, it is not closed.
+     * @throws IOException - If the stream cannot be written.
+     */
+    public void writePdf(final OutputStream out) throws IOException {
+        final PdfWriter writer = new PdfWriter(out);
+        for (int page = 0; page < this.pageCount; page++)
+            {
+            writer.beginPage((float) this.pageFormat.getWidth(), (float) this.pageFormat.getHeight());
+            this.render(writer, page);
+            writer.endPage();
+            }
+        writer.finish();
+    }
+
+    /**
+     * Draw a page on a canvas.
+     *
+     * @param canvas - The canvas.
+     * @param pageIndex - The page (0...n).
+     */
+    void render(final Canvas canvas, final int pageIndex) {
+        if ((pageIndex < 0) || (pageIndex >= this.pageCount))
+            throw new IndexOutOfBoundsException("No page "+pageIndex+", the report has "+this.pageCount+" pages");
+
+        // Find the rows and columns on this page
+        final int colBandCount = this.colBands.length - 1;
+        final int firstRow = (pageIndex / colBandCount) * this.rowsPerPage;
+        final int endRow = Math.min(this.cells.length, firstRow + this.rowsPerPage);
+        final int firstCol = this.colBands[pageIndex % colBandCount];
+        final int endCol = this.colBands[(pageIndex % colBandCount) + 1];
+
+        final float left = (float) this.pageFormat.getImageableX();
+        final float top = (float) this.pageFormat.getImageableY();
+        final float width = (float) this.pageFormat.getImageableWidth();
+        final float height = (float) this.pageFormat.getImageableHeight();
+
+        // Header and footer text
+        canvas.setColor(Color.BLACK);
+        this.drawCentered(canvas, this.title, left, width, top + ReportRenderer.TITLE_FONT_SIZE, true, ReportRenderer.TITLE_FONT_SIZE);
+        this.drawCentered(canvas, this.dates, left, width, top + (ReportRenderer.TITLE_FONT_SIZE * 1.2f) + ReportRenderer.DATES_FONT_SIZE,
+            false, ReportRenderer.DATES_FONT_SIZE);
+        this.drawCentered(canvas, "Page "+(pageIndex + 1), left, width, top + height - (ReportRenderer.FOOTER_FONT_SIZE * 0.2f),
+            false, ReportRenderer.FOOTER_FONT_SIZE);
+
+        // Center the columns on the page
+        final float bandWidth = this.colX[endCol] - this.colX[firstCol];
+        final float x0 = left + Math.max(0, (width - bandWidth) / 2) - this.colX[firstCol];
+        float y = top + ReportRenderer.getHeaderSpace();
+
+        // Column header row
+        canvas.setColor(Table.PRINT_HEADER_BG);
+        canvas.fillRect(x0 + this.colX[firstCol], y, bandWidth, ReportRenderer.ROW_HEIGHT);
+        canvas.setColor(Color.BLACK);
+        for (int column = firstCol; column < endCol; column++)
+            this.drawCentered(canvas, this.columnNames[column], x0 + this.colX[column], this.colX[column + 1] - this.colX[column],
+                y + ReportRenderer.getBaseline(), false, ReportRenderer.CELL_FONT_SIZE);
+        y += ReportRenderer.ROW_HEIGHT;
+
+        // Rows
+        for (int row = firstRow; row < endRow; row++, y += ReportRenderer.ROW_HEIGHT)
+            {
+            // Alternate row colors for readability
+            if ((row % 2) != 0)
+                {
+                canvas.setColor(Table.PRINT_ALTERNATE_BG);
+                canvas.fillRect(x0 + this.colX[firstCol], y, bandWidth, ReportRenderer.ROW_HEIGHT);
+                }
+
+            // Rollup rows are colored and bold
+            final int style = this.snapshot.getRowStyle(row);
+            final boolean rollup = (style != ReportSnapshot.STYLE_NORMAL);
+            final Color rowColor = (style == ReportSnapshot.STYLE_OVERALL) ? ReportRenderer.OVERALL_FG : (rollup ? ReportRenderer.ROLLUP_FG : Color.BLACK);
+            for (int column = firstCol; column < endCol; column++)
+                {
+                final String text = this.cells[row][column];
+                if (text.isEmpty())
+                    continue;
+
+                // Highlight negative differences red
+                canvas.setColor(this.snapshot.isNegative(row, column) ? Color.RED : rowColor);
+
+                final float cellLeft = x0 + this.colX[column];
+                final float cellWidth = this.colX[column + 1] - this.colX[column];
+                final String fitted = ReportRenderer.fit(canvas, text, rollup, ReportRenderer.CELL_FONT_SIZE, cellWidth - (2 * ReportRenderer.PADDING));
+                if (column == 0)
+                    canvas.drawText(fitted, cellLeft + ReportRenderer.PADDING, y + ReportRenderer.getBaseline(), rollup, ReportRenderer.CELL_FONT_SIZE);
+                else
+                    canvas.drawText(fitted, cellLeft + cellWidth - ReportRenderer.PADDING - canvas.stringWidth(fitted, rollup, ReportRenderer.CELL_FONT_SIZE),
+                        y + ReportRenderer.getBaseline(), rollup, ReportRenderer.CELL_FONT_SIZE);
+                }
+            }
+    }
+
+    /**
+     * Draw text centered in an area, clipped on the right if it doesn't fit.
+     *
+     * @param canvas - The canvas.
+     * @param text - The text.
+     * @param left - The left edge of the area.
+     * @param width - The width of the area.
+     * @param y - The baseline of the text.
+     * @param bold - true for bold text.
+     * @param size - The font size.
+     */
+    private void drawCentered(final Canvas canvas, final String text, final float left, final float width, final float y, final boolean bold, final float size) {
+        final String fitted = ReportRenderer.fit(canvas, text, bold, size, width);
+        canvas.drawText(fitted, left + ((width - canvas.stringWidth(fitted, bold, size)) / 2), y, bold, size);
+    }
+
+    /**
+     * Shorten text that is too wide for a cell.
+     *
+     * @param canvas - The canvas measuring the text.
+     * @param text - The text.
+     * @param bold - true for bold text.
+     * @param size - The font size.
+     * @param width - The width available.
+     * @return String - The text, or as much of it as fits.
+     */
+    private static String fit(final Canvas canvas, final String text, final boolean bold, final float size, final float width) {
+        String fitted = text;
+        while ((fitted.length() > 1) && (canvas.stringWidth(fitted, bold, size) > width))
+            fitted = fitted.substring(0, fitted.length() - 1);
+        return fitted;
+    }
+
+    /**
+     * @return the height of the header text and the space below it
+     */
+    private static float getHeaderSpace() {
+        return ((ReportRenderer.TITLE_FONT_SIZE + ReportRenderer.DATES_FONT_SIZE) * 1.2f) + ReportRenderer.H_F_SPACE;
+    }
+
+    /**
+     * @return the height of the footer text and the space above it
+     */
+    private static float getFooterSpace() {
+        return (ReportRenderer.FOOTER_FONT_SIZE * 1.2f) + ReportRenderer.H_F_SPACE;
+    }
+
+    /**
+     * @return the baseline of the cell text below the top of its row
+     */
+    private static float getBaseline() {
+        // Center the capital letters in the row
+        return (ReportRenderer.ROW_HEIGHT + (ReportRenderer.CELL_FONT_SIZE * 0.72f)) / 2;
+    }
+
+    /**
+     * Canvas drawing on a Java 2D graphics context.
+     */
+    private static final class GraphicsCanvas implements Canvas {
+        private final Graphics2D g2d;
+
+        // Fonts by size, 0 regular and 1 bold
+        private final List<Map<Float, Font>> fonts = new ArrayList<Map<Float, Font>>(2);
+
+        GraphicsCanvas(final Graphics2D g2d) {
+            this.g2d = g2d;
+            this.fonts.add(new HashMap<Float, Font>());
+            this.fonts.add(new HashMap<Float, Font>());
+        }
+
+        @Override
+        public void setColor(final Color color) {
+            this.g2d.setColor(color);
+        }
+
+        @Override
+        public void fillRect(final float x, final float y, final float width, final float height) {
+            this.g2d.fill(new Rectangle2D.Float(x, y, width, height));
+        }
+
+        @Override
+        public void drawText(final String text, final float x, final float y, final boolean bold, final float size) {
+            this.g2d.setFont(this.getFont(bold, size));
+            this.g2d.drawString(text, x, y);
+        }
+
+        @Override
+        public float stringWidth(final String text, final boolean bold, final float size) {
+            return (float) this.getFont(bold, size).getStringBounds(text, this.g2d.getFontRenderContext()).getWidth();
+        }
+
+        /**
+         * @param bold - true for the bold font.
+         * @param size - The font size.
+         * @return the font
+         */
+        private Font getFont(final boolean bold, final float size) {
+            final Map<Float, Font> sizes = this.fonts.get(bold ? 1 : 0);
+            final Float key = Float.valueOf(size);
+            Font font = sizes.get(key);
+            if (font == null)
+                {
+                font = new Font(Font.SANS_SERIF, bold ? Font.BOLD : Font.PLAIN, 1).deriveFont(size);
+                sizes.put(key, font);
+                }
+            return font;
+        }
+    }
+}
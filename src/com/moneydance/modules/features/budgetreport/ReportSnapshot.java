@@ -0,0 +1,508 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+* Immutable snapshot of a computed report.
+* The table model publishes a new snapshot each time a report is loaded and
+* the table, exporters and printer each read one snapshot from start to
+* finish. A snapshot never changes after it is created, so it can be read
+* without locks while the next one is being built on another thread.
+*
+* <p>The values of a report subtotaled by quarter or half year are added up
+* from the months of the report when the snapshot is taken, so changing the
+* subtotal never totals the transactions again. Quarters and half years are
+* counted from the first month of the report, i.e. a fiscal year from July
+* starts with July to September.
+*
+* <p><b>Note:</b> Values are in the currency of their category, the table
+* model converts and formats them for display.
+*/
+public final class ReportSnapshot {
+    // The column names for the table
+    private static final String[] columnNames = {"Category","Budget","Actual","Difference"};
+
+    // Source of the snapshot version numbers
+    private static final AtomicLong versions = new AtomicLong();
+
+    // Row styles, see getRowStyle
+    public static final int STYLE_NORMAL        = 0;
+    public static final int STYLE_OVERALL       = 1;    // The Income-Expense rollup row
+    public static final int STYLE_ROLLUP        = 2;    // Other rollup rows
+
+    // The snapshot used before any report has been loaded
+    public static final ReportSnapshot EMPTY = new ReportSnapshot();
+
+    // The version of this snapshot, later snapshots have higher versions
+    private final long version;
+
+    // Copy of the report parameters the snapshot was computed for, null when empty
+    private final Report report;
+
+    // The months of the report, null when empty
+    private final MonthRange range;
+
+    // The number of months subtotaled in each group of columns, 0 if not subtotaled
+    private final int groupMonths;
+
+    // The number of groups of subtotal columns
+    private final int groupCount;
+
+    // The ID string of the base currency
+    private final String baseCurrency;
+
+    // The rows of the report
+    private final Row[] rows;
+
+    // The budget categories list the snapshot was taken from, null when empty
+    private final BudgetCategoriesList budgetCategoriesList;
+
+    // The number of columns of the report
+    private final int columnCount;
+
+    // The style of each row
+    private final byte[] rowStyles;
+
+    // Negative difference cells, bit (row * column count) + column is set for each
+    private final BitSet negatives;
+
+    /**
+     * One immutable row (category) of a report snapshot.
+     */
+    public static final class Row {
+        private final String shortName;
+        private final int indentLevel;
+        private final Account.AccountType categoryType;
+        private final String currencyType;
+        private final boolean hasChildren;
+
+        // [0] is not used, [1...groups] each group of months, [groups + 1] the total
+        private final long[] budgetValues;
+        private final long[] actualTotals;
+
+        /**
+         * Copy a budget category item, adding up its months into groups.
+         *
+         * @param item - The item to copy.
+         * @param months - The number of months in the report.
+         * @param groupMonths - The number of months in each group, 0 for no groups.
+         * @param groups - The number of groups.
+         */
+        private Row(final BudgetCategoryItem item, final int months, final int groupMonths, final int groups) {
+            this.shortName = item.getShortName();
+            this.indentLevel = item.getIndentLevel();
+            this.categoryType = item.getCategoryType();
+            this.currencyType = item.getCurrencyType();
+            this.hasChildren = item.hasChildren();
+            this.budgetValues = new long[groups + 2];
+            this.actualTotals = new long[groups + 2];
+            for (int month = 1; (groups > 0) && (month <= months); month++)
+                {
+                final int group = 1 + ((month - 1) / groupMonths);
+                this.budgetValues[group] += item.getBudgetValueForMonth(month);
+                this.actualTotals[group] += item.getActualTotalForMonth(month);
+                }
+            this.budgetValues[groups + 1] = item.getBudgetTotal();
+            this.actualTotals[groups + 1] = item.getActualTotal();
+        }
+
+        /**
+         * @return the short name of the category i.e. "Fuel" not "Auto:Fuel"
+         */
+        public String getShortName() {
+            return this.shortName;
+        }
+
+        /**
+         * @return the indent level of the category
+         */
+        public int getIndentLevel() {
+            return this.indentLevel;
+        }
+
+        /**
+         * @return the account type of the category
+         */
+        public Account.AccountType getCategoryType() {
+            return this.categoryType;
+        }
+
+        /**
+         * @return the currency ID string of the category
+         */
+        public String getCurrencyType() {
+            return this.currencyType;
+        }
+
+        /**
+         * @return true if the category has children (a roll-up row)
+         */
+        public boolean hasChildren() {
+            return this.hasChildren;
+        }
+
+        /**
+         * @param group - The group of months (1...n) or n + 1 for the total.
+         * @return the budget value
+         */
+        public long getBudgetValue(final int group) {
+            return this.budgetValues[group];
+        }
+
+        /**
+         * @param group - The group of months (1...n) or n + 1 for the total.
+         * @return the actual total
+         */
+        public long getActualTotal(final int group) {
+            return this.actualTotals[group];
+        }
+    }
+
+    /**
+     * Create the empty snapshot.
+     */
+    private ReportSnapshot() {
+        this.version = 0;
+        this.report = null;
+        this.range = null;
+        this.groupMonths = 0;
+        this.groupCount = 0;
+        this.baseCurrency = null;
+        this.rows = new Row[0];
+        this.budgetCategoriesList = null;
+        this.columnCount = this.countColumns();
+        this.rowStyles = new byte[0];
+        this.negatives = new BitSet();
+    }
+
+    /**
+     * Take a snapshot of a computed report.
+     *
+     * @param report - The report, its parameters are copied.
+     * @param baseCurrency - The ID string of the base currency.
+     * @param budgetCategoriesList - The computed budget categories list, it must
+     * not be changed afterwards.
+     */
+    public ReportSnapshot(final Report report, final String baseCurrency, final BudgetCategoriesList budgetCategoriesList) {
+        this.version = ReportSnapshot.versions.incrementAndGet();
+        this.report = new Report(report);
+        this.range = MonthRange.of(report);
+        this.baseCurrency = baseCurrency;
+        this.budgetCategoriesList = budgetCategoriesList;
+
+        // Group the months by the subtotal selected, the last group may be shorter
+        this.groupMonths = ReportSnapshot.getGroupMonths(report.getSubtotalBy());
+        this.groupCount = (this.groupMonths > 0) ? (((this.range.getMonthCount() - 1) / this.groupMonths) + 1) : 0;
+
+        // Copy the rows
+        final List<BudgetCategoryItem> items = budgetCategoriesList.getCategoryItems();
+        this.rows = new Row[items.size()];
+        for (int row = 0; row < this.rows.length; row++)
+            this.rows[row] = new Row(items.get(row), this.range.getMonthCount(), this.groupMonths, this.groupCount);
+
+        // Work out how each row and cell is styled once, so the table doesn't
+        // have to when it paints
+        this.columnCount = this.countColumns();
+        this.rowStyles = new byte[this.rows.length];
+        this.negatives = new BitSet();
+        for (int row = 0; row < this.rows.length; row++)
+            {
+            if (this.rows[row].hasChildren())
+                this.rowStyles[row] = (byte) ((row == 0) ? ReportSnapshot.STYLE_OVERALL : ReportSnapshot.STYLE_ROLLUP);
+            for (int column = 3; column < this.columnCount; column += 3)
+                {
+                final Long value = this.getValue(row, column);
+                if ((value != null) && (value.longValue() < 0))
+                    this.negatives.set((row * this.columnCount) + column);
+                }
+            }
+    }
+
+    /**
+     * @return the version of the snapshot
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return a copy of the report parameters of the snapshot, null if empty
+     */
+    public Report getReport() {
+        return (this.report != null) ? new Report(this.report) : null;
+    }
+
+    /**
+     * @return the ID string of the base currency
+     */
+    public String getBaseCurrency() {
+        return this.baseCurrency;
+    }
+
+    /**
+     * @return the budget categories list the snapshot was taken from, null if empty
+     */
+    public BudgetCategoriesList getBudgetCategoriesList() {
+        return this.budgetCategoriesList;
+    }
+
+    /**
+     * @return the statistics of the build of the report, null if empty
+     */
+    public ReportStatistics getStatistics() {
+        return (this.budgetCategoriesList != null) ? this.budgetCategoriesList.getStatistics() : null;
+    }
+
+    /**
+     * @return the number of rows (categories)
+     */
+    public int getRowCount() {
+        return this.rows.length;
+    }
+
+    /**
+     * @param row - The row (0...n).
+     * @return the row
+     */
+    public Row getRow(final int row) {
+        return this.rows[row];
+    }
+
+    /**
+     * @param row - The row (0...n).
+     * @return the style of the row, STYLE_NORMAL, STYLE_OVERALL or STYLE_ROLLUP
+     */
+    public int getRowStyle(final int row) {
+        return this.rowStyles[row];
+    }
+
+    /**
+     * @param row - The row (0...n).
+     * @param column - The column.
+     * @return true if the cell is a difference with a negative value
+     */
+    public boolean isNegative(final int row, final int column) {
+        return this.negatives.get((row * this.columnCount) + column);
+    }
+
+    /**
+     * @param row - The row (0...n).
+     * @return the currency ID string to display the values of the row in
+     */
+    public String getDisplayCurrency(final int row) {
+        return this.report.isUseCategoryCurrency() ? this.rows[row].getCurrencyType() : this.baseCurrency;
+    }
+
+    /**
+     * Check whether a snapshot has the same columns as this one.
+     *
+     * @param other - The snapshot to compare to.
+     * @return boolean - true if the column count and names are the same.
+     */
+    public boolean hasSameColumns(final ReportSnapshot other) {
+        if (this.getColumnCount() != other.getColumnCount())
+            return false;
+        for (int column = 0; column < this.getColumnCount(); column++)
+            {
+            if (!this.getColumnName(column).equals(other.getColumnName(column)))
+                return false;
+            }
+        return true;
+    }
+
+    /**
+     * Check whether a snapshot has the same rows as this one, i.e. the same
+     * categories in the same order displayed in the same currencies. The
+     * values of the rows may differ.
+     *
+     * @param other - The snapshot to compare to.
+     * @return boolean - true if the rows are the same.
+     */
+    public boolean hasSameRows(final ReportSnapshot other) {
+        if ((this.report == null) || (other.report == null) || (this.rows.length != other.rows.length))
+            return false;
+        if ((this.report.isSubtotalParents() != other.report.isSubtotalParents()) || !Objects.equals(this.baseCurrency, other.baseCurrency))
+            return false;
+        for (int row = 0; row < this.rows.length; row++)
+            {
+            final Row mine = this.rows[row];
+            final Row theirs = other.rows[row];
+            if (!mine.shortName.equals(theirs.shortName) || (mine.indentLevel != theirs.indentLevel) || (mine.hasChildren != theirs.hasChildren)
+                || (mine.categoryType != theirs.categoryType) || !this.getDisplayCurrency(row).equals(other.getDisplayCurrency(row)))
+                return false;
+            }
+        return true;
+    }
+
+    /**
+     * @return the number of columns of the report
+     */
+    public int getColumnCount() {
+        return this.columnCount;
+    }
+
+    /**
+     * @return the number of columns of the report parameters
+     */
+    private int countColumns() {
+        if ((this.report == null) || (this.report.getSubtotalBy() == Constants.SUBTOTAL_NONE))
+            return ReportSnapshot.columnNames.length;
+        else if (this.groupCount > 0)
+            return ((this.groupCount * 3) + 1 + 3); // The last + 3 adds the grand totals
+        else
+            return 0; // Invalid subtotal selection (Shouldn't get here)
+    }
+
+    /**
+     * @param column - The column index.
+     * @return the name of the column
+     */
+    public String getColumnName(final int column) {
+        if (column == 0)
+            return ReportSnapshot.columnNames[0];
+        else
+            {
+            // Add the months if subtotaled
+            if ((this.groupCount > 0) && ((column - 1) % 3 == 0))
+                {
+                // Use "Total" for last column
+                if (column >= this.getColumnCount() - 3)
+                    return ReportSnapshot.columnNames[1 + ((column - 1) % 3)]+": "+Constants.shortMonths[12];
+                // Otherwise the months of the group
+                else
+                    return ReportSnapshot.columnNames[1 + ((column - 1) % 3)]+": "+this.getGroupName(1 + ((column - 1) / 3));
+                }
+            else
+                return ReportSnapshot.columnNames[1 + ((column - 1) % 3)];
+            }
+    }
+
+    /**
+     * Get the value of a cell in the currency of its category.
+     *
+     * @param row - The row (0...n).
+     * @param column - The column, 1 or more.
+     * @return Long - The value, or null if the cell is blank (a roll-up row when
+     * parents are not subtotaled).
+     */
+    public Long getValue(final int row, final int column) {
+        final Row item = this.rows[row];
+
+        // Roll-up rows are blank unless parents are subtotaled
+        if (item.hasChildren() && !this.report.isSubtotalParents())
+            return null;
+
+        // Get the group of months of the column, one past the last group for the totals
+        final int group;
+        if (column > (this.groupCount * 3))
+            group = this.groupCount + 1;
+        else
+            group = 1 + ((column - 1) / 3);
+
+        if ((column - 1) % 3 == 0)          // Budget
+            return Long.valueOf(item.getBudgetValue(group));
+        else if ((column - 1) % 3 == 1)     // Actuals
+            return Long.valueOf(item.getActualTotal(group));
+        else                                // Difference
+            {
+            if ((item.getCategoryType() == Account.AccountType.ROOT) || (item.getCategoryType() == Account.AccountType.INCOME))
+                return Long.valueOf(item.getActualTotal(group) - item.getBudgetValue(group));
+            else
+                return Long.valueOf(item.getBudgetValue(group) - item.getActualTotal(group));
+            }
+    }
+
+    /**
+     * @return the number of months in the report
+     */
+    private int getMonthCount() {
+        return this.range.getMonthCount();
+    }
+
+    /**
+     * Get the number of months in each group of subtotal columns.
+     *
+     * @param subtotalBy - The subtotal selection of the report.
+     * @return int - The number of months, 0 if not subtotaled.
+     */
+    private static int getGroupMonths(final int subtotalBy) {
+        switch (subtotalBy)
+            {
+            case Constants.SUBTOTAL_MONTH:
+                return 1;
+            case Constants.SUBTOTAL_QUARTER:
+                return 3;
+            case Constants.SUBTOTAL_HALF:
+                return 6;
+            default:
+                return 0;
+            }
+    }
+
+    /**
+     * Get the column header name of a group of months i.e. "Jan" or
+     * "Jan-March", with the year of its last month when the report spans
+     * years.
+     *
+     * @param group - The group of months (1...n).
+     * @return String - The short name of the group.
+     */
+    private String getGroupName(final int group) {
+        final int first = ((group - 1) * this.groupMonths) + 1;
+        final int last = Math.min(group * this.groupMonths, this.getMonthCount());
+        if (first == last)
+            return this.getMonthName(last);
+        else
+            return Constants.shortMonths[this.range.getMonth(first) - 1]+"-"+this.getMonthName(last);
+    }
+
+    /**
+     * Get the column header name of a month, with the year when the report
+     * spans years i.e. "Jan '24".
+     *
+     * @param month - The month of the report (1...n).
+     * @return String - The short month name.
+     */
+    private String getMonthName(final int month) {
+        final String name = Constants.shortMonths[this.range.getMonth(month) - 1];
+        if (this.range.getYear(1) == this.range.getYear(this.getMonthCount()))
+            return name;
+        else
+            return name+" '"+String.format("%02d", this.range.getYear(month) % 100);
+    }
+}
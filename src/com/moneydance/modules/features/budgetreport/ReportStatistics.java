@@ -0,0 +1,237 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+* Class to collect timings and counters for one report build.
+* The time spent in each phase of building and displaying a report is
+* accumulated using System.nanoTime along with counters of the work done. The
+* statistics of the most recent builds are kept in a rolling history.
+*/
+public class ReportStatistics {
+    /*
+     * Phases of a report build
+     */
+    public static final String[] phases             = { "Traversal", "Budgets", "Transactions", "Rollups", "Structure", "Paint" };
+    public static final int PHASE_TRAVERSAL         = 0;
+    public static final int PHASE_BUDGETS           = 1;
+    public static final int PHASE_TRANSACTIONS      = 2;
+    public static final int PHASE_ROLLUPS           = 3;
+    public static final int PHASE_STRUCTURE         = 4;
+    public static final int PHASE_PAINT             = 5;
+
+    // The number of builds kept in the history
+    public static final int HISTORY_SIZE            = 20;
+
+    // The most recent builds, newest first
+    private static final ArrayDeque<ReportStatistics> history = new ArrayDeque<ReportStatistics>();
+
+    // The time the build started (System.currentTimeMillis)
+    private final long startTime = System.currentTimeMillis();
+
+    // The name of the report built
+    private String reportName = "";
+
+    // Time spent in each phase in nanoseconds
+    private final long[] phaseNanos = new long[ReportStatistics.phases.length];
+
+    // Counters of the work done
+    private long categoriesVisited;
+    private long budgetLookups;
+    private long splitsScanned;
+    private long conversions;
+    private long cellsFormatted;
+
+    /**
+     * Add a finished build to the history, dropping the oldest build if the
+     * history is full.
+     *
+     * @param statistics - The statistics of the build.
+     */
+    public static void record(final ReportStatistics statistics) {
+        synchronized (ReportStatistics.history)
+            {
+            ReportStatistics.history.addFirst(statistics);
+            while (ReportStatistics.history.size() > ReportStatistics.HISTORY_SIZE)
+                ReportStatistics.history.removeLast();
+            }
+    }
+
+    /**
+     * @return The statistics of the most recent builds, newest first
+     */
+    public static List<ReportStatistics> getHistory() {
+        synchronized (ReportStatistics.history)
+            {
+            return new ArrayList<ReportStatistics>(ReportStatistics.history);
+            }
+    }
+
+    /**
+     * Get the start time of a phase.
+     *
+     * @return long - The start time to pass to endPhase.
+     */
+    public long startPhase() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Add the time since a phase started to the phase.
+     *
+     * @param phase - The phase (PHASE_TRAVERSAL...PHASE_PAINT).
+     * @param start - The start time returned by startPhase.
+     */
+    public void endPhase(final int phase, final long start) {
+        this.phaseNanos[phase] += System.nanoTime() - start;
+    }
+
+    /**
+     * @param phase - The phase (PHASE_TRAVERSAL...PHASE_PAINT).
+     * @return The time spent in the phase in nanoseconds
+     */
+    public long getPhaseNanos(final int phase) {
+        return this.phaseNanos[phase];
+    }
+
+    /**
+     * @return The time spent building the report (all phases before the
+     * table is displayed) in nanoseconds
+     */
+    public long getBuildNanos() {
+        return this.phaseNanos[ReportStatistics.PHASE_TRAVERSAL] + this.phaseNanos[ReportStatistics.PHASE_BUDGETS]
+            + this.phaseNanos[ReportStatistics.PHASE_TRANSACTIONS] + this.phaseNanos[ReportStatistics.PHASE_ROLLUPS];
+    }
+
+    /**
+     * @return the start time of the build (System.currentTimeMillis)
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * @return the reportName
+     */
+    public String getReportName() {
+        return this.reportName;
+    }
+
+    /**
+     * @param reportName the reportName to set
+     */
+    public void setReportName(final String reportName) {
+        this.reportName = reportName;
+    }
+
+    /**
+     * Count a category visited while traversing the categories.
+     */
+    public void countCategory() {
+        this.categoriesVisited++;
+    }
+
+    /**
+     * Count a budget amount looked up.
+     */
+    public void countBudgetLookup() {
+        this.budgetLookups++;
+    }
+
+    /**
+     * Count a split scanned while totaling transactions.
+     */
+    public void countSplit() {
+        this.splitsScanned++;
+    }
+
+    /**
+     * Count splits scanned while totaling transactions in parallel.
+     *
+     * @param splits - The number of splits scanned.
+     */
+    public void countSplits(final long splits) {
+        this.splitsScanned += splits;
+    }
+
+    /**
+     * Count a currency conversion.
+     */
+    public void countConversion() {
+        this.conversions++;
+    }
+
+    /**
+     * Count a table cell formatted for display.
+     */
+    public void countCell() {
+        this.cellsFormatted++;
+    }
+
+    /**
+     * @return the number of categories visited
+     */
+    public long getCategoriesVisited() {
+        return this.categoriesVisited;
+    }
+
+    /**
+     * @return the number of budget amounts looked up
+     */
+    public long getBudgetLookups() {
+        return this.budgetLookups;
+    }
+
+    /**
+     * @return the number of splits scanned
+     */
+    public long getSplitsScanned() {
+        return this.splitsScanned;
+    }
+
+    /**
+     * @return the number of currency conversions performed
+     */
+    public long getConversions() {
+        return this.conversions;
+    }
+
+    /**
+     * @return the number of table cells formatted
+     */
+    public long getCellsFormatted() {
+        return this.cellsFormatted;
+    }
+}
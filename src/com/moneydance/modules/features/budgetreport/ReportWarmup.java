@@ -0,0 +1,322 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+import com.moneydance.apps.md.controller.FeatureModuleContext;
+
+/**
+* Class to build the default report in the background shortly after a data
+* file is opened so that the first time the report window is opened it only
+* has to display the precomputed report.
+* The warm start is optional, it is enabled per data file by the
+* Constants.WARM_START preference. If the data changes after the report was
+* built, or a different report is opened first, the window simply builds the
+* report itself.
+* The data of the report is copied into a BookSnapshot on the event dispatch
+* thread when the delay is over, the warm start thread only builds from the
+* snapshot.
+*
+* <p><b>Note:</b> All methods must be called on the event dispatch thread.
+*/
+public class ReportWarmup {
+    // How long to wait after the data file is opened before building (milliseconds)
+    public static final int START_DELAY         = 5000;
+
+    // Single low priority thread to build the report on
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Budget Report warm start");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    // Timer waiting for the data file to settle, null if none
+    private Timer timer = null;
+
+    // The warm start running and the data source it hands over, null if none
+    private Future<?> pending = null;
+    private MoneydanceDataSource building = null;
+
+    // Incremented whenever a warm start is cancelled so that a late result is dropped
+    private int generation = 0;
+
+    // The precomputed report, null until it is built
+    private Result result = null;
+
+    /**
+     * A precomputed report: the data source it was built from and a report
+     * cache holding it.
+     */
+    public static final class Result {
+        private final AccountBook book;
+        private final MoneydanceDataSource dataSource;
+        private final ReportCache reportCache;
+
+        private Result(final AccountBook book, final MoneydanceDataSource dataSource, final ReportCache reportCache) {
+            this.book = book;
+            this.dataSource = dataSource;
+            this.reportCache = reportCache;
+        }
+
+        /**
+         * @return the data source the report was built from
+         */
+        public MoneydanceDataSource getDataSource() {
+            return this.dataSource;
+        }
+
+        /**
+         * @return the report cache holding the precomputed report
+         */
+        public ReportCache getReportCache() {
+            return this.reportCache;
+        }
+    }
+
+    /**
+     * Schedule the build of the default report of the data file just opened,
+     * if the warm start is enabled for it.
+     *
+     * @param context - The feature module (extension) context.
+     */
+    public void start(final FeatureModuleContext context) {
+        // Forget the report of any previous data file
+        this.discard();
+
+        // Only warm start data files that asked for it
+        final AccountBook book = context.getCurrentAccountBook();
+        if ((book == null) || !book.getRootAccount().getPreferenceBoolean(Constants.WARM_START, false))
+            return;
+
+        final int scheduled = this.generation;
+        this.timer = new Timer(ReportWarmup.START_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                ReportWarmup.this.timer = null;
+                ReportWarmup.this.prepare(context, book, scheduled);
+            }
+        });
+        this.timer.setRepeats(false);
+        this.timer.start();
+    }
+
+    /**
+     * Take the precomputed report. The caller owns the data source and cache
+     * returned from then on.
+     *
+     * @param book - The account book the report window is opened for.
+     * @return Result - The precomputed report, or null if there is none for the book.
+     */
+    public Result take(final AccountBook book) {
+        // The window will build the report itself if the warm start is not done
+        this.cancel();
+
+        final Result taken = this.result;
+        this.result = null;
+        if ((taken != null) && (taken.book != book))
+            {
+            taken.dataSource.dispose();
+            return null;
+            }
+        return taken;
+    }
+
+    /**
+     * Cancel the warm start and forget the precomputed report, for example
+     * when the data file is closing.
+     */
+    public void discard() {
+        this.cancel();
+        if (this.result != null)
+            {
+            this.result.dataSource.dispose();
+            this.result = null;
+            }
+    }
+
+    /**
+     * Forget the precomputed report and stop the warm start thread.
+     */
+    public void dispose() {
+        this.discard();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Cancel the warm start if it is scheduled or running.
+     */
+    private void cancel() {
+        this.generation++;
+        if (this.timer != null)
+            {
+            this.timer.stop();
+            this.timer = null;
+            }
+        if (this.pending != null)
+            {
+            this.pending.cancel(true);
+            this.pending = null;
+            }
+
+        // The build only reads its snapshot, the data source can go now
+        if (this.building != null)
+            {
+            this.building.dispose();
+            this.building = null;
+            }
+    }
+
+    /**
+     * Copy the data of the default report and start building it on the warm
+     * start thread.
+     *
+     * @param context - The feature module (extension) context.
+     * @param book - The account book opened.
+     * @param scheduled - The generation the warm start was scheduled in.
+     */
+    private void prepare(final FeatureModuleContext context, final AccountBook book, final int scheduled) {
+        // Nothing to do if there is no default report
+        final Account rootAccount = book.getRootAccount();
+        final String name = rootAccount.getPreference(Constants.DEFAULT_REPORT, null);
+        if (name == null)
+            return;
+
+        // Read the report, any problem is reported when the window loads it and
+        // an old report file is saved in the current format by the report catalog
+        final Report report;
+        try
+            {
+            report = Report.read(book.getRootFolder(), name);
+            }
+        catch (final Exception e)
+            {
+            return;
+            }
+        report.resolvePeriod(Calendar.getInstance());
+
+        // The window deletes reports using a budget that no longer exists
+        final MoneydanceDataSource dataSource = new MoneydanceDataSource(context);
+        if (!Arrays.asList(dataSource.getBudgetNames()).contains(report.getBudgetName()))
+            {
+            dataSource.dispose();
+            return;
+            }
+
+        // Copy the data of the report, the window builds reports that need currency conversions itself
+        final BookSnapshot snapshot = BookSnapshot.take(dataSource, report.getBudgetName(), MonthRange.of(report));
+        if (snapshot == null)
+            {
+            dataSource.dispose();
+            return;
+            }
+
+        this.building = dataSource;
+        this.pending = this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                ReportWarmup.this.build(book, report, dataSource, snapshot, scheduled);
+            }
+        });
+    }
+
+    /**
+     * Build the default report on the warm start thread.
+     *
+     * @param book - The account book opened.
+     * @param report - The default report.
+     * @param dataSource - The data source handed over with the report.
+     * @param snapshot - The data of the report.
+     * @param scheduled - The generation the warm start was scheduled in.
+     */
+    private void build(final AccountBook book, final Report report, final MoneydanceDataSource dataSource, final BookSnapshot snapshot, final int scheduled) {
+        try
+            {
+            // Build the report into a cache of its own
+            final ReportCache reportCache = new ReportCache();
+            final ReportCache.Key key = new ReportCache.Key(report, snapshot.getChangeStamp());
+
+            // Looking the key up makes the empty cache adopt the change stamp
+            reportCache.get(key);
+            reportCache.put(key, new ReportBuilder(snapshot).build(report, null));
+
+            // Hand the report over on the event dispatch thread
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    ReportWarmup.this.finish(new Result(book, dataSource, reportCache), scheduled);
+                }
+            });
+            }
+        catch (final CancellationException e)
+            {
+            // The window was opened or the data file closed first, the data
+            // source was disposed when the warm start was cancelled
+            }
+        finally
+            {
+            snapshot.release();
+            }
+    }
+
+    /**
+     * Keep the precomputed report unless the warm start was cancelled while
+     * it was being handed over.
+     *
+     * @param built - The precomputed report.
+     * @param scheduled - The generation the warm start was scheduled in.
+     */
+    private void finish(final Result built, final int scheduled) {
+        // The data source was disposed when the warm start was cancelled
+        if (scheduled != this.generation)
+            return;
+        this.pending = null;
+        this.building = null;
+        this.result = built;
+    }
+}
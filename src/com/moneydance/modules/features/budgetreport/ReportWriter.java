@@ -0,0 +1,262 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+* Writes the memorized report files and the report catalog on a background
+* thread so the report window never waits on the disk.
+* Each file is written to a temporary file next to it, flushed to the disk
+* and then renamed over the original, so a crash leaves either the old file
+* or the new one, never a partial file.
+*
+* <p>Changes submitted while the thread is busy are coalesced: only the last
+* contents of a file are written, and the catalog only once. The changes of
+* one submission are always written together, report files first, then the
+* report files deleted and the catalog last, so a rename never loses the
+* report.
+*/
+class ReportWriter {
+    // The extension of the temporary files written before they are renamed
+    public static final String TEMP_EXTENSION   = ".tmp";
+
+    // How long to wait for pending changes to be written when closing (seconds)
+    private static final long CLOSE_TIMEOUT     = 10;
+
+    // Told on the event dispatch thread when changes have been written
+    private final Callback callback;
+
+    // Single thread to write the files on
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Budget Report writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // The report files to write, or to delete when null, in the order submitted
+    private Map<File, byte[]> pending = new LinkedHashMap<File, byte[]>();
+
+    // The number of submissions of each pending file, coalesced into one write
+    private Map<File, Integer> submits = new HashMap<File, Integer>();
+
+    // The catalog file to write and its contents, null if unchanged
+    private File catalogFile = null;
+    private byte[] catalog = null;
+
+    // true when a write is queued that will pick up the pending changes
+    private boolean scheduled = false;
+
+    /**
+     * Callback for changes written.
+     */
+    interface Callback {
+        /**
+         * Called on the event dispatch thread when changes have been written.
+         *
+         * @param files - The report files written or deleted, with the
+         * number of submissions of each file the write covered.
+         * @param error - The error that stopped the write, null if it succeeded.
+         */
+        void written(Map<File, Integer> files, IOException error);
+    }
+
+    /**
+     * @param callback - Told when changes have been written.
+     */
+    ReportWriter(final Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Queue changes to be written together.
+     *
+     * @param files - The report files to write, or to delete when the contents are null.
+     * @param catalogFile - The catalog file, null if the catalog is unchanged.
+     * @param catalog - The contents of the catalog file.
+     */
+    synchronized void submit(final Map<File, byte[]> files, final File catalogFile, final byte[] catalog) {
+        for (final Map.Entry<File, byte[]> entry : files.entrySet())
+            {
+            // Keep the order of the latest change to each file
+            this.pending.remove(entry.getKey());
+            this.pending.put(entry.getKey(), entry.getValue());
+            this.submits.merge(entry.getKey(), 1, Integer::sum);
+            }
+        if (catalogFile != null)
+            {
+            this.catalogFile = catalogFile;
+            this.catalog = catalog;
+            }
+
+        // One write picks up everything submitted until it starts
+        if (!this.scheduled)
+            {
+            this.scheduled = true;
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ReportWriter.this.drain();
+                }
+            });
+            }
+    }
+
+    /**
+     * Write the pending changes and stop the thread, waiting a little while
+     * for them to finish.
+     */
+    void close() {
+        this.executor.shutdown();
+        try
+            {
+            if (!this.executor.awaitTermination(ReportWriter.CLOSE_TIMEOUT, TimeUnit.SECONDS))
+                System.err.println("ERROR: Timed out saving the memorized reports");
+            }
+        catch (final InterruptedException e)
+            {
+            Thread.currentThread().interrupt();
+            }
+    }
+
+    /**
+     * Write a file atomically: write a temporary file, flush it to the disk
+     * and rename it over the file.
+     *
+     * @param file - The file to write.
+     * @param bytes - The contents of the file.
+     * @throws IOException - The file could not be written, it is unchanged.
+     */
+    static void writeAtomically(final File file, final byte[] bytes) throws IOException {
+        final Path target = file.toPath();
+        final Path temp = target.resolveSibling(file.getName()+ReportWriter.TEMP_EXTENSION);
+        try
+            {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE))
+                {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+                }
+
+            try
+                {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            catch (final AtomicMoveNotSupportedException e)
+                {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        catch (final IOException e)
+            {
+            Files.deleteIfExists(temp);
+            throw e;
+            }
+    }
+
+    /**
+     * Write all the pending changes on the writer thread.
+     */
+    private void drain() {
+        final Map<File, byte[]> files;
+        final Map<File, Integer> submits;
+        final File catalogFile;
+        final byte[] catalog;
+        synchronized (this)
+            {
+            files = this.pending;
+            submits = this.submits;
+            catalogFile = this.catalogFile;
+            catalog = this.catalog;
+            this.pending = new LinkedHashMap<File, byte[]>();
+            this.submits = new HashMap<File, Integer>();
+            this.catalogFile = null;
+            this.catalog = null;
+            this.scheduled = false;
+            }
+
+        IOException error = null;
+        try
+            {
+            // Write the new reports before deleting the old ones
+            for (final Map.Entry<File, byte[]> entry : files.entrySet())
+                {
+                if (entry.getValue() != null)
+                    ReportWriter.writeAtomically(entry.getKey(), entry.getValue());
+                }
+            for (final Map.Entry<File, byte[]> entry : files.entrySet())
+                {
+                if (entry.getValue() == null)
+                    Files.deleteIfExists(entry.getKey().toPath());
+                }
+
+            // Last, so a catalog on the disk never names a report file not yet written
+            if (catalogFile != null)
+                ReportWriter.writeAtomically(catalogFile, catalog);
+            }
+        catch (final IOException e)
+            {
+            System.err.println("ERROR: The memorized reports could not be saved: "+e.getMessage());
+            error = e;
+            }
+
+        final IOException failed = error;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                ReportWriter.this.callback.written(submits, failed);
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+* Growable arrays holding the splits visited, in the order visited.
+* The splits of a data source are copied into a buffer so they can be
+* totaled without going back to the data source, i.e. in parallel chunks or
+* on a background thread.
+*/
+final class SplitBuffer implements ReportDataSource.TransactionVisitor {
+    private String[] categoryUUIDs = new String[1024];
+    private int[] dates = new int[1024];
+    private long[] values = new long[1024];
+    private int count = 0;
+
+    @Override
+    public void visit(final String categoryUUID, final int date, final long value) {
+        // Stop a background build that has been cancelled, checked every 4096 splits
+        if ((this.count & 0xFFF) == 0xFFF && Thread.currentThread().isInterrupted())
+            throw new CancellationException();
+
+        // Grow the arrays when full
+        if (this.count == this.dates.length)
+            {
+            final int capacity = this.count * 2;
+            this.categoryUUIDs = Arrays.copyOf(this.categoryUUIDs, capacity);
+            this.dates = Arrays.copyOf(this.dates, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            }
+
+        this.categoryUUIDs[this.count] = categoryUUID;
+        this.dates[this.count] = date;
+        this.values[this.count] = value;
+        this.count++;
+    }
+
+    /**
+     * @return the number of splits in the buffer
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * Count the splits of the buffer dated in the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @return int - The number of splits.
+     */
+    int count(final int startDate, final int endDate) {
+        int found = 0;
+        for (int i = 0; i < this.count; i++)
+            {
+            if ((this.dates[i] >= startDate) && (this.dates[i] < endDate))
+                found++;
+            }
+        return found;
+    }
+
+    /**
+     * Visit the splits of the buffer dated in the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each split.
+     */
+    void scan(final int startDate, final int endDate, final ReportDataSource.TransactionVisitor visitor) {
+        for (int i = 0; i < this.count; i++)
+            {
+            if ((this.dates[i] >= startDate) && (this.dates[i] < endDate))
+                visitor.visit(this.categoryUUIDs[i], this.dates[i], this.values[i]);
+            }
+    }
+
+    /**
+     * Split the buffer into chunks. The buffer must not be added to
+     * afterwards.
+     *
+     * @param chunkSize - The maximum number of splits in a chunk.
+     * @return List<TransactionChunk> - The chunks in the order visited.
+     */
+    List<ReportDataSource.TransactionChunk> getChunks(final int chunkSize) {
+        final List<ReportDataSource.TransactionChunk> chunks = new ArrayList<ReportDataSource.TransactionChunk>();
+        for (int from = 0; from < this.count; from += chunkSize)
+            {
+            final int chunkFrom = from;
+            final int chunkTo = (int) Math.min(this.count, (long) from + chunkSize);
+            chunks.add(new ReportDataSource.TransactionChunk() {
+                @Override
+                public int size() {
+                    return chunkTo - chunkFrom;
+                }
+
+                @Override
+                public void scan(final ReportDataSource.TransactionVisitor visitor) {
+                    for (int i = chunkFrom; i < chunkTo; i++)
+                        visitor.visit(SplitBuffer.this.categoryUUIDs[i], SplitBuffer.this.dates[i], SplitBuffer.this.values[i]);
+                }
+            });
+            }
+        return chunks;
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetreport;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+* Deterministic synthetic book for scale testing and the regression checks
+* (see RegressionChecks in src/bench).
+* This class generates a category hierarchy, multi-currency categories,
+* monthly budgets and a stream of transactions of a configurable size from a
+* seed. The same seed and sizes always generate the same book so that results
+* can be compared between builds without sharing real data files.
+*
+* <p><b>Note:</b> Splits are kept in primitive arrays sorted by date, 16 bytes
+* per split, so 10 million splits need about 160MB of heap. Budget amounts are
+* not stored, they are derived from the seed when they are requested.
+*/
+public class SyntheticBook implements ReportDataSource {
+    // The name of the only budget in a synthetic book
+    public static final String BUDGET_NAME = "Budget";
+
+    // The currencies used, the first one is the base currency
+    private static final String[] CURRENCIES        = { "USD", "EUR", "GBP", "JPY", "CAD", "CHF" };
+    private static final String[] SYMBOLS           = { "$", "\u20ac", "\u00a3", "\u00a5", "C$", "CHF " };
+    private static final double[] RATES             = { 1.0, 1.08, 1.27, 0.0067, 0.74, 1.12 };
+
+    // Percentage of the categories that are income categories
+    private static final int INCOME_PERCENT         = 10;
+
+    // The seed the book was generated from
+    private final long seed;
+
+    // The first year with transactions (YYYY)
+    private final int firstYear;
+
+    // The number of years with transactions
+    private final int years;
+
+    // The number of currencies in use
+    private final int currencyCount;
+
+    // The categories in account tree order and their index by UUID
+    private final List<ReportCategory> categories = new ArrayList<ReportCategory>();
+    private final Map<String, Integer> categoryIndex = new HashMap<String, Integer>();
+
+    // The splits sorted by date
+    private final int[] splitCategory;
+    private final int[] splitDate;
+    private final long[] splitValue;
+
+    /**
+     * Generate a synthetic book.
+     *
+     * @param seed - The seed to generate the book from.
+     * @param categoryCount - The number of categories to create (at least 2).
+     * @param maxDepth - The maximum depth of the category hierarchy (1 for no sub categories).
+     * @param currencyCount - The number of currencies to use (1...6).
+     * @param splitCount - The number of splits to create.
+     * @param firstYear - The first year with transactions (YYYY).
+     * @param years - The number of years with transactions.
+     */
+    public SyntheticBook(final long seed, final int categoryCount, final int maxDepth, final int currencyCount, final int splitCount, final int firstYear, final int years) {
+        if ((categoryCount < 2) || (maxDepth < 1) || (currencyCount < 1) || (currencyCount > SyntheticBook.CURRENCIES.length) || (splitCount < 0) || (years < 1))
+            throw new IllegalArgumentException("Invalid synthetic book size");
+
+        // Save the parameters for later
+        this.seed = seed;
+        this.firstYear = firstYear;
+        this.years = years;
+        this.currencyCount = currencyCount;
+
+        // Generate the category hierarchy, income first and then expenses
+        final SplittableRandom random = new SplittableRandom(seed);
+        final int incomeCount = Math.max(1, (categoryCount * SyntheticBook.INCOME_PERCENT) / 100);
+        this.generateCategories(random, Account.AccountType.INCOME, "Income ", incomeCount, maxDepth);
+        this.generateCategories(random, Account.AccountType.EXPENSE, "Expense ", categoryCount - incomeCount, maxDepth);
+
+        // Generate the splits spread evenly over all days in the date range so they are already sorted by date
+        this.splitCategory = new int[splitCount];
+        this.splitDate = new int[splitCount];
+        this.splitValue = new long[splitCount];
+        final long firstDay = LocalDate.of(firstYear, 1, 1).toEpochDay();
+        final long days = LocalDate.of(firstYear + years, 1, 1).toEpochDay() - firstDay;
+        long currentDay = -1;
+        int currentDate = 0;
+        for (int i = 0; i < splitCount; i++)
+            {
+            // Get the date of this split, only converting the day when it changes
+            final long day = firstDay + ((i * days) / splitCount);
+            if (day != currentDay)
+                {
+                final LocalDate date = LocalDate.ofEpochDay(day);
+                currentDate = (date.getYear() * 10000) + (date.getMonthValue() * 100) + date.getDayOfMonth();
+                currentDay = day;
+                }
+
+            // Pick a category, most splits are for categories without children
+            int category = random.nextInt(this.categories.size());
+            if ((this.categories.get(category).hasChildren()) && (random.nextInt(10) != 0))
+                category++;
+
+            // Income splits are negative in Moneydance, a few are refunds with the opposite sign
+            long value = 100 + random.nextInt(50000);
+            if (this.categories.get(category).getType() == Account.AccountType.INCOME)
+                value = -value * 10;
+            if (random.nextInt(20) == 0)
+                value = -value;
+
+            this.splitCategory[i] = category;
+            this.splitDate[i] = currentDate;
+            this.splitValue[i] = value;
+            }
+    }
+
+    /**
+     * Generate a tree of categories in account tree order.
+     *
+     * @param random - The random number generator to use.
+     * @param type - The type of categories to generate.
+     * @param prefix - The name prefix of the categories.
+     * @param count - The number of categories to generate.
+     * @param maxDepth - The maximum depth of the hierarchy.
+     */
+    private void generateCategories(final SplittableRandom random, final Account.AccountType type, final String prefix, final int count, final int maxDepth) {
+        // Choose the depth of each category, a child can be at most one level deeper than the previous category
+        final int[] depth = new int[count];
+        for (int i = 1; i < count; i++)
+            depth[i] = random.nextInt(Math.min(depth[i - 1] + 2, maxDepth));
+
+        // Full names and currencies of the current parents at each depth
+        final String[] names = new String[maxDepth];
+        final int[] currencies = new int[maxDepth];
+
+        for (int i = 0; i < count; i++)
+            {
+            // Top level categories mostly use the base currency, sub categories mostly use their parent's currency
+            final int d = depth[i];
+            int currency;
+            if (d == 0)
+                currency = (random.nextInt(4) == 0) ? random.nextInt(this.currencyCount) : 0;
+            else
+                currency = (random.nextInt(5) == 0) ? random.nextInt(this.currencyCount) : currencies[d - 1];
+            currencies[d] = currency;
+
+            // Build the full name from the parent's name
+            final String shortName = prefix + this.categories.size();
+            names[d] = (d == 0) ? shortName : names[d - 1] + ":" + shortName;
+
+            // The category has children when the next category is deeper
+            final boolean hasChildren = (i + 1 < count) && (depth[i + 1] > d);
+
+            // Add the category
+            final String uuid = String.format("synthetic-%08d", this.categories.size());
+            this.categoryIndex.put(uuid, this.categories.size());
+            this.categories.add(new ReportCategory(uuid, names[d], shortName, type, SyntheticBook.CURRENCIES[currency], hasChildren));
+            }
+    }
+
+    /**
+     * @return the number of categories in the book
+     */
+    public int getCategoryCount() {
+        return this.categories.size();
+    }
+
+    /**
+     * @return the number of splits in the book
+     */
+    public int getSplitCount() {
+        return this.splitDate.length;
+    }
+
+    /**
+     * @return the first year with transactions
+     */
+    public int getFirstYear() {
+        return this.firstYear;
+    }
+
+    /**
+     * @return the last year with transactions
+     */
+    public int getLastYear() {
+        return this.firstYear + this.years - 1;
+    }
+
+    /**
+     * @return The base currency ID string
+     */
+    @Override
+    public String getBaseCurrency() {
+        return SyntheticBook.CURRENCIES[0];
+    }
+
+    /**
+     * @return The names of the budgets, a synthetic book has a single budget
+     */
+    @Override
+    public String[] getBudgetNames() {
+        return new String[] { SyntheticBook.BUDGET_NAME };
+    }
+
+    /**
+     * @return The categories in account tree order
+     */
+    @Override
+    public List<ReportCategory> getCategories() {
+        return Collections.unmodifiableList(this.categories);
+    }
+
+    /**
+     * Get the budget amount of a category for a month. Amounts are derived
+     * from the seed, category and month so they don't need to be stored.
+     *
+     * @param budgetName - The name of the budget.
+     * @param category - The category to get the budget amount for.
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @return long - The budget amount, 0 if no budget amount exists.
+     */
+    @Override
+    public long getBudgetAmount(final String budgetName, final ReportCategory category, final int year, final int month) {
+        final Integer index = this.categoryIndex.get(category.getUUID());
+        if ((!SyntheticBook.BUDGET_NAME.equals(budgetName)) || (index == null) || (category.hasChildren()))
+            return 0;
+
+        // Mix the seed, category and month into a pseudo random amount
+        final long hash = SyntheticBook.mix(this.seed ^ SyntheticBook.mix((index * 10000L) + (year * 100L) + month));
+
+        // A few months have no budget and a few have negative budget amounts
+        final int bucket = (int) ((hash >>> 32) % 100);
+        if (bucket < 5)
+            return 0;
+        final long amount = ((hash & 0xffffffL) % 200000) + 1000;
+        return (bucket < 8) ? -amount : amount;
+    }
+
+    /**
+     * Visit all splits dated in the range specified.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param visitor - The visitor to call for each split found.
+     */
+    @Override
+    public void scanTransactions(final int startDate, final int endDate, final TransactionVisitor visitor) {
+        for (int i = this.findFirstSplit(startDate); (i < this.splitDate.length) && (this.splitDate[i] < endDate); i++)
+            visitor.visit(this.categories.get(this.splitCategory[i]).getUUID(), this.splitDate[i], this.splitValue[i]);
+    }
+
+    /**
+     * Get the splits in a date range as chunks of the split arrays.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @param chunkSize - The maximum number of splits in a chunk.
+     * @return List<TransactionChunk> - The chunks in date order.
+     */
+    @Override
+    public List<TransactionChunk> getTransactionChunks(final int startDate, final int endDate, final int chunkSize) {
+        final int first = this.findFirstSplit(startDate);
+        final int end = Math.max(first, this.findFirstSplit(endDate));
+
+        final List<TransactionChunk> chunks = new ArrayList<TransactionChunk>();
+        for (int from = first; from < end; from += chunkSize)
+            {
+            final int chunkFrom = from;
+            final int chunkTo = (int) Math.min(end, (long) from + chunkSize);
+            chunks.add(new TransactionChunk() {
+                @Override
+                public int size() {
+                    return chunkTo - chunkFrom;
+                }
+
+                @Override
+                public void scan(final TransactionVisitor visitor) {
+                    for (int i = chunkFrom; i < chunkTo; i++)
+                        visitor.visit(SyntheticBook.this.categories.get(SyntheticBook.this.splitCategory[i]).getUUID(), SyntheticBook.this.splitDate[i], SyntheticBook.this.splitValue[i]);
+                }
+            });
+            }
+        return chunks;
+    }
+
+    /**
+     * Count the splits in a date range, the split arrays are in date order.
+     *
+     * @param startDate - The first date to include (YYYYMMDD).
+     * @param endDate - The end date (YYYYMMDD), this date is not included.
+     * @return long - The number of splits.
+     */
+    @Override
+    public long estimateSplits(final int startDate, final int endDate) {
+        return Math.max(0, this.findFirstSplit(endDate) - this.findFirstSplit(startDate));
+    }
+
+    /**
+     * Convert a value from one currency to another using fixed rates.
+     *
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID string of the currency of the value.
+     * @param toCurrency - The ID string of the currency to convert to.
+     * @return long - The converted value.
+     */
+    @Override
+    public long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        if (fromCurrency.equals(toCurrency))
+            return value;
+        return Math.round((value * SyntheticBook.RATES[SyntheticBook.currencyIndex(fromCurrency)]) / SyntheticBook.RATES[SyntheticBook.currencyIndex(toCurrency)]);
+    }
+
+    /**
+     * Format a value for display i.e. "-$1,234.56".
+     *
+     * @param value - The value to format.
+     * @param currency - The ID string of the currency of the value.
+     * @param separator - The decimal separator character.
+     * @return String - The formatted value.
+     */
+    @Override
+    public String formatValue(final long value, final String currency, final char separator) {
+        final long abs = Math.abs(value);
+        final StringBuilder sb = new StringBuilder(16);
+        if (value < 0)
+            sb.append('-');
+        sb.append(SyntheticBook.SYMBOLS[SyntheticBook.currencyIndex(currency)]);
+
+        // Whole units with group separators
+        final String units = Long.toString(abs / 100);
+        for (int i = 0; i < units.length(); i++)
+            {
+            if ((i > 0) && ((units.length() - i) % 3 == 0))
+                sb.append((separator == ',') ? '.' : ',');
+            sb.append(units.charAt(i));
+            }
+
+        // Cents
+        sb.append(separator);
+        final long cents = abs % 100;
+        if (cents < 10)
+            sb.append('0');
+        sb.append(cents);
+        return sb.toString();
+    }
+
+    /**
+     * The synthetic book is generated up front and caches nothing.
+     */
+    @Override
+    public void clearCaches() {
+    }
+
+    /**
+     * @return 0, the synthetic book never changes
+     */
+    @Override
+    public long getChangeStamp() {
+        return 0;
+    }
+
+    /**
+     * The synthetic book holds no resources.
+     */
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * Find the first split on or after a date.
+     *
+     * @param date - The date to find (YYYYMMDD).
+     * @return int - The index of the first split on or after the date.
+     */
+    private int findFirstSplit(final int date) {
+        int low = 0;
+        int high = this.splitDate.length;
+        while (low < high)
+            {
+            final int mid = (low + high) >>> 1;
+            if (this.splitDate[mid] < date)
+                low = mid + 1;
+            else
+                high = mid;
+            }
+        return low;
+    }
+
+    /**
+     * Get the index of a currency in the currency tables.
+     *
+     * @param currency - The ID string of the currency.
+     * @return int - The index of the currency, 0 (the base currency) if not found.
+     */
+    private static int currencyIndex(final String currency) {
+        for (int i = 0; i < SyntheticBook.CURRENCIES.length; i++)
+            {
+            if (SyntheticBook.CURRENCIES[i].equals(currency))
+                return i;
+            }
+        return 0;
+    }
+
+    /**
+     * Mix the bits of a value (the SplitMix64 finalizer).
+     *
+     * @param z - The value to mix.
+     * @return long - The mixed value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -32,11 +32,14 @@ package com.moneydance.modules.features.budgetreport;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Graphics;
 
 import javax.swing.JComponent;
 import javax.swing.JTable;
 
 import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+import javax.swing.table.TableColumnModel;
 
 import com.moneydance.apps.md.view.gui.MDColors;
 
@@ -53,21 +56,63 @@ public class Table extends JTable {
 
 	static final float PRINT_FONT_SIZE = 7.0f;
 
+	// The columns of the model shown by a table
+	static final int ALL_COLUMNS = 0;
+	static final int CATEGORY_COLUMN = 1;	// The fixed category column of a split view
+	static final int VALUE_COLUMNS = 2;	// The scrolled value columns of a split view
+
+	// Print colors, allocated once so that painting a cell allocates nothing
+	static final Color PRINT_HEADER_BG = new Color(215, 215, 215);
+	static final Color PRINT_ALTERNATE_BG = new Color(235, 235, 235);
+
+	// Rollup row colors of dark themes
+	private static final Color DARK_OVERALL_FG = new Color(33, 144, 255);	// Income-Expense row - Medium blue
+	private static final Color DARK_ROLLUP_FG = new Color(0, 204, 204);	// Other rollup rows - Dark Cyan
+
+	// The columns of the model shown
+	private final int columns;
+
+	// Display colors of the current theme, updated with the look and feel
+	private Color textForeground;
+	private Color evenBackground;
+	private Color oddBackground;
+	private Color overallForeground;
+	private Color rollupForeground;
+
 	/**
 	* Constructor for our table.
 	*
 	* @param model - The table model for this table.
-	* @param colors - Moneydance color scheme.
+	* @param colors - Moneydance color scheme, null outside Moneydance for the light theme defaults.
 	* @param forPrint - true when this table is configured for printing, false for display.
 	*/
 	public Table(final TableModel model, final MDColors colors, boolean forPrint) {
+		this(model, colors, forPrint, Table.ALL_COLUMNS);
+	}
+
+
+	/**
+	* Constructor for one side of a split view of the report.
+	*
+	* @param model - The table model for this table.
+	* @param colors - Moneydance color scheme, null outside Moneydance for the light theme defaults.
+	* @param forPrint - true when this table is configured for printing, false for display.
+	* @param columns - The columns shown, ALL_COLUMNS, CATEGORY_COLUMN or VALUE_COLUMNS.
+	*/
+	public Table(final TableModel model, final MDColors colors, boolean forPrint, final int columns) {
        	super(model);
 
 		// Save the table model for later use
 		this.model = model;
 
+		// Create the columns again now that we know which ones to show
+		this.columns = columns;
+		if (columns != Table.ALL_COLUMNS)
+			this.createDefaultColumnsFromModel();
+
 		// Save access to Moneydance colors
         this.colors = colors;
+		this.updateColors();
 		
 		// Is this table for printing or display
 		if (forPrint)
@@ -78,7 +123,7 @@ public class Table extends JTable {
 
 			// Set default colors for printing
 			this.setBackground(Color.WHITE);
-			this.tableHeader.setBackground(new Color(215, 215, 215));
+			this.tableHeader.setBackground(Table.PRINT_HEADER_BG);
 			this.tableHeader.setForeground(Color.BLACK);
 			
 			// Also, this makes the overall table look less squished.
@@ -94,7 +139,108 @@ public class Table extends JTable {
 
 
 	/** 
-	 * Prepare the renderer for the cell at the specified row and column.
+	 * Paint the table and add the time taken to the statistics of the report
+	 * displayed.
+	 * 
+	 * @param g - The graphics context to paint in.
+	 */
+	@Override
+	protected void paintComponent(final Graphics g)
+	{
+		final ReportStatistics statistics = this.model.getStatistics();
+		final long start = System.nanoTime();
+
+		// Painting is frequent, only create the flight recorder event when it is recorded
+		final ReportEvents.BuildPhase phaseEvent = ReportEvents.BuildPhase.isRecorded() ? new ReportEvents.BuildPhase(ReportStatistics.phases[ReportStatistics.PHASE_PAINT]) : null;
+		if (phaseEvent != null)
+			phaseEvent.begin();
+
+		super.paintComponent(g);
+
+		if (statistics != null)
+			statistics.endPhase(ReportStatistics.PHASE_PAINT, start);
+		if (phaseEvent != null)
+			phaseEvent.commitFor(this.model.getCurrentReport(), this.model.getBudgetCategoriesList());
+	}
+
+
+	/** 
+	 * Create the columns shown by this table when the structure of the model
+	 * changes. Each side of a split view only creates its own columns.
+	 */
+	@Override
+	public void createDefaultColumnsFromModel()
+	{
+		// Called by the JTable constructor before the columns shown are known
+		if ((this.model == null) || (this.columns == Table.ALL_COLUMNS))
+			{
+			super.createDefaultColumnsFromModel();
+			return;
+			}
+
+		// Remove the old columns
+		final TableColumnModel columnModel = this.getColumnModel();
+		while (columnModel.getColumnCount() > 0)
+			columnModel.removeColumn(columnModel.getColumn(columnModel.getColumnCount() - 1));
+
+		// Add the category column or the value columns
+		final int count = this.model.getColumnCount();
+		final int first = (this.columns == Table.CATEGORY_COLUMN) ? 0 : 1;
+		final int end = (this.columns == Table.CATEGORY_COLUMN) ? Math.min(1, count) : count;
+		for (int column = first; column < end; column++)
+			this.addColumn(new TableColumn(column));
+	}
+
+
+	/** 
+	 * Update the display colors when the look and feel (Moneydance theme)
+	 * changes.
+	 */
+	@Override
+	public void updateUI()
+	{
+		super.updateUI();
+		this.updateColors();
+	}
+
+
+	/** 
+	 * Look up the display colors of the current theme once so that painting
+	 * a cell doesn't have to.
+	 */
+	private void updateColors()
+	{
+		// Light theme defaults outside Moneydance, i.e. when rendering headless
+		if (this.colors == null)
+			{
+			this.textForeground = Color.BLACK;
+			this.evenBackground = Color.WHITE;
+			this.oddBackground = Table.PRINT_ALTERNATE_BG;
+			this.overallForeground = ReportRenderer.OVERALL_FG;
+			this.rollupForeground = ReportRenderer.ROLLUP_FG;
+			return;
+			}
+
+		this.textForeground = this.colors.defaultTextForeground;
+		this.evenBackground = this.colors.listBackground;
+		this.oddBackground = this.colors.headerBG;
+		if (this.colors.isDarkTheme())
+			{
+			this.overallForeground = Table.DARK_OVERALL_FG;
+			this.rollupForeground = Table.DARK_ROLLUP_FG;
+			}
+		else
+			{
+			this.overallForeground = (this.colors.reportBlueFG != null) ? this.colors.reportBlueFG.darker() : null;
+			this.rollupForeground = this.colors.reportBlueFG;
+			}
+	}
+
+
+	/** 
+	 * Prepare the renderer for the cell at the specified row and column. The
+	 * style of the cell comes from the report snapshot and the preallocated
+	 * colors, nothing is allocated or formatted here.
 	 * 
 	 * @param renderer - The table cell renderer object.
 	 * @param row - The row to report.
@@ -105,61 +251,34 @@ public class Table extends JTable {
 	public Component prepareRenderer(final TableCellRenderer renderer, final int row, final int column) 
 	{
 		final Component c = super.prepareRenderer(renderer, row, column);
+		final ReportSnapshot snapshot = this.model.getSnapshot();
 
-		// Are we displaying or printing the table?
+		// Are we displaying or printing the table? Alternate row colors in table for readability
+		Color foreground;
 		if (this.isPaintingForPrint())
 			{
-			c.setBackground(Color.WHITE);
-			c.setForeground(Color.BLACK);
-
-			// Alternate row colors in table for readability
-			if ((row % 2) != 0) 
-				c.setBackground(new Color(235, 235, 235));
-			else
-				c.setBackground(Color.WHITE);
+			foreground = Color.BLACK;
+			c.setBackground(((row % 2) != 0) ? Table.PRINT_ALTERNATE_BG : Color.WHITE);
 			}
 		else	// Displaying
 			{
 			// Ensures proper foreground color on all themes
-			c.setForeground(this.colors.defaultTextForeground);
-
-			// Alternate row colors in table for readability
-			if ((row % 2) != 0) 
-				c.setBackground(this.colors.headerBG);
-			else
-				c.setBackground(this.colors.listBackground);
+			foreground = this.textForeground;
+			c.setBackground(((row % 2) != 0) ? this.oddBackground : this.evenBackground);
 			}
 
 		// Set text color of totals. Other than the category name in column 0, any other 
 		// cell could potentially be a total so we color it specially.
-		if  (this.model.getBudgetCategoryItem(row).hasChildren())
-			{
-			if (row == 0)
-			{
-				if (this.colors.isDarkTheme())
-            		c.setForeground(new Color(33, 144, 255));	// Income-Expense row - Medium blue
-				else 
-					c.setForeground(this.colors.reportBlueFG.darker());
-				}
-			else
-				{
-				if (this.colors.isDarkTheme())
-					c.setForeground(new Color(0, 204, 204));	// Other rollup rows - Dark Cyan
-				else 
-					c.setForeground(this.colors.reportBlueFG);
-				}
-			}
+		final int style = snapshot.getRowStyle(row);
+		if (style == ReportSnapshot.STYLE_OVERALL)
+			foreground = this.overallForeground;
+		else if (style == ReportSnapshot.STYLE_ROLLUP)
+			foreground = this.rollupForeground;
 
 		// Highlight negative difference values red
-		if ((column !=0) && (column % 3 == 0))
-			{
-			Object value = this.getValueAt(row, column);
-			if (value instanceof String)
-				{
-				if (((String)value).contains("-"))
-					c.setForeground(Color.RED);
-				}
-			}
+		if (snapshot.isNegative(row, this.convertColumnIndexToModel(column)))
+			foreground = Color.RED;
+		c.setForeground(foreground);
 
 		// Remove border from the cells. The editor will still set the selection border. This makes uneditable cells also appear unselectable.
 		((JComponent) c).setBorder(null);
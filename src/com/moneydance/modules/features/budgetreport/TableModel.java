@@ -32,22 +32,19 @@ package com.moneydance.modules.features.budgetreport;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.Iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
-import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.AccountBook;
-import com.infinitekind.moneydance.model.Account.AccountType;
-import com.infinitekind.moneydance.model.AccountUtil;
-import com.infinitekind.moneydance.model.BudgetItem;
-import com.infinitekind.moneydance.model.BudgetItemList;
-import com.infinitekind.moneydance.model.BudgetPeriod;
-import com.infinitekind.moneydance.model.CurrencyType;
-import com.infinitekind.moneydance.model.CurrencyUtil;
-import com.infinitekind.moneydance.model.PeriodType;
-import com.infinitekind.util.DateUtil;
 import com.moneydance.apps.md.controller.FeatureModuleContext;
 
 /**
@@ -57,167 +54,446 @@ import com.moneydance.apps.md.controller.FeatureModuleContext;
 * @author  Jerry Jones
 */
 public class TableModel extends AbstractTableModel  {
-    // The column names for the table
-    private final String[] columnNames = {"Category","Budget","Actual","Difference"};
-       
-    // Main budget editor window
+    // Main budget editor window, null when the model is used without a window
     BudgetReportWindow window;
 
-    // The context of the extension
-    private final FeatureModuleContext context;
+    // The report to use when there is no window
+    private final Report report;
+
+    // The data source used to build the report
+    private final ReportDataSource dataSource;
+
+    // The snapshot of the report displayed, replaced as a whole when a report is loaded
+    private final AtomicReference<ReportSnapshot> snapshot = new AtomicReference<ReportSnapshot>(ReportSnapshot.EMPTY);
+
+    // The text of the cells of the snapshot displayed, null until a cell is displayed
+    private volatile CellText cellText = null;
 
-    // The current data file
-    private final AccountBook book;
+    // Reports computed recently
+    private final ReportCache reportCache;
 
-    // Budget item list
-    private BudgetItemList budgetItemList;
+    // Prefetcher of the neighbouring periods, null when there is no window
+    private final ReportPrefetcher prefetcher;
 
-    // Budget Categories List
-    private BudgetCategoriesList budgetCategoriesList;
+    // Builder of the reports requested while the parameters are edited, null when there is no window
+    private final ReportDebouncer debouncer;
 
     // The decimal separator character
     private char separator;
+
+    // Depth of the batches of changes in progress, table events are coalesced while above 0
+    private int batchDepth = 0;
+
+    // The table events coalesced in the current batch
+    private boolean batchStructureChanged = false;
+    private boolean batchDataChanged = false;
+
+    // The rows updated in the current batch and the column updated in each
+    // row, TableModelEvent.ALL_COLUMNS if more than one
+    private final TreeMap<Integer, Integer> batchRows = new TreeMap<Integer, Integer>();
     
     public TableModel(final BudgetReportWindow window, final FeatureModuleContext context) {
+        this(window, null, new MoneydanceDataSource(context), new ReportCache());
+    }
+
+    /**
+     * Constructor to bind the report window to a report precomputed by the
+     * warm start.
+     * 
+     * @param window - The report window.
+     * @param warmStart - The precomputed report.
+     */
+    public TableModel(final BudgetReportWindow window, final ReportWarmup.Result warmStart) {
+        this(window, null, warmStart.getDataSource(), warmStart.getReportCache());
+    }
+
+    /**
+     * Constructor to use the table model without a report window, for example
+     * to build reports from a synthetic book for scale testing.
+     * 
+     * @param report - The report to build.
+     * @param dataSource - The data source to build the report from.
+     */
+    public TableModel(final Report report, final ReportDataSource dataSource) {
+        this(null, report, dataSource, new ReportCache());
+    }
+
+    private TableModel(final BudgetReportWindow window, final Report report, final ReportDataSource dataSource, final ReportCache reportCache) {
         // Save main window for later
         this.window = window;
         
-        // Save context for later
-        this.context = context;
+        // Save the report for later
+        this.report = report;
 
-        // Save the account book for later
-        this.book = context.getCurrentAccountBook();
+        // Save the data source for later
+        this.dataSource = dataSource;
+
+        // Save the report cache for later
+        this.reportCache = reportCache;
+
+        // Prefetch neighbouring periods only when the report is displayed
+        this.prefetcher = (window != null) ? new ReportPrefetcher(dataSource, this.reportCache) : null;
+
+        // Build reports while their parameters are edited only when the report is displayed
+        this.debouncer = (window != null) ? new ReportDebouncer(dataSource, this.reportCache) : null;
 
         // Get the decimal separator for this locale
-        DecimalFormat format = (DecimalFormat) DecimalFormat.getInstance();
-        DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
-        this.separator = symbols.getDecimalSeparator();
+        this.separator = TableModel.getDecimalSeparator();
+
+        // Let the report engine MBean track this model
+        ReportEngine.getInstance().addModel(this);
 
         // Load the category and budget data from Moneydance
         this.LoadData();
     }
 
+    /**
+     * Constructor for a model that always shows one snapshot, for example to
+     * print a report while the report displayed may change.
+     * 
+     * @param snapshot - The snapshot to show.
+     * @param dataSource - The data source to format the values with.
+     */
+    public TableModel(final ReportSnapshot snapshot, final ReportDataSource dataSource) {
+        this.window = null;
+        this.report = snapshot.getReport();
+        this.dataSource = dataSource;
+        this.reportCache = new ReportCache();
+        this.prefetcher = null;
+        this.debouncer = null;
+        this.separator = TableModel.getDecimalSeparator();
+        this.snapshot.set(snapshot);
+    }
+
     /**
      * Method to load the data for the table.
      */
     public void LoadData() {
-        // Get the start month and number of months from the current report
-        final Report currentReport = this.window.getCurrentReport();
-        final int startMonth = currentReport.getStartMonth();
-        final int months = (currentReport.getEndMonth() -  currentReport.getStartMonth()) + 1;
-
-        // Get the budget item list
-        final MyBudgetList budgetList = new MyBudgetList(this.context);
-        if (budgetList.getBudgetCount() == 0)
+        // Get the current report
+        final Report currentReport = this.getCurrentReport();
+
+        // Stop computing neighbouring periods, the user wants this report now
+        if (this.prefetcher != null)
+            this.prefetcher.cancel();
+
+        // Make sure there are budgets to report on
+        if (this.dataSource.getBudgetNames().length == 0)
             {
             // Display an error message - No budgets exist!
-            JOptionPane.showMessageDialog( this.window,
-            "No monthly style budgets have been created.  Use 'Tools:Budget Manager' to create a monthly budget before using this extension.",
-            "Error (Monthly Budget Report)",
-            JOptionPane.ERROR_MESSAGE);
+            if (this.window != null)
+                JOptionPane.showMessageDialog( this.window,
+                "No monthly style budgets have been created.  Use 'Tools:Budget Manager' to create a monthly budget before using this extension.",
+                "Error (Monthly Budget Report)",
+                JOptionPane.ERROR_MESSAGE);
+            else
+                System.err.println("ERROR: No monthly style budgets have been created.");
             
             return;
             }
 
-        this.budgetItemList = budgetList.getBudget(currentReport.getBudgetName()).getItemList();
+        // Measure how long the refresh blocks the event dispatch thread
+        final EdtWatchdog.Section section = EdtWatchdog.enter("TableModel.LoadData");
+        try
+            {
+            // Start the flight recorder event for the refresh
+            final ReportEvents.ModelRefresh refreshEvent = new ReportEvents.ModelRefresh(SwingUtilities.isEventDispatchThread());
+            refreshEvent.begin();
 
-        // Create a new Budget Categories list
-        this.budgetCategoriesList = new BudgetCategoriesList(this.book);
+            // Coalesce the table events of the refresh
+            this.beginBatch();
+            try
+                {
+                // Reuse the report if it was computed recently, otherwise build the
+                // budget categories list for the report and remember it
+                final ReportCache.Key key = new ReportCache.Key(currentReport, this.dataSource.getChangeStamp());
+                BudgetCategoriesList list = this.reportCache.get(key);
+
+                // The report may be being built already for the parameters edited
+                if ((list == null) && (this.debouncer != null))
+                    list = this.debouncer.await(key);
+                if (list == null)
+                    {
+                    list = new ReportBuilder(this.dataSource).build(currentReport, null);
+                    this.reportCache.put(key, list);
+                    }
 
-        // Create a special category for the Income - Expenses total row
-        this.budgetCategoriesList.add(Constants.UUID_OVERALL, "Income-Expenses", Account.AccountType.ROOT, 0);
+                // Publish a snapshot of the report for the table, exporters and printer
+                final ReportSnapshot next = new ReportSnapshot(currentReport, this.dataSource.getBaseCurrency(), list);
+                final ReportSnapshot previous = this.snapshot.getAndSet(next);
 
-        // Add a special category to the table for "Income"
-        this.budgetCategoriesList.add(Constants.UUID_INCOME, "Income", Account.AccountType.INCOME, 1);
+                // Update the report header
+                if (this.window != null)
+                    this.window.updateHeader();
 
-        // Iterate through the accounts to find all active Income categories
-        // Note that accounts and categories are the same, they are all Accounts. 
-        for (final Iterator<Account> iter = AccountUtil.getAccountIterator(this.context.getCurrentAccountBook()); iter.hasNext(); ) 
-            {
-            // Get the account 
-            final Account acct = iter.next();
+                // Update the table with just the cells that changed
+                this.fireSnapshotChanged(previous, next);
 
-            // Go add category if it's the right type and if it's an income category
-            this.addIf(acct, Account.AccountType.INCOME, startMonth, months);
+                refreshEvent.commitFor(currentReport, list);
+                }
+            finally
+                {
+                this.endBatch();
+                }
+            }
+        finally
+            {
+            section.end();
             }
 
-        // Add a special category to the table for "Expenses"
-        this.budgetCategoriesList.add(Constants.UUID_EXPENSE, "Expenses", Account.AccountType.EXPENSE, 1);
+        // Compute the periods the user is likely to step to next in the background
+        if (this.prefetcher != null)
+            this.prefetcher.prefetch(currentReport);
+    }
+    
+    
+    /** 
+     * Start a batch of changes. Until the batch ends the table events fired
+     * are coalesced instead of being sent to the listeners. Batches may be
+     * nested, the events are sent when the outermost batch ends.
+     */
+    public void beginBatch() {
+        this.batchDepth++;
+    }
 
-        // Iterate through the accounts to find all active Expense categories
-        for (final Iterator<Account> iter = AccountUtil.getAccountIterator(this.context.getCurrentAccountBook()); iter.hasNext(); ) 
-            {
-            // Get the account 
-            final Account acct = iter.next();
 
-            // Go add category if it's the right type and if it's an expense category
-            this.addIf(acct, Account.AccountType.EXPENSE, startMonth, months);
-            }
+    /** 
+     * End a batch of changes and send one event covering all of the events
+     * coalesced during the batch, if any.
+     */
+    public void endBatch() {
+        if (--this.batchDepth > 0)
+            return;
 
-        // Update the report header
-        this.window.updateHeader();
+        // Get the events covering the batch and reset the batch
+        final List<TableModelEvent> events = new ArrayList<TableModelEvent>();
+        if (this.batchStructureChanged)
+            events.add(new TableModelEvent(this, TableModelEvent.HEADER_ROW));
+        else if (this.batchDataChanged)
+            events.add(new TableModelEvent(this));
+        else
+            {
+            // One event for each run of consecutive rows updated in the same column
+            int firstRow = -1;
+            int lastRow = -1;
+            int column = TableModelEvent.ALL_COLUMNS;
+            for (final Map.Entry<Integer, Integer> entry : this.batchRows.entrySet())
+                {
+                final int row = entry.getKey().intValue();
+                if ((firstRow >= 0) && ((row != lastRow + 1) || (entry.getValue().intValue() != column)))
+                    {
+                    events.add(new TableModelEvent(this, firstRow, lastRow, column));
+                    firstRow = -1;
+                    }
+                if (firstRow < 0)
+                    {
+                    firstRow = row;
+                    column = entry.getValue().intValue();
+                    }
+                lastRow = row;
+                }
+            if (firstRow >= 0)
+                events.add(new TableModelEvent(this, firstRow, lastRow, column));
+            }
+        this.batchStructureChanged = false;
+        this.batchDataChanged = false;
+        this.batchRows.clear();
 
-        // Update the table
-        this.fireTableDataChanged();
+        for (final TableModelEvent event : events)
+            super.fireTableChanged(event);
     }
 
 
-    /**
-     * This method adds an account (category) to the budget category list if
-     * it meets the right criteria - it must be active and not hidden as well
-     * as being the proper type.
+    /** 
+     * Override for AbstractTableModel. Events are sent to the listeners
+     * unless a batch is in progress, in which case they are coalesced.
      * 
-     * @param acct - The account to add 
-     * @param type - The account type we're looking for,
-     * @param startMonth - The starting month to retrieve,
-     * @param months - The number of months to retrieve.
+     * @param event - The table event.
      */
-    private void addIf(final Account acct, final AccountType type, final int startMonth, final int months) 
-    {
-    // Get the type of this account
-    final AccountType acctType = acct.getAccountType();
-
-    // Is the account type that we're looking for?    
-    if (acctType == type)
-        {
-        // Is the account active
-        if ((!acct.getAccountOrParentIsInactive()) && (!acct.getHideOnHomePage()))
+    @Override
+    public void fireTableChanged(final TableModelEvent event) {
+        // Send the event right away when not in a batch
+        if (this.batchDepth == 0)
             {
-            // Add this category
-            final BudgetCategoryItem item = this.budgetCategoriesList.add(acct);
-            if (item == null)
-                return;
+            super.fireTableChanged(event);
+            return;
+            }
 
-            // If this is not a roll-up category then we need to get the current budget values for this category
-            if (!item.hasChildren())
+        if (event.getFirstRow() == TableModelEvent.HEADER_ROW)
+            this.batchStructureChanged = true;
+        else if ((event.getType() != TableModelEvent.UPDATE) || (event.getLastRow() == Integer.MAX_VALUE))
+            this.batchDataChanged = true;
+        else
+            {
+            // Cell and row updates only cover the rows and column changed
+            for (int row = event.getFirstRow(); row <= event.getLastRow(); row++)
                 {
-                for (int month = startMonth; month < (startMonth + months); month++)
-                    {
-                    // Find existing budget values for each month
-                    final BudgetItem i = this.budgetItemList.getBudgetItemForCategory(acct, new BudgetPeriod(DateUtil.getDate(this.getBudgetYear(), month, 1), PeriodType.MONTH));
-                    if (i != null)
-                        item.setBudgetValueForMonth(this.window.getModel(), this.budgetCategoriesList, month, i.getAmount(), acctType);
-                    }
+                final Integer column = this.batchRows.get(Integer.valueOf(row));
+                if (column == null)
+                    this.batchRows.put(Integer.valueOf(row), Integer.valueOf(event.getColumn()));
+                else if (column.intValue() != event.getColumn())
+                    this.batchRows.put(Integer.valueOf(row), Integer.valueOf(TableModelEvent.ALL_COLUMNS));
                 }
+            }
+    }
 
-            // Retrieve the actual totals for this account
-            new TransactionTotals(item, this.context, acct, this.getBudgetYear(), startMonth, months);
 
-            // Update the parent actual totals
-            item.updateParentActualTotals(this.budgetCategoriesList, item);
+    /** 
+     * Fire the table events for a new snapshot. If the new snapshot has the
+     * same rows and columns as the previous one only the cells whose values
+     * changed are updated, which keeps the selection and scroll position and
+     * repaints only what changed. Otherwise the whole table changes.
+     * 
+     * @param previous - The snapshot displayed until now.
+     * @param next - The snapshot displayed from now on.
+     */
+    private void fireSnapshotChanged(final ReportSnapshot previous, final ReportSnapshot next) {
+        // The columns changed, i.e. a different number of months
+        if (!next.hasSameColumns(previous))
+            {
+            this.fireTableStructureChanged();
+            return;
             }
-        }
+
+        // The rows changed, i.e. a category was added
+        if (!next.hasSameRows(previous))
+            {
+            this.fireTableDataChanged();
+            return;
+            }
+
+        // Update the cells whose values changed
+        for (int row = 0; row < next.getRowCount(); row++)
+            {
+            for (int column = 1; column < next.getColumnCount(); column++)
+                {
+                if (!Objects.equals(previous.getValue(row, column), next.getValue(row, column)))
+                    this.fireTableCellUpdated(row, column);
+                }
+            }
+    }
+
+
+    /** 
+     * Method to request the report for parameters being edited. The report
+     * is built in the background once the parameters stop changing so that
+     * applying them only has to display it.
+     * 
+     * @param report - The report with the parameters being edited.
+     */
+    public void requestReport(final Report report) {
+        if (this.debouncer != null)
+            this.debouncer.request(report);
+    }
+
+
+    /** 
+     * Method to cancel the report requested for parameters being edited, i.e.
+     * when the edit is cancelled.
+     */
+    public void cancelRequest() {
+        if (this.debouncer != null)
+            this.debouncer.cancel();
+    }
+
+
+    /** 
+     * Method to forget the reports computed and the lookups cached by the data
+     * source so that the next LoadData reads everything again.
+     */
+    public void clearCaches() {
+        if (this.prefetcher != null)
+            this.prefetcher.cancel();
+        if (this.debouncer != null)
+            this.debouncer.cancel();
+        this.reportCache.clear();
+        this.dataSource.clearCaches();
+    }
+
+
+    /** 
+     * Method to release the data source when the model is no longer used.
+     */
+    public void dispose() {
+        // Disposed models no longer count as live or get rebuilt
+        ReportEngine.getInstance().removeModel(this);
+
+        if (this.prefetcher != null)
+            this.prefetcher.dispose();
+        if (this.debouncer != null)
+            this.debouncer.dispose();
+        this.reportCache.clear();
+        this.dataSource.dispose();
+    }
+
+
+    /** 
+     * Method to get the report displayed by this model.
+     * 
+     * @return Report - The current report.
+     */
+    public Report getCurrentReport() {
+        return (this.window != null) ? this.window.getCurrentReport() : this.report;
+    }
+
+
+    /** 
+     * Method to get the data source used to build the report.
+     * 
+     * @return ReportDataSource - The data source.
+     */
+    public ReportDataSource getDataSource() {
+        return this.dataSource;
+    }
+
+
+    /** 
+     * Method to get the statistics of the last report build.
+     * 
+     * @return ReportStatistics - The statistics or null if no report has been built.
+     */
+    public ReportStatistics getStatistics() {
+        return this.getSnapshot().getStatistics();
+    }
+
+
+    /** 
+     * Method to get the snapshot of the report displayed. The snapshot never
+     * changes, a new one is published each time a report is loaded.
+     * 
+     * @return ReportSnapshot - The current snapshot.
+     */
+    public ReportSnapshot getSnapshot() {
+        return this.snapshot.get();
+    }
+
+
+    /** 
+     * Method to format a value for display.
+     * 
+     * @param snapshot - The snapshot the value is from.
+     * @param value - The value to format.
+     * @param fromCurrency - The currency ID string of the value.
+     * @param toCurrency - The currency ID string to display the value in.
+     * @return String - The formatted value.
+     */
+    public String formatValue(final ReportSnapshot snapshot, final long value, final String fromCurrency, final String toCurrency) {
+        // Count the cell formatted
+        final ReportStatistics statistics = snapshot.getStatistics();
+        if (statistics != null)
+            statistics.countCell();
+
+        return this.dataSource.formatValue(this.dataSource.convertValue(value, fromCurrency, toCurrency), toCurrency, this.separator);
     }
     
     
     /** 
-     * Method to return a BudgetCategoryItem object given the row from the table.
+     * Method to return a row of the current snapshot given the row from the table.
      * 
-     * @param row - The row from the table which is the index into the category items.
-     * @return BudgetCategoryItem - The selected BudgetCategoryItem or null if there isn't one.
+     * @param row - The row from the table which is the index into the snapshot rows.
+     * @return ReportSnapshot.Row - The selected row.
      */
-    public BudgetCategoryItem getBudgetCategoryItem(final int row) {
-        return this.budgetCategoriesList.getCategoryItemByIndex(row);
+    public ReportSnapshot.Row getRow(final int row) {
+        return this.getSnapshot().getRow(row);
     }
 
     
@@ -227,7 +503,7 @@ public class TableModel extends AbstractTableModel  {
      * @return BudgetCategoriesLis - The budgetCategoryList object requested.
      */
     public BudgetCategoriesList getBudgetCategoriesList() {
-        return this.budgetCategoriesList;
+        return this.getSnapshot().getBudgetCategoriesList();
     }
 
     
@@ -237,7 +513,7 @@ public class TableModel extends AbstractTableModel  {
      * @return int - The budget year.
      */
     public int getBudgetYear() {
-        return this.window.getCurrentReport().getYear();
+        return this.getCurrentReport().getYear();
     }
 
     
@@ -248,16 +524,7 @@ public class TableModel extends AbstractTableModel  {
      */
     @Override
     public int getColumnCount() {
-        // Get the current report
-        final Report currentReport = this.window.getCurrentReport();
-
-        // Now determine the column count for the selected subtotal type
-        if (currentReport.getSubtotalBy() == Constants.SUBTOTAL_NONE)
-            return this.columnNames.length;
-        else if (currentReport.getSubtotalBy() == Constants.SUBTOTAL_MONTH)
-            return ((((currentReport.getEndMonth() + 1) - currentReport.getStartMonth()) * 3) + 1 + 3); // The last + 3 adds the grand totals
-        else
-            return 0; // Invalid subtotal selection (Shouldn't get here)
+        return this.getSnapshot().getColumnCount();
     }
 
     
@@ -268,7 +535,7 @@ public class TableModel extends AbstractTableModel  {
      */
     @Override
     public int getRowCount() {
-        return this.budgetCategoriesList.getCategoryCount();
+        return this.getSnapshot().getRowCount();
     }
 
     
@@ -280,109 +547,121 @@ public class TableModel extends AbstractTableModel  {
      */
     @Override
     public String getColumnName(final int column) {
-        if (column == 0)
-            return this.columnNames[0];
-        else
-            {
-            // Add month if subtotal by month
-            final Report currentReport = this.window.getCurrentReport();
-            if ((currentReport.getSubtotalBy() == Constants.SUBTOTAL_MONTH) && ((column - 1) % 3 == 0))
-                {
-                // Use "Total" for last column
-                if (column >= this.getColumnCount() - 3)
-                    return this.columnNames[1 + ((column - 1) % 3)]+": "+Constants.shortMonths[12];
-                // Otherwise short month name
-                else
-                    return this.columnNames[1 + ((column - 1) % 3)]+": "+Constants.shortMonths[currentReport.getStartMonth() - 1 + ((column - 1) / 3)];
-                }
-            else
-                return this.columnNames[1 + ((column - 1) % 3)];
-            }
+        return this.getSnapshot().getColumnName(column);
     }
 
     
+    /**
+     * The formatted text of the cells of a snapshot. Each cell is formatted
+     * the first time it is displayed and then kept until the snapshot is
+     * replaced, so painting the table again formats nothing. Cells formatted
+     * twice by different threads get the same text, so the arrays need no
+     * locking.
+     */
+    private static final class CellText {
+        // The snapshot formatted
+        private final ReportSnapshot snapshot;
+
+        // The text of the cells by row and column, a row is null until one of its cells is displayed
+        private final String[][] rows;
+
+        /**
+         * @param snapshot - The snapshot to format.
+         */
+        CellText(final ReportSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.rows = new String[snapshot.getRowCount()][];
+        }
+    }
+
+
     /** 
-     * Method to get the value at a specific row and column.
+     * Method to get the value at a specific row and column. The text is
+     * formatted once per snapshot.
      * 
      * @param row - The row in the table.
      * @param column - The column in the table.
      * @return Object - The value at the specified row and column.
      */
     @Override
-    // Returns a Double for editable cells - be careful when saving
     public Object getValueAt(final int row, final int column) {
-        // Get the current report
-        final Report currentReport = this.window.getCurrentReport();
+        final ReportSnapshot snapshot = this.getSnapshot();
 
-        // Get the category item
-        final BudgetCategoryItem item = this.budgetCategoriesList.getCategoryItemByIndex(row);
-        if (item != null)
+        // Let the snapshot version report rows and columns out of range
+        if ((row < 0) || (row >= snapshot.getRowCount()) || (column < 0) || (column >= snapshot.getColumnCount()))
+            return this.getValueAt(snapshot, row, column);
+
+        // Start a new set of cells when the snapshot changed
+        CellText text = this.cellText;
+        if ((text == null) || (text.snapshot != snapshot))
             {
-            // Get the selected currency type
-            CurrencyType toType;
-            if (currentReport.isUseCategoryCurrency())
-                toType = item.getCurrencyType();                    // Category currency
-            else
-                toType = this.book.getCurrencies().getBaseType();   // Base currency
+            text = new CellText(snapshot);
+            this.cellText = text;
+            }
 
-            // Category names
-            if (column == 0)    // Category name
-                {
-                // Display the category indented per the indent level
-                return (item.getIndentLevel() == 0) ? 
-                    "    "+item.getShortName() : 
-                    String.format("    %1$" + item.getIndentLevel() * 6 + "s%2$s", "", item.getShortName());
-                }
-            else
-                {
-                // If the row is a parent row and 
-                if ((item.hasChildren() == true) && (!currentReport.isSubtotalParents()))
-                    return (new String(""));
-            
-                // Budget values and totals
-                else if ((column - 1) % 3 == 0)   // Budget
-                    {                
-                    if ((currentReport.getSubtotalBy() == Constants.SUBTOTAL_NONE) || (column > (((currentReport.getEndMonth() + 1) - currentReport.getStartMonth()) * 3)))
-                        return (toType.formatFancy(CurrencyUtil.convertValue(item.getBudgetTotal(), item.getCurrencyType(), toType), this.separator));
-                    else
-                        return (toType.formatFancy(CurrencyUtil.convertValue(item.getBudgetValueForMonth(currentReport.getStartMonth() + ((column - 1) / 3)), item.getCurrencyType(), toType), this.separator));
-                    }
-                else if ((column - 1) % 3 == 1)   // Actuals
-                    {
-                    if ((currentReport.getSubtotalBy() == Constants.SUBTOTAL_NONE) || (column > (((currentReport.getEndMonth() + 1) - currentReport.getStartMonth()) * 3)))
-                        return (toType.formatFancy(CurrencyUtil.convertValue(item.getActualTotal(), item.getCurrencyType(), toType), this.separator));
-                    else
-                        return (toType.formatFancy(CurrencyUtil.convertValue(item.getActualTotalForMonth(currentReport.getStartMonth() + ((column - 1) / 3)), item.getCurrencyType(), toType), this.separator));
-                    }
-                else if ((column - 1) % 3 == 2)   // Difference
-                    {
-                    if ((item.getCategoryType() == Account.AccountType.ROOT) || (item.getCategoryType() == Account.AccountType.INCOME))
-                        {
-                        if ((currentReport.getSubtotalBy() == Constants.SUBTOTAL_NONE) || (column > (((currentReport.getEndMonth() + 1) - currentReport.getStartMonth()) * 3)))    
-                            return (toType.formatFancy(CurrencyUtil.convertValue(item.getActualTotal() - item.getBudgetTotal(), item.getCurrencyType(), toType), this.separator));
-                        else
-                            return (toType.formatFancy(CurrencyUtil.convertValue(item.getActualTotalForMonth(currentReport.getStartMonth() + ((column - 1) / 3)) - item.getBudgetValueForMonth(currentReport.getStartMonth()  + ((column - 1) / 3)), item.getCurrencyType(), toType), this.separator));
-                       }
-                    else
-                        {
-                        if ((currentReport.getSubtotalBy() == Constants.SUBTOTAL_NONE) || (column > (((currentReport.getEndMonth() + 1) - currentReport.getStartMonth()) * 3)))
-                            return (toType.formatFancy(CurrencyUtil.convertValue(item.getBudgetTotal() - item.getActualTotal(), item.getCurrencyType(), toType), this.separator));    
-                        else
-                            return (toType.formatFancy(CurrencyUtil.convertValue(item.getBudgetValueForMonth(currentReport.getStartMonth() + ((column - 1) / 3)) - item.getActualTotalForMonth(currentReport.getStartMonth()  + ((column - 1) / 3)), item.getCurrencyType(), toType), this.separator));
-                        }
-                    }
-                else
-                    {
-                    System.err.println("ERROR: The column is out of range in getValueAt.");
-                    return null;
-                    }
-                }
+        // Format the cell the first time it is displayed
+        String[] cells = text.rows[row];
+        if (cells == null)
+            {
+            cells = new String[snapshot.getColumnCount()];
+            text.rows[row] = cells;
             }
-        else
+        if (cells[column] == null)
+            cells[column] = (String) this.getValueAt(snapshot, row, column);
+        return cells[column];
+    }
+
+    
+    /** 
+     * Method to get the value at a specific row and column of a snapshot.
+     * 
+     * @param snapshot - The snapshot to read.
+     * @param row - The row in the snapshot.
+     * @param column - The column in the snapshot.
+     * @return Object - The formatted value at the specified row and column.
+     */
+    public Object getValueAt(final ReportSnapshot snapshot, final int row, final int column) {
+        // Make sure the row and column exist
+        if ((row < 0) || (row >= snapshot.getRowCount()))
             {
             System.err.println("ERROR: Item is null in getValueAt.");
             return null;
             }
+        if ((column < 0) || (column >= snapshot.getColumnCount()))
+            {
+            System.err.println("ERROR: The column is out of range in getValueAt.");
+            return null;
+            }
+
+        // Get the category item
+        final ReportSnapshot.Row item = snapshot.getRow(row);
+
+        // Category names
+        if (column == 0)    // Category name
+            {
+            // Display the category indented per the indent level
+            return (item.getIndentLevel() == 0) ? 
+                "    "+item.getShortName() : 
+                String.format("    %1$" + item.getIndentLevel() * 6 + "s%2$s", "", item.getShortName());
+            }
+
+        // Budget, actual and difference values, parent rows may be blank
+        final Long value = snapshot.getValue(row, column);
+        if (value == null)
+            return "";
+        return (this.formatValue(snapshot, value, item.getCurrencyType(), snapshot.getDisplayCurrency(row)));
+    }
+
+    
+    /** 
+     * Method to get the decimal separator character for this locale.
+     * 
+     * @return char - The decimal separator.
+     */
+    private static char getDecimalSeparator() {
+        final DecimalFormat format = (DecimalFormat) DecimalFormat.getInstance();
+        final DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+        return symbols.getDecimalSeparator();
     }
 
     
@@ -394,7 +673,8 @@ public class TableModel extends AbstractTableModel  {
      */
     @Override
     public Class<?> getColumnClass(final int column) {
-        return this.getValueAt(0, column).getClass();
+        // Every cell is formatted text, don't format a cell to find out
+        return String.class;
     }
 }
     
\ No newline at end of file
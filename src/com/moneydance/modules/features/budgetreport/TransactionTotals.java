@@ -30,25 +30,34 @@
  */ 
 package com.moneydance.modules.features.budgetreport;
 
-import com.infinitekind.moneydance.model.AbstractTxn;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
 import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.Txn;
-import com.infinitekind.moneydance.model.TxnSearch;
-import com.infinitekind.moneydance.model.TxnSet;
-import com.infinitekind.util.DateUtil;
-import com.moneydance.apps.md.controller.FeatureModuleContext;
 
 /**
- * Class to total transactions for a given category item.
+ * Class to total transactions for the category items of a report.
+ * Large date ranges are totaled in parallel: the splits are split into
+ * chunks, each worker thread totals the chunks it takes into a primitive
+ * category by month array of its own and the arrays of the workers are
+ * merged in pairs. Totals are sums of longs so the result is identical to
+ * totaling the splits one by one.
  *
  * @author  Jerry Jones
  */
-public class TransactionTotals implements TxnSearch{
-	// Transaction set for this account
-	private final TxnSet txnSet;
+public class TransactionTotals implements ReportDataSource.TransactionVisitor {
+	// The budget categories list to total the transactions into
+	private final BudgetCategoriesList budgetCategoriesList;
 
-	// The account object these totals are for
-	private final Account acct;
+	// The months we are totaling, the splits are bucketed by their month of the range
+	private final MonthRange range;
 
 	// The start date of the transactions to total
 	private final int startDate;
@@ -56,79 +65,279 @@ public class TransactionTotals implements TxnSearch{
 	// The end date of the transactions to total (endDate is not included in the totals)
 	private int endDate;
 
+	// The number of splits visited
+	private int splits = 0;
+
 	/**
-	 * Construct an TransactionTotals object to return actual spending totals by 
-	 * month for a given account (category) given a start date and the 
-	 * number of months to return.
+	 * Construct an TransactionTotals object to total actual spending by 
+	 * month for all of the categories in a budget categories list given a 
+	 * start date and the number of months to total. The transactions are
+	 * scanned once and each one is added to the category it belongs to.
+	 * Ranges of Constants.PARALLEL_SPLITS splits or more are totaled in
+	 * parallel on the common fork/join pool.
 	 * 
-	 * @param item - The budget category item to total
-	 * @param context - The feature module (extension) context.
-	 * @param acct - The account (category) to total.
-	 * @param budgetYear - The year we are editing (YYYY).
-	 * @param startMonth - The starting month to total (1...12).
-	 * @param months - The number of months to total.
+	 * @param budgetCategoriesList - The budget categories list to total.
+	 * @param dataSource - The data source to get the transactions from.
+	 * @param range - The months to total, which may span years.
 	 */
-	public TransactionTotals(final BudgetCategoryItem item, final FeatureModuleContext context, final Account acct, final int budgetYear, final int startMonth, final int months) {
-		// Save the account for later
-		this.acct = acct;
+	public TransactionTotals(final BudgetCategoriesList budgetCategoriesList, final ReportDataSource dataSource, final MonthRange range) {
+		this(budgetCategoriesList, dataSource, range, ForkJoinPool.commonPool(), Constants.PARALLEL_SPLITS);
+	}
 
-		// Get the start date
-		this.startDate = DateUtil.getDate(budgetYear, startMonth, 1);
+	
+	/**
+	 * Construct an TransactionTotals object using the fork/join pool and
+	 * parallel threshold specified, i.e. to benchmark the speedup by the
+	 * number of cores.
+	 * 
+	 * @param budgetCategoriesList - The budget categories list to total.
+	 * @param dataSource - The data source to get the transactions from.
+	 * @param range - The months to total, which may span years.
+	 * @param pool - The pool to total in parallel on, a pool with a
+	 * parallelism of 1 always totals on the calling thread.
+	 * @param parallelSplits - The fewest splits to total in parallel.
+	 */
+	public TransactionTotals(final BudgetCategoriesList budgetCategoriesList, final ReportDataSource dataSource, final MonthRange range, final ForkJoinPool pool, final int parallelSplits) {
+		// Save the list and months for later
+		this.budgetCategoriesList = budgetCategoriesList;
+		this.range = range;
 
-		// Calculate the end date
-		if ((startMonth + months) > 12)
-			this.endDate = DateUtil.getDate(budgetYear + 1, 1, 1);
-		else
-			this.endDate = DateUtil.getDate(budgetYear, startMonth + months, 1);
+		// Get the start and end dates
+		this.startDate = range.getStartDate();
+		this.endDate = range.getEndDate();
 
-		// Get a txnSet for the category specified
-		this.txnSet = context.getCurrentAccountBook().getTransactionSet().getTransactions(this);
-		// Calculate totals by month
-		for (final AbstractTxn txnLine : this.txnSet) 
+		// Calculate totals by month on this thread if there is no parallelism or
+		// too few splits to total in parallel, without copying them into chunks
+		if ((pool.getParallelism() <= 1) || (dataSource.estimateSplits(this.startDate, this.endDate) < parallelSplits))
 			{
-			final int month = (txnLine.getDateInt() / 100) - (budgetYear * 100);
-			if ((month > 0) && (month <= 12))
-				{
-				// Update the monthly total and grand total of all months requested
-				if (acct.getAccountType() == Account.AccountType.INCOME)
-					{
-					item.setActualTotal(item.getActualTotal() - txnLine.getValue());
-					item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) - txnLine.getValue());
-					}
-				else
-					{
-					item.setActualTotal(item.getActualTotal() + txnLine.getValue());
-					item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) + txnLine.getValue());
-					}
-				}
-			else
-				System.err.println("ERROR: Calculated month was out of range - month: "+month);			
+			dataSource.scanTransactions(this.startDate, this.endDate, this);
+			return;
+			}
+
+		// Get the splits in chunks and count them
+		final List<ReportDataSource.TransactionChunk> chunks = dataSource.getTransactionChunks(this.startDate, this.endDate, Constants.CHUNK_SPLITS);
+		long count = 0;
+		for (final ReportDataSource.TransactionChunk chunk : chunks)
+			count += chunk.size();
+
+		// Calculate totals by month, in parallel if there are enough splits
+		if ((chunks.size() > 1) && (count >= parallelSplits))
+			this.totalInParallel(chunks, count, pool);
+		else
+			{
+			for (final ReportDataSource.TransactionChunk chunk : chunks)
+				chunk.scan(this);
 			}
 	}
 
 	
 	/** 
-	 * Override for TxnSearch (see com.infinitekind.moneydance.model.TxnSearch)
+	 * Override for ReportDataSource.TransactionVisitor
 	 * 
-	 * @param transaction - The transaction to compare.
-	 * @return boolean - true if the account matches the criteria, false otherwise.
+	 * @param categoryUUID - The UUID of the category of the split.
+	 * @param date - The date of the split (YYYYMMDD).
+	 * @param value - The value of the split.
 	 */
 	@Override
-	public boolean matches(final Txn transaction) {
-		if (transaction.getAccount() == this.acct && transaction.getDateInt() >= this.startDate && transaction.getDateInt() < this.endDate)
-			return true;
+	public void visit(final String categoryUUID, final int date, final long value) {
+		// Count the split scanned
+		this.budgetCategoriesList.getStatistics().countSplit();
+
+		// Stop a background build that has been cancelled, checked every 4096 splits
+		if ((++this.splits & 0xFFF) == 0 && Thread.currentThread().isInterrupted())
+			throw new CancellationException();
+
+		// Categories that are not in the report (inactive or hidden) are ignored
+		final BudgetCategoryItem item = this.budgetCategoriesList.getCategoryItem(categoryUUID);
+		if (item == null)
+			return;
+
+		final int month = this.range.indexOf(date);
+		if (month > 0)
+			{
+			// Update the monthly total and grand total of all months requested
+			if (item.getCategoryType() == Account.AccountType.INCOME)
+				{
+				item.setActualTotal(item.getActualTotal() - value);
+				item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) - value);
+				}
+			else
+				{
+				item.setActualTotal(item.getActualTotal() + value);
+				item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) + value);
+				}
+			}
 		else
-			return false;
+			System.err.println("ERROR: Calculated month was out of range - month: "+month);			
 	}
 
-	
-	/** 
-	 * Override for TxnSearch (see com.infinitekind.moneydance.model.TxnSearch)
+
+	/**
+	 * Total the chunks in parallel and add the totals to the category items.
 	 * 
-	 * @return boolean - Returns true if matches all, false otherwise.
+	 * @param chunks - The chunks of splits to total.
+	 * @param count - The number of splits in the chunks.
+	 * @param pool - The pool to total on.
 	 */
-	@Override
-	public boolean matchesAll() {
-		return false;
+	private void totalInParallel(final List<ReportDataSource.TransactionChunk> chunks, final long count, final ForkJoinPool pool) {
+		// Total the chunks into one array of the months of the range per category
+		// for each worker thread, then add the arrays of the workers together
+		final Map<Thread, long[]> workerTotals = new ConcurrentHashMap<Thread, long[]>();
+		pool.invoke(new ChunkTotals(chunks, 0, chunks.size(), Thread.currentThread(), workerTotals));
+		final List<long[]> arrays = new ArrayList<long[]>(workerTotals.values());
+		final long[] totals = pool.invoke(new ArrayTotals(arrays, 0, arrays.size()));
+		this.budgetCategoriesList.getStatistics().countSplits(count);
+
+		// Add the totals to the items, income is negated as in visit
+		final int months = this.range.getMonthCount();
+		for (int index = 0; index < this.budgetCategoriesList.getCategoryCount(); index++)
+			{
+			final BudgetCategoryItem item = this.budgetCategoriesList.getCategoryItemByIndex(index);
+			final boolean income = (item.getCategoryType() == Account.AccountType.INCOME);
+			for (int month = 1; month <= months; month++)
+				{
+				final long value = totals[(index * months) + month - 1];
+				if (value != 0)
+					{
+					item.setActualTotal(income ? (item.getActualTotal() - value) : (item.getActualTotal() + value));
+					item.setActualTotalForMonth(month, income ? (item.getActualTotalForMonth(month) - value) : (item.getActualTotalForMonth(month) + value));
+					}
+				}
+			}
+	}
+
+
+	/**
+	 * Fork/join task totaling a range of chunks into an array of the months of
+	 * the report per category. Ranges are split in half until a single chunk is
+	 * left. Each chunk is added to the array of the worker thread totaling it,
+	 * so there are only as many arrays as threads whatever the number of chunks.
+	 */
+	private final class ChunkTotals extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<ReportDataSource.TransactionChunk> chunks;
+		private final int from;
+		private final int to;
+
+		// The thread the totals were requested on, interrupted to cancel
+		private final Thread caller;
+
+		// The totals of each worker thread
+		private final Map<Thread, long[]> workerTotals;
+
+		/**
+		 * @param chunks - The chunks of splits.
+		 * @param from - The first chunk to total.
+		 * @param to - The end of the chunks to total (not included).
+		 * @param caller - The thread the totals were requested on.
+		 * @param workerTotals - The totals of each worker thread.
+		 */
+		ChunkTotals(final List<ReportDataSource.TransactionChunk> chunks, final int from, final int to, final Thread caller, final Map<Thread, long[]> workerTotals) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+			this.caller = caller;
+			this.workerTotals = workerTotals;
+		}
+
+		@Override
+		protected void compute() {
+			// Total a single chunk
+			if (this.to - this.from == 1)
+				{
+				this.totalChunk(this.chunks.get(this.from));
+				return;
+				}
+
+			// Otherwise total both halves
+			final int middle = (this.from + this.to) >>> 1;
+			ForkJoinTask.invokeAll(new ChunkTotals(this.chunks, this.from, middle, this.caller, this.workerTotals),
+				new ChunkTotals(this.chunks, middle, this.to, this.caller, this.workerTotals));
+		}
+
+		/**
+		 * Add the splits of a chunk to the totals of the current worker thread.
+		 * A worker totals one chunk at a time as scanning a chunk never waits
+		 * on another task, so the array is only used by its own thread.
+		 * 
+		 * @param chunk - The chunk to total.
+		 */
+		private void totalChunk(final ReportDataSource.TransactionChunk chunk) {
+			final BudgetCategoriesList list = TransactionTotals.this.budgetCategoriesList;
+			final MonthRange range = TransactionTotals.this.range;
+			final int months = range.getMonthCount();
+			long[] worker = this.workerTotals.get(Thread.currentThread());
+			if (worker == null)
+				{
+				worker = new long[list.getCategoryCount() * months];
+				this.workerTotals.put(Thread.currentThread(), worker);
+				}
+			final long[] totals = worker;
+			chunk.scan(new ReportDataSource.TransactionVisitor() {
+				// The number of splits visited
+				private int splits = 0;
+
+				@Override
+				public void visit(final String categoryUUID, final int date, final long value) {
+					// Stop a background build that has been cancelled, checked every 4096 splits
+					if ((++this.splits & 0xFFF) == 0 && ChunkTotals.this.caller.isInterrupted())
+						throw new CancellationException();
+
+					// Categories that are not in the report (inactive or hidden) are ignored
+					final int index = list.getCategoryIndex(categoryUUID);
+					if (index < 0)
+						return;
+
+					final int month = range.indexOf(date);
+					if (month > 0)
+						totals[(index * months) + month - 1] += value;
+					else
+						System.err.println("ERROR: Calculated month was out of range - month: "+month);
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Fork/join task adding a range of the worker arrays together. Ranges are
+	 * split in half until a single array is left, the right half is then added
+	 * into the left one.
+	 */
+	private static final class ArrayTotals extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<long[]> arrays;
+		private final int from;
+		private final int to;
+
+		/**
+		 * @param arrays - The arrays to add together, all of the same length.
+		 * @param from - The first array to add.
+		 * @param to - The end of the arrays to add (not included).
+		 */
+		ArrayTotals(final List<long[]> arrays, final int from, final int to) {
+			this.arrays = arrays;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[] compute() {
+			// A single array is its own total
+			if (this.to - this.from == 1)
+				return this.arrays.get(this.from);
+
+			// Otherwise add both halves
+			final int middle = (this.from + this.to) >>> 1;
+			final ArrayTotals left = new ArrayTotals(this.arrays, this.from, middle);
+			left.fork();
+			final long[] rightTotals = new ArrayTotals(this.arrays, middle, this.to).compute();
+			final long[] totals = left.join();
+			for (int i = 0; i < totals.length; i++)
+				totals[i] += rightTotals[i];
+			return totals;
+		}
 	}
 }